@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonatype.guice.bean.locators.spi.BindingPublisher;
+
+import com.google.inject.Injector;
+import com.google.inject.Key;
+
+/**
+ * Cost of adding and removing publishers while the locator is tracking lots of types, one at a time and as a batch.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 20 )
+@Fork( 1 )
+public class CachedTypesBenchmark
+{
+    // ----------------------------------------------------------------------
+    // Parameters
+    // ----------------------------------------------------------------------
+
+    @Param( { "100", "5000" } )
+    public int types;
+
+    @Param( { "10", "500" } )
+    public int publishers;
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private Injector[] injectors;
+
+    private MutableBeanLocator locator;
+
+    private List<Iterable<?>> cachedTypes;
+
+    // ----------------------------------------------------------------------
+    // Setup
+    // ----------------------------------------------------------------------
+
+    @Setup( Level.Trial )
+    public void createInjectors()
+    {
+        injectors = SyntheticInjectors.create( publishers, 1 );
+    }
+
+    @Setup( Level.Iteration )
+    public void createLocator()
+    {
+        locator = new DefaultBeanLocator();
+
+        // keep the types alive, so every publisher change has real work to do
+        cachedTypes = new ArrayList<Iterable<?>>();
+        for ( int i = 0; i < types; i++ )
+        {
+            final Iterable<?> beans = locator.locate( Key.get( SyntheticInjectors.type( i ) ) );
+            beans.iterator().hasNext();
+            cachedTypes.add( beans );
+        }
+        beans( locator );
+    }
+
+    // ----------------------------------------------------------------------
+    // Benchmarks
+    // ----------------------------------------------------------------------
+
+    @Benchmark
+    @SuppressWarnings( "deprecation" )
+    public int addEachThenRemove()
+    {
+        for ( int i = 0; i < injectors.length; i++ )
+        {
+            locator.add( injectors[i], i );
+        }
+        final int count = beans( locator );
+        for ( int i = 0; i < injectors.length; i++ )
+        {
+            locator.remove( injectors[i] );
+        }
+        return count + cachedTypes.size();
+    }
+
+    @Benchmark
+    public int addBatch()
+    {
+        final Map<BindingPublisher, Integer> batch = new LinkedHashMap<BindingPublisher, Integer>();
+        for ( int i = 0; i < injectors.length; i++ )
+        {
+            batch.put( new InjectorPublisher( injectors[i], new DefaultRankingFunction( i ) ), Integer.valueOf( i ) );
+        }
+        BeanLocators.add( locator, batch );
+        return beans( locator ) + cachedTypes.size();
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    private static int beans( final MutableBeanLocator locator )
+    {
+        return LocateBenchmark.drain( locator.locate( SyntheticInjectors.UNQUALIFIED_KEY ), null );
+    }
+}
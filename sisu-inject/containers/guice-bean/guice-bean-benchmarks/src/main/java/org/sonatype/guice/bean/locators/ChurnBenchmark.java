@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators;
+
+import static org.sonatype.guice.bean.locators.SyntheticInjectors.UNQUALIFIED_KEY;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonatype.guice.bean.locators.SyntheticInjectors.Bean;
+
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+
+/**
+ * Concurrent lookups while another thread keeps adding and removing injectors.
+ */
+@State( Scope.Group )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ChurnBenchmark
+{
+    // ----------------------------------------------------------------------
+    // Parameters
+    // ----------------------------------------------------------------------
+
+    @Param( { "10", "100" } )
+    public int publishers;
+
+    @Param( { "10", "100" } )
+    public int bindings;
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private MutableBeanLocator locator;
+
+    private Injector[] churners;
+
+    private Key<Bean> namedKey;
+
+    private int cursor;
+
+    // ----------------------------------------------------------------------
+    // Setup
+    // ----------------------------------------------------------------------
+
+    @Setup
+    public void setUp()
+    {
+        locator = SyntheticInjectors.locator( SyntheticInjectors.create( publishers, bindings ) );
+        churners = new Injector[8];
+        for ( int i = 0; i < churners.length; i++ )
+        {
+            churners[i] = SyntheticInjectors.create( "C" + i, bindings );
+        }
+        namedKey = Key.get( Bean.class, Names.named( SyntheticInjectors.name( "I0", 0 ) ) );
+    }
+
+    // ----------------------------------------------------------------------
+    // Benchmarks
+    // ----------------------------------------------------------------------
+
+    @Benchmark
+    @Group( "churn" )
+    @GroupThreads( 3 )
+    public Object locateNamed()
+    {
+        return locator.locate( namedKey ).iterator().next();
+    }
+
+    @Benchmark
+    @Group( "churn" )
+    @GroupThreads( 1 )
+    public Object locateFirst()
+    {
+        return locator.locate( UNQUALIFIED_KEY ).iterator().next();
+    }
+
+    @Benchmark
+    @Group( "churn" )
+    @GroupThreads( 1 )
+    @SuppressWarnings( "deprecation" )
+    public void addRemove()
+    {
+        // only ever called from one thread, so the cursor needs no guard
+        final Injector injector = churners[cursor++ % churners.length];
+        locator.add( injector, Integer.MAX_VALUE - 1 );
+        locator.remove( injector );
+    }
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Building and walking large rank-ordered {@link RankedList}s.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class FanOutBenchmark
+{
+    // ----------------------------------------------------------------------
+    // Parameters
+    // ----------------------------------------------------------------------
+
+    @Param( { "100", "1000", "10000" } )
+    public int size;
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private int[] ranks;
+
+    private RankedList<Object> list;
+
+    private RankedList<Object> batch;
+
+    // ----------------------------------------------------------------------
+    // Setup
+    // ----------------------------------------------------------------------
+
+    @Setup
+    public void setUp()
+    {
+        final Random random = new Random( 42 ); // same sequence on every run
+        ranks = new int[size];
+        for ( int i = 0; i < size; i++ )
+        {
+            ranks[i] = random.nextInt( size / 10 + 1 ) - size / 20; // plenty of equal ranks
+        }
+        list = insertEach();
+        batch = insertEach();
+    }
+
+    // ----------------------------------------------------------------------
+    // Benchmarks
+    // ----------------------------------------------------------------------
+
+    @Benchmark
+    public RankedList<Object> insertEach()
+    {
+        final RankedList<Object> result = new RankedList<Object>();
+        for ( int i = 0; i < ranks.length; i++ )
+        {
+            result.insert( Integer.valueOf( i ), ranks[i] );
+        }
+        return result;
+    }
+
+    @Benchmark
+    public RankedList<Object> insertAll()
+    {
+        final RankedList<Object> result = list.clone();
+        result.insertAll( batch );
+        return result;
+    }
+
+    @Benchmark
+    public void iterate( final Blackhole bh )
+    {
+        for ( final RankedList<Object>.Itr itr = list.iterator(); itr.hasNext(); )
+        {
+            bh.consume( itr.next() );
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators;
+
+import static org.sonatype.guice.bean.locators.SyntheticInjectors.MARKED_KEY;
+import static org.sonatype.guice.bean.locators.SyntheticInjectors.UNQUALIFIED_KEY;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.inject.Injector;
+
+/**
+ * Cost of the first iteration over a fresh locator, which includes subscribing to every pending publisher. Compare
+ * with {@link LocateBenchmark} for the warm cost of the same lookups.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 10 )
+@Measurement( iterations = 50 )
+@Fork( 1 )
+public class FirstIterationBenchmark
+{
+    // ----------------------------------------------------------------------
+    // Parameters
+    // ----------------------------------------------------------------------
+
+    @Param( { "1", "10", "100" } )
+    public int publishers;
+
+    @Param( { "10", "100", "1000" } )
+    public int bindings;
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private Injector[] injectors;
+
+    private MutableBeanLocator locator;
+
+    // ----------------------------------------------------------------------
+    // Setup
+    // ----------------------------------------------------------------------
+
+    @Setup( Level.Trial )
+    public void createInjectors()
+    {
+        injectors = SyntheticInjectors.create( publishers, bindings );
+    }
+
+    @Setup( Level.Iteration )
+    public void createLocator()
+    {
+        // single-shot mode, so each iteration sees a locator with nothing subscribed yet
+        locator = SyntheticInjectors.locator( injectors );
+    }
+
+    // ----------------------------------------------------------------------
+    // Benchmarks
+    // ----------------------------------------------------------------------
+
+    @Benchmark
+    public int unqualifiedAll( final Blackhole bh )
+    {
+        return LocateBenchmark.drain( locator.locate( UNQUALIFIED_KEY ), bh );
+    }
+
+    @Benchmark
+    public int markedAll( final Blackhole bh )
+    {
+        return LocateBenchmark.drain( locator.locate( MARKED_KEY ), bh );
+    }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators;
+
+import static org.sonatype.guice.bean.locators.SyntheticInjectors.MARKED_KEY;
+import static org.sonatype.guice.bean.locators.SyntheticInjectors.UNQUALIFIED_KEY;
+
+import java.lang.annotation.Annotation;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonatype.guice.bean.locators.SyntheticInjectors.Bean;
+import org.sonatype.inject.BeanEntry;
+
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+
+/**
+ * Warm lookups against a locator whose publishers have already been subscribed.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class LocateBenchmark
+{
+    // ----------------------------------------------------------------------
+    // Parameters
+    // ----------------------------------------------------------------------
+
+    @Param( { "1", "10", "100" } )
+    public int publishers;
+
+    @Param( { "10", "100", "1000" } )
+    public int bindings;
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private MutableBeanLocator locator;
+
+    private Key<Bean> namedKey;
+
+    // ----------------------------------------------------------------------
+    // Setup
+    // ----------------------------------------------------------------------
+
+    @Setup
+    public void setUp()
+    {
+        locator = SyntheticInjectors.locator( SyntheticInjectors.create( publishers, bindings ) );
+
+        // pick a binding in the middle of the fan-out
+        namedKey = Key.get( Bean.class, Names.named( SyntheticInjectors.name( "I" + publishers / 2, bindings / 2 ) ) );
+
+        // subscribe everything up-front, so we only measure warm lookups
+        drain( locator.locate( UNQUALIFIED_KEY ), null );
+        drain( locator.locate( MARKED_KEY ), null );
+        drain( locator.locate( namedKey ), null );
+    }
+
+    // ----------------------------------------------------------------------
+    // Benchmarks
+    // ----------------------------------------------------------------------
+
+    @Benchmark
+    public Object unqualifiedFirst()
+    {
+        return locator.locate( UNQUALIFIED_KEY ).iterator().next();
+    }
+
+    @Benchmark
+    public int unqualifiedAll( final Blackhole bh )
+    {
+        return drain( locator.locate( UNQUALIFIED_KEY ), bh );
+    }
+
+    @Benchmark
+    public Object named()
+    {
+        return locator.locate( namedKey ).iterator().next();
+    }
+
+    @Benchmark
+    public int markedAll( final Blackhole bh )
+    {
+        return drain( locator.locate( MARKED_KEY ), bh );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    static int drain( final Iterable<? extends BeanEntry<Annotation, Bean>> beans, final Blackhole bh )
+    {
+        int count = 0;
+        for ( final BeanEntry<Annotation, Bean> bean : beans )
+        {
+            if ( null != bh )
+            {
+                bh.consume( bean );
+            }
+            count++;
+        }
+        return count;
+    }
+}
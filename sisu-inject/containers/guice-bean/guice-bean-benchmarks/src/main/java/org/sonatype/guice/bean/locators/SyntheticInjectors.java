@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Type;
+
+import javax.inject.Qualifier;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Names;
+import com.google.inject.util.Types;
+
+/**
+ * Creates injectors with a configurable number of {@link Bean} bindings, for use as synthetic publishers.
+ */
+final class SyntheticInjectors
+{
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    static final Key<Bean> UNQUALIFIED_KEY = Key.get( Bean.class );
+
+    static final Key<Bean> MARKED_KEY = Key.get( Bean.class, Marked.class );
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    private SyntheticInjectors()
+    {
+        // static utility class, not allowed to create instances
+    }
+
+    // ----------------------------------------------------------------------
+    // Utility methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Creates the given number of injectors; each one has a default binding, a binding to a {@link Marked}
+     * implementation, and the given number of named bindings.
+     * 
+     * @param publishers The number of injectors
+     * @param bindings The number of named bindings per injector
+     * @return Synthetic injectors
+     */
+    static Injector[] create( final int publishers, final int bindings )
+    {
+        final Injector[] injectors = new Injector[publishers];
+        for ( int i = 0; i < publishers; i++ )
+        {
+            injectors[i] = create( "I" + i, bindings );
+        }
+        return injectors;
+    }
+
+    /**
+     * Creates an injector with a default binding, a binding to a {@link Marked} implementation, and the given number of
+     * named bindings.
+     * 
+     * @param prefix The name prefix
+     * @param bindings The number of named bindings
+     * @return Synthetic injector
+     */
+    static Injector create( final String prefix, final int bindings )
+    {
+        return Guice.createInjector( new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind( Bean.class ).to( BeanImpl.class );
+                bind( Bean.class ).annotatedWith( Names.named( prefix + 'M' ) ).to( MarkedBeanImpl.class );
+                for ( int i = 0; i < bindings; i++ )
+                {
+                    bind( Bean.class ).annotatedWith( Names.named( name( prefix, i ) ) ).to( BeanImpl.class );
+                }
+            }
+        } );
+    }
+
+    /**
+     * @return Name of the given binding from the injector with the given prefix
+     */
+    static String name( final String prefix, final int index )
+    {
+        return prefix + 'B' + index;
+    }
+
+    /**
+     * Returns a distinct generic type for each index, without needing to generate new classes.
+     * 
+     * @param index The type index
+     * @return Synthetic type
+     */
+    static TypeLiteral<?> type( final int index )
+    {
+        Type type = Object.class;
+        for ( int bits = index | 0x10000; bits > 1; bits >>>= 1 )
+        {
+            type = ( bits & 1 ) == 0 ? Types.listOf( type ) : Types.setOf( type );
+        }
+        return TypeLiteral.get( type );
+    }
+
+    /**
+     * Creates a locator populated with the given injectors; ranks follow the order of the array.
+     * 
+     * @param injectors The injectors
+     * @return Bean locator
+     */
+    @SuppressWarnings( "deprecation" )
+    static MutableBeanLocator locator( final Injector[] injectors )
+    {
+        final MutableBeanLocator locator = new DefaultBeanLocator();
+        for ( int i = 0; i < injectors.length; i++ )
+        {
+            locator.add( injectors[i], i );
+        }
+        return locator;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    interface Bean
+    {
+    }
+
+    static final class BeanImpl
+        implements Bean
+    {
+    }
+
+    @Marked
+    static final class MarkedBeanImpl
+        implements Bean
+    {
+    }
+
+    @Qualifier
+    @Retention( RetentionPolicy.RUNTIME )
+    @interface Marked
+    {
+    }
+}
@@ -12,7 +12,6 @@
 package org.sonatype.guice.bean.binders;
 
 import java.lang.annotation.Annotation;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -22,6 +21,7 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.sonatype.guice.bean.locators.BeanLocator;
+import org.sonatype.guice.bean.locators.BeanLocators;
 import org.sonatype.guice.bean.locators.EntryListAdapter;
 import org.sonatype.guice.bean.locators.EntryMapAdapter;
 import org.sonatype.guice.bean.locators.NamedIterableAdapter;
@@ -77,7 +77,7 @@ final class BeanEntryProvider<K extends Annotation, V>
 }
 
 /**
- * Provides a {@link List} of qualified beans.
+ * Provides a {@link List} of qualified beans; optionally as an array-backed snapshot.
  */
 final class BeanListProvider<K extends Annotation, V>
     implements Provider<List<V>>
@@ -91,13 +91,16 @@ final class BeanListProvider<K extends Annotation, V>
 
     private final Key<V> key;
 
+    private final boolean snapshot;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
 
-    BeanListProvider( final Key<V> key )
+    BeanListProvider( final Key<V> key, final boolean snapshot )
     {
         this.key = key;
+        this.snapshot = snapshot;
     }
 
     // ----------------------------------------------------------------------
@@ -106,14 +109,15 @@ final class BeanListProvider<K extends Annotation, V>
 
     public List<V> get()
     {
-        return new EntryListAdapter<Annotation, V>( locator.locate( key ) );
+        final Iterable<BeanEntry<Annotation, V>> beans = locator.locate( key );
+        return snapshot ? EntryListAdapter.snapshot( beans ) : new EntryListAdapter<Annotation, V>( beans );
     }
 }
 
 // ----------------------------------------------------------------------
 
 /**
- * Provides a {@link Map} of qualified beans.
+ * Provides a {@link Map} of qualified beans; optionally as an array-backed snapshot.
  */
 @SuppressWarnings( { "unchecked", "rawtypes" } )
 final class BeanMapProvider<K extends Annotation, V>
@@ -128,13 +132,16 @@ final class BeanMapProvider<K extends Annotation, V>
 
     private final Key<V> key;
 
+    private final boolean snapshot;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
 
-    BeanMapProvider( final Key<V> key )
+    BeanMapProvider( final Key<V> key, final boolean snapshot )
     {
         this.key = key;
+        this.snapshot = snapshot;
     }
 
     // ----------------------------------------------------------------------
@@ -143,14 +150,15 @@ final class BeanMapProvider<K extends Annotation, V>
 
     public Map<K, V> get()
     {
-        return new EntryMapAdapter( locator.locate( key ) );
+        final Iterable beans = locator.locate( key );
+        return snapshot ? EntryMapAdapter.snapshot( beans ) : new EntryMapAdapter( beans );
     }
 }
 
 // ----------------------------------------------------------------------
 
 /**
- * Provides a {@link Map} of named beans.
+ * Provides a {@link Map} of named beans; optionally as an array-backed snapshot.
  */
 @SuppressWarnings( { "unchecked", "rawtypes" } )
 final class NamedBeanMapProvider<V>
@@ -165,13 +173,16 @@ final class NamedBeanMapProvider<V>
 
     private final Key key;
 
+    private final boolean snapshot;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
 
-    NamedBeanMapProvider( final TypeLiteral<?> valueType )
+    NamedBeanMapProvider( final TypeLiteral<?> valueType, final boolean snapshot )
     {
         this.key = Key.get( valueType, Named.class );
+        this.snapshot = snapshot;
     }
 
     // ----------------------------------------------------------------------
@@ -180,7 +191,8 @@ final class NamedBeanMapProvider<V>
 
     public Map<String, V> get()
     {
-        return new EntryMapAdapter( new NamedIterableAdapter( locator.locate( key ) ) );
+        final Iterable beans = new NamedIterableAdapter( locator.locate( key ) );
+        return snapshot ? EntryMapAdapter.snapshot( beans ) : new EntryMapAdapter( beans );
     }
 }
 
@@ -225,8 +237,8 @@ final class BeanProvider<V>
 
     static <T> T get( final BeanLocator locator, final Key<T> key )
     {
-        final Iterator<? extends Entry<Annotation, T>> i = locator.locate( key ).iterator();
-        return i.hasNext() ? i.next().getValue() : null; // TODO: dynamic proxy??
+        final Entry<Annotation, T> bean = BeanLocators.locateFirst( locator, key );
+        return null != bean ? bean.getValue() : null; // TODO: dynamic proxy??
     }
 }
 
@@ -44,6 +44,11 @@ final class LocatorWiring
     // Constants
     // ----------------------------------------------------------------------
 
+    /**
+     * Set <b>-Dorg.sonatype.inject.snapshots=true</b> to import bean lists and maps as array-backed snapshots.
+     */
+    static final String SNAPSHOTS_KEY = "org.sonatype.inject.snapshots";
+
     private static final HiddenBinding HIDDEN_SOURCE = new HiddenBinding()
     {
         @Override
@@ -59,6 +64,8 @@ final class LocatorWiring
 
     private final Binder binder;
 
+    private final boolean snapshots;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
@@ -66,6 +73,7 @@ final class LocatorWiring
     LocatorWiring( final Binder binder )
     {
         this.binder = binder.withSource( HIDDEN_SOURCE );
+        snapshots = Boolean.getBoolean( SNAPSHOTS_KEY );
     }
 
     // ----------------------------------------------------------------------
@@ -107,11 +115,12 @@ final class LocatorWiring
             final Class qualifierType = parameters[0].getRawType();
             if ( String.class == qualifierType )
             {
-                binder.bind( key ).toProvider( new NamedBeanMapProvider( parameters[1] ) );
+                binder.bind( key ).toProvider( new NamedBeanMapProvider( parameters[1], snapshots ) );
             }
             else if ( qualifierType.isAnnotationPresent( Qualifier.class ) )
             {
-                binder.bind( key ).toProvider( new BeanMapProvider( Key.get( parameters[1], qualifierType ) ) );
+                final Key beanKey = Key.get( parameters[1], qualifierType );
+                binder.bind( key ).toProvider( new BeanMapProvider( beanKey, snapshots ) );
             }
         }
     }
@@ -141,7 +150,7 @@ final class LocatorWiring
             }
             else
             {
-                binder.bind( key ).toProvider( new BeanListProvider( Key.get( elementType ) ) );
+                binder.bind( key ).toProvider( new BeanListProvider( Key.get( elementType ), snapshots ) );
             }
         }
     }
@@ -20,8 +20,11 @@ import javax.inject.Provider;
 
 import org.sonatype.guice.bean.locators.BeanLocator;
 import org.sonatype.guice.bean.locators.WildcardKey;
+import org.sonatype.guice.bean.reflect.ClassSpace;
 import org.sonatype.guice.bean.reflect.TypeParameters;
-import org.sonatype.guice.bean.scanners.QualifiedTypeListener;
+import org.sonatype.guice.bean.scanners.IndexedTypeListener;
+import org.sonatype.guice.bean.scanners.index.IndexedType;
+import org.sonatype.inject.BatchMediator;
 import org.sonatype.inject.EagerSingleton;
 import org.sonatype.inject.Mediator;
 
@@ -36,10 +39,10 @@ import com.google.inject.name.Named;
 import com.google.inject.name.Names;
 
 /**
- * {@link QualifiedTypeListener} that installs {@link Module}s, registers {@link Mediator}s, and binds types.
+ * {@link IndexedTypeListener} that installs {@link Module}s, registers {@link Mediator}s, and binds types.
  */
 public final class QualifiedTypeBinder
-    implements QualifiedTypeListener
+    implements IndexedTypeListener
 {
     // ----------------------------------------------------------------------
     // Constants
@@ -76,19 +79,7 @@ public final class QualifiedTypeBinder
     @SuppressWarnings( { "unchecked", "rawtypes" } )
     public void hear( final Annotation qualifier, final Class qualifiedType, final Object source )
     {
-        if ( currentSource != source )
-        {
-            if ( null != source )
-            {
-                binder = rootBinder.withSource( source );
-                currentSource = source;
-            }
-            else
-            {
-                binder = rootBinder;
-                currentSource = null;
-            }
-        }
+        useSource( source );
 
         if ( !TypeParameters.isConcrete( qualifiedType ) )
         {
@@ -112,10 +103,71 @@ public final class QualifiedTypeBinder
         }
     }
 
+    @SuppressWarnings( { "unchecked", "rawtypes" } )
+    public void hear( final IndexedType indexedType, final ClassSpace space, final Object source )
+    {
+        final Class clazz = space.loadClass( indexedType.getName() );
+        final String[] args = indexedType.getTypeArguments();
+        final String name = indexedType.getBindingName();
+
+        useSource( source );
+
+        switch ( getKind( indexedType.getKind(), args ) )
+        {
+            case BEAN:
+                bindQualifiedType( clazz, null != name ? Names.named( name ) : null,
+                                   loadClasses( space, indexedType.getBindingTypes() ),
+                                   indexedType.isEagerSingleton() );
+                break;
+            case PROVIDER:
+                bindProviderType( clazz, getBindingKey( TypeLiteral.get( space.loadClass( args[0] ) ),
+                                                        null != name ? Names.named( name ) : null ),
+                                  loadClasses( space, indexedType.getBindingTypes() ),
+                                  indexedType.isEagerSingleton(), indexedType.isSingleton() );
+                break;
+            case MODULE:
+                installModule( clazz );
+                break;
+            case MEDIATOR:
+                final Mediator mediator = newInstance( (Class<Mediator>) clazz );
+                if ( null != mediator )
+                {
+                    mediate( Key.get( space.loadClass( args[1] ), (Class) space.loadClass( args[0] ) ), mediator,
+                             space.loadClass( args[2] ) );
+                }
+                break;
+            default:
+                hear( null, clazz, source );
+                break;
+        }
+    }
+
     // ----------------------------------------------------------------------
     // Implementation methods
     // ----------------------------------------------------------------------
 
+    /**
+     * Switches to a binder that records the given source.
+     * 
+     * @param source The source of the next binding
+     */
+    private void useSource( final Object source )
+    {
+        if ( currentSource != source )
+        {
+            if ( null != source )
+            {
+                binder = rootBinder.withSource( source );
+                currentSource = source;
+            }
+            else
+            {
+                binder = rootBinder;
+                currentSource = null;
+            }
+        }
+    }
+
     /**
      * Installs an instance of the given {@link Module}.
      * 
@@ -131,14 +183,18 @@ public final class QualifiedTypeBinder
     }
 
     /**
-     * Registers an instance of the given {@link Mediator} using its generic type parameters as configuration.
+     * Registers an instance of the given {@link Mediator} using its generic type parameters as configuration; a
+     * {@link BatchMediator} will receive its updates in batches.
      * 
      * @param mediatorType The mediator type
      */
     @SuppressWarnings( { "unchecked", "rawtypes" } )
     private void registerMediator( final Class<Mediator> mediatorType )
     {
-        final TypeLiteral<?>[] params = getSuperTypeParameters( mediatorType, Mediator.class );
+        final Class<?> mediatorApi = BatchMediator.class.isAssignableFrom( mediatorType ) ? BatchMediator.class
+                        : Mediator.class;
+
+        final TypeLiteral<?>[] params = getSuperTypeParameters( mediatorType, mediatorApi );
         if ( params.length != 3 )
         {
             binder.addError( mediatorType + " has wrong number of type arguments" );
@@ -187,25 +243,44 @@ public final class QualifiedTypeBinder
         }
         else
         {
-            final Key key = getBindingKey( params[0], getBindingName( providerType ) );
-            final ScopedBindingBuilder sbb = binder.bind( key ).toProvider( providerType );
-            if ( providerType.isAnnotationPresent( EagerSingleton.class ) )
-            {
-                sbb.asEagerSingleton();
-            }
-            else if ( providerType.isAnnotationPresent( javax.inject.Singleton.class )
-                || providerType.isAnnotationPresent( com.google.inject.Singleton.class ) )
-            {
-                sbb.in( Scopes.SINGLETON );
-            }
+            final boolean singleton =
+                providerType.isAnnotationPresent( javax.inject.Singleton.class )
+                    || providerType.isAnnotationPresent( com.google.inject.Singleton.class );
+
+            bindProviderType( providerType, getBindingKey( params[0], getBindingName( providerType ) ),
+                              getBindingTypes( providerType ), providerType.isAnnotationPresent( EagerSingleton.class ),
+                              singleton );
+        }
+    }
+
+    /**
+     * Binds the given provider type using the given binding key and options.
+     * 
+     * @param providerType The provider type
+     * @param key The binding key
+     * @param types The restricted binding types; {@code null} if not restricted
+     * @param eager {@code true} if the provider is an eager singleton
+     * @param singleton {@code true} if the provider is a singleton
+     */
+    @SuppressWarnings( { "unchecked", "rawtypes" } )
+    private void bindProviderType( final Class providerType, final Key key, final Class<?>[] types,
+                                   final boolean eager, final boolean singleton )
+    {
+        final ScopedBindingBuilder sbb = binder.bind( key ).toProvider( providerType );
+        if ( eager )
+        {
+            sbb.asEagerSingleton();
+        }
+        else if ( singleton )
+        {
+            sbb.in( Scopes.SINGLETON );
+        }
 
-            final Class<?>[] types = getBindingTypes( providerType );
-            if ( null != types )
+        if ( null != types )
+        {
+            for ( final Class bindingType : types )
             {
-                for ( final Class bindingType : types )
-                {
-                    binder.bind( key.ofType( bindingType ) ).to( key );
-                }
+                binder.bind( key.ofType( bindingType ) ).to( key );
             }
         }
     }
@@ -215,18 +290,30 @@ public final class QualifiedTypeBinder
      * 
      * @param qualifiedType The qualified type
      */
-    @SuppressWarnings( { "unchecked", "rawtypes" } )
     private void bindQualifiedType( final Class<?> qualifiedType )
+    {
+        bindQualifiedType( qualifiedType, getBindingName( qualifiedType ), getBindingTypes( qualifiedType ),
+                           qualifiedType.isAnnotationPresent( EagerSingleton.class ) );
+    }
+
+    /**
+     * Binds the given qualified type using the given binding name and options.
+     * 
+     * @param qualifiedType The qualified type
+     * @param bindingName The binding name; {@code null} for the default binding
+     * @param types The restricted binding types; {@code null} if not restricted
+     * @param eager {@code true} if the type is an eager singleton
+     */
+    @SuppressWarnings( { "unchecked", "rawtypes" } )
+    private void bindQualifiedType( final Class<?> qualifiedType, final Named bindingName, final Class<?>[] types,
+                                    final boolean eager )
     {
         final ScopedBindingBuilder sbb = binder.bind( qualifiedType );
-        if ( qualifiedType.isAnnotationPresent( EagerSingleton.class ) )
+        if ( eager )
         {
             sbb.asEagerSingleton();
         }
 
-        final Named bindingName = getBindingName( qualifiedType );
-        final Class<?>[] types = getBindingTypes( qualifiedType );
-
         if ( null != types )
         {
             final Key key = getBindingKey( OBJECT_TYPE_LITERAL, bindingName );
@@ -275,6 +362,44 @@ public final class QualifiedTypeBinder
         return TypeParameters.get( TypeLiteral.get( type ).getSupertype( superType ) );
     }
 
+    /**
+     * Treats indexed types with the wrong number of type arguments as unresolved, so reflection reports the problem.
+     * 
+     * @param kind The indexed kind
+     * @param args The indexed type arguments
+     * @return Kind of binding to use
+     */
+    private static IndexedType.Kind getKind( final IndexedType.Kind kind, final String[] args )
+    {
+        if ( IndexedType.Kind.PROVIDER == kind && args.length != 1 || IndexedType.Kind.MEDIATOR == kind
+            && args.length != 3 )
+        {
+            return IndexedType.Kind.UNRESOLVED;
+        }
+        return kind;
+    }
+
+    /**
+     * Loads the named classes from the given space.
+     * 
+     * @param space The class space
+     * @param names The class names; may be {@code null}
+     * @return Loaded classes; {@code null} if there were no names
+     */
+    private static Class<?>[] loadClasses( final ClassSpace space, final String[] names )
+    {
+        if ( null == names )
+        {
+            return null;
+        }
+        final Class<?>[] classes = new Class<?>[names.length];
+        for ( int i = 0; i < names.length; i++ )
+        {
+            classes[i] = space.loadClass( names[i] );
+        }
+        return classes;
+    }
+
     private static <T> Key<T> getBindingKey( final TypeLiteral<T> bindingType, final Annotation qualifier )
     {
         return null != qualifier ? Key.get( bindingType, qualifier ) : Key.get( bindingType );
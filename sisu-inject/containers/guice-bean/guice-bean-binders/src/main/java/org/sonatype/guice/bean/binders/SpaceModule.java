@@ -11,16 +11,30 @@
  *******************************************************************************/
 package org.sonatype.guice.bean.binders;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Qualifier;
 
 import org.sonatype.guice.bean.reflect.ClassSpace;
+import org.sonatype.guice.bean.reflect.Logs;
+import org.sonatype.guice.bean.reflect.Streams;
+import org.sonatype.guice.bean.scanners.CachedClassFinder;
+import org.sonatype.guice.bean.scanners.ClassFinder;
 import org.sonatype.guice.bean.scanners.ClassSpaceScanner;
 import org.sonatype.guice.bean.scanners.ClassSpaceVisitor;
 import org.sonatype.guice.bean.scanners.QualifiedTypeVisitor;
+import org.sonatype.guice.bean.scanners.index.IndexedType;
+import org.sonatype.guice.bean.scanners.index.SisuIndex;
 import org.sonatype.guice.bean.scanners.index.SisuIndexFinder;
 import org.sonatype.inject.BeanScanning;
 
@@ -35,6 +49,12 @@ import com.google.inject.spi.Elements;
 public class SpaceModule
     implements Module
 {
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    private static final String SCAN_CACHE_DIR = System.getProperty( "org.sonatype.inject.scan.cache" );
+
     // ----------------------------------------------------------------------
     // Implementation fields
     // ----------------------------------------------------------------------
@@ -76,14 +96,19 @@ public class SpaceModule
                 scanner = new ClassSpaceScanner( space );
                 break;
             case INDEX:
-                scanner = new ClassSpaceScanner( new SisuIndexFinder( false ), space );
+                scanner = new ClassSpaceScanner( new SisuIndexFinder( false, installGeneratedModules( binder, false ) ),
+                                                 space );
                 break;
             case GLOBAL_INDEX:
-                scanner = new ClassSpaceScanner( new SisuIndexFinder( true ), space );
+                scanner = new ClassSpaceScanner( new SisuIndexFinder( true, installGeneratedModules( binder, true ) ),
+                                                 space );
                 break;
             case CACHE:
                 binder.install( Elements.getModule( cachedScan() ) );
                 return;
+            case BINARY_INDEX:
+                bindIndexedTypes( binder, installGeneratedModules( binder, false ) );
+                return;
             case OFF:
                 return;
         }
@@ -114,15 +139,118 @@ public class SpaceModule
         List<Element> elements = cachedElementsMap.get( key );
         if ( null == elements )
         {
+            // optional persistent cache that lets later processes skip unchanged jars and directories
+            final ClassFinder finder =
+                null != SCAN_CACHE_DIR ? new CachedClassFinder( new File( SCAN_CACHE_DIR ) ) : null;
             elements = Elements.getElements( new Module()
             {
                 public void configure( final Binder binder )
                 {
-                    new ClassSpaceScanner( space ).accept( visitor( binder ) );
+                    new ClassSpaceScanner( finder, space ).accept( visitor( binder ) );
                 }
             } );
             cachedElementsMap.put( key, elements );
         }
         return elements;
     }
+
+    /**
+     * Installs binding modules generated at build time, collecting the types they bind.
+     * 
+     * @param binder The Guice binder
+     * @param globalIndex When {@code true} use the global index; otherwise use the local index
+     * @return Names of the types bound by the installed modules
+     */
+    private Set<String> installGeneratedModules( final Binder binder, final boolean globalIndex )
+    {
+        final Set<String> boundTypes = new HashSet<String>();
+        for ( final String name : new SisuIndexFinder( globalIndex ).findModules( space ) )
+        {
+            final Module module;
+            try
+            {
+                module = (Module) space.loadClass( name ).newInstance();
+            }
+            catch ( final Throwable e )
+            {
+                Logs.warn( "Problem installing: {}", name, e );
+                continue;
+            }
+            binder.install( module );
+            try
+            {
+                final Object names = module.getClass().getField( SisuIndex.BOUND_TYPES ).get( null );
+                boundTypes.addAll( Arrays.asList( (String[]) names ) );
+            }
+            catch ( final Throwable e )
+            {
+                Logs.debug( "Problem reading: {}", name, e ); // types are not indexed by older generated modules
+            }
+        }
+        return boundTypes;
+    }
+
+    /**
+     * Binds qualified types listed in local binary indexes, without scanning their class resources; types only listed
+     * in the local text index are scanned as usual.
+     * 
+     * @param binder The Guice binder
+     * @param boundTypes Names of the types already bound by generated modules
+     */
+    private void bindIndexedTypes( final Binder binder, final Set<String> boundTypes )
+    {
+        final ClassSpaceVisitor visitor = visitor( binder );
+        if ( !( visitor instanceof QualifiedTypeVisitor ) )
+        {
+            // custom visitors need to see the class resources
+            new ClassSpaceScanner( new SisuIndexFinder( false, boundTypes ), space ).accept( visitor );
+            return;
+        }
+
+        final QualifiedTypeVisitor typeVisitor = (QualifiedTypeVisitor) visitor;
+        final Set<String> indexedNames = new HashSet<String>( boundTypes );
+
+        typeVisitor.visit( space );
+        final Enumeration<URL> indices = space.findEntries( "META-INF/sisu/", SisuIndex.BINARY, false );
+        while ( indices.hasMoreElements() )
+        {
+            final URL url = indices.nextElement();
+            final String path = url.getPath();
+            final Object source = path.substring( 0, path.lastIndexOf( "META-INF/sisu/" ) );
+            try
+            {
+                final InputStream in = Streams.open( url );
+                try
+                {
+                    for ( final IndexedType type : IndexedType.read( in ) )
+                    {
+                        if ( !indexedNames.add( type.getName() ) )
+                        {
+                            continue; // already bound
+                        }
+                        try
+                        {
+                            typeVisitor.visitIndexedType( type, source );
+                        }
+                        catch ( final Throwable e )
+                        {
+                            Logs.debug( "Problem binding: {}", type, e );
+                        }
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            catch ( final IOException e )
+            {
+                Logs.warn( "Problem reading: {}", url, e );
+            }
+        }
+        typeVisitor.visitEnd();
+
+        // jars without a binary index still have their text index
+        new ClassSpaceScanner( new SisuIndexFinder( false, indexedNames ), space ).accept( typeVisitor );
+    }
 }
@@ -36,5 +36,10 @@ public enum BeanScanning
     /**
      * Use global index (application)
      */
-    GLOBAL_INDEX
+    GLOBAL_INDEX,
+
+    /**
+     * Bind from local binary index (no scanning)
+     */
+    BINARY_INDEX
 }
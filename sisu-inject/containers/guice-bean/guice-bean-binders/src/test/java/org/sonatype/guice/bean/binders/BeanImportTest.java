@@ -23,6 +23,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.RandomAccess;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -411,6 +412,37 @@ public class BeanImportTest
         assertEquals( 1, hintMap.map.size() );
     }
 
+    public void testSnapshotImports()
+    {
+        final Injector liveInjector = Guice.createInjector( new WireModule( new TestModule() ) );
+        final X liveList = liveInjector.getInstance( Key.get( X.class, Names.named( "UL" ) ) );
+        assertFalse( ( (UnrestrictedList) liveList ).list instanceof RandomAccess );
+
+        System.setProperty( LocatorWiring.SNAPSHOTS_KEY, "true" );
+        final Injector injector;
+        try
+        {
+            injector = Guice.createInjector( new WireModule( new TestModule() ) );
+        }
+        finally
+        {
+            System.clearProperty( LocatorWiring.SNAPSHOTS_KEY );
+        }
+
+        final UnrestrictedList unrestrictedList =
+            (UnrestrictedList) injector.getInstance( Key.get( X.class, Names.named( "UL" ) ) );
+
+        assertTrue( unrestrictedList.list instanceof RandomAccess );
+        assertEquals( 2, unrestrictedList.list.size() );
+        assertSame( unrestrictedList.local, unrestrictedList.list.get( 0 ) );
+        assertSame( unrestrictedList.fuzzy, unrestrictedList.list.get( 1 ) );
+
+        final HintMap hintMap = (HintMap) injector.getInstance( Key.get( X.class, Names.named( "HM" ) ) );
+        assertEquals( Collections.singletonMap( Names.named( "local" ), hintMap.local ), hintMap.namedMap );
+        assertSame( hintMap.local, hintMap.map.get( "local" ) );
+        assertEquals( 1, hintMap.map.size() );
+    }
+
     public void testBeanEntries()
     {
         final Injector injector = Guice.createInjector( new WireModule( new TestModule() ) );
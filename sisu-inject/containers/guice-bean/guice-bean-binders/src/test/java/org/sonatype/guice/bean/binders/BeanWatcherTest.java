@@ -14,6 +14,7 @@ package org.sonatype.guice.bean.binders;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
@@ -24,6 +25,7 @@ import junit.framework.TestCase;
 import org.sonatype.guice.bean.locators.MutableBeanLocator;
 import org.sonatype.guice.bean.reflect.ClassSpace;
 import org.sonatype.guice.bean.reflect.URLClassSpace;
+import org.sonatype.inject.BatchMediator;
 import org.sonatype.inject.BeanEntry;
 import org.sonatype.inject.EagerSingleton;
 import org.sonatype.inject.Mediator;
@@ -128,9 +130,52 @@ public class BeanWatcherTest
         }
     }
 
+    @javax.inject.Named
+    static class BatchItemWatcher
+    {
+        Map<String, Item> items = new HashMap<String, Item>();
+
+        int updates;
+    }
+
+    @javax.inject.Named
+    static class BatchItemMediator
+        implements BatchMediator<javax.inject.Named, Item, BatchItemWatcher>
+    {
+        public void update( final List<BeanEntry<javax.inject.Named, Item>> added,
+                            final List<BeanEntry<javax.inject.Named, Item>> removed, final BatchItemWatcher watcher )
+            throws Exception
+        {
+            for ( final BeanEntry<javax.inject.Named, Item> bean : removed )
+            {
+                assertEquals( watcher.items.remove( bean.getKey().value() ), bean.getValue() );
+            }
+            for ( final BeanEntry<javax.inject.Named, Item> bean : added )
+            {
+                assertNull( watcher.items.put( bean.getKey().value(), bean.getValue() ) );
+            }
+            watcher.updates++;
+        }
+
+        public void add( final BeanEntry<javax.inject.Named, Item> bean, final BatchItemWatcher watcher )
+            throws Exception
+        {
+            fail( "Expected batch update" );
+        }
+
+        public void remove( final BeanEntry<javax.inject.Named, Item> bean, final BatchItemWatcher watcher )
+            throws Exception
+        {
+            fail( "Expected batch update" );
+        }
+    }
+
     @Inject
     private NamedItemWatcher namedItemWatcher;
 
+    @Inject
+    private BatchItemWatcher batchItemWatcher;
+
     @Inject
     private MarkedItemWatcher markedItemWatcher;
 
@@ -167,4 +212,15 @@ public class BeanWatcherTest
         assertEquals( 0, namedItemWatcher.items.size() );
         assertEquals( 0, markedItemWatcher.items.size() );
     }
+
+    public void testBatchWatcher()
+    {
+        assertEquals( 4, batchItemWatcher.items.size() );
+        assertEquals( 1, batchItemWatcher.updates );
+
+        injector.getInstance( MutableBeanLocator.class ).remove( injector );
+
+        assertEquals( 0, batchItemWatcher.items.size() );
+        assertEquals( 2, batchItemWatcher.updates );
+    }
 }
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.binders;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import junit.framework.TestCase;
+
+import org.sonatype.guice.bean.reflect.ClassSpace;
+import org.sonatype.guice.bean.reflect.URLClassSpace;
+import org.sonatype.guice.bean.scanners.index.SisuIndex;
+import org.sonatype.guice.bean.scanners.index.SisuIndexAPT6;
+import org.sonatype.inject.BeanScanning;
+
+import com.google.inject.Binding;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.spi.Element;
+import com.google.inject.spi.Elements;
+
+public class GeneratedModuleTest
+    extends TestCase
+{
+    private static final String BEANS_SOURCE = "package gen;\n" //
+        + "import javax.inject.*;\n" //
+        + "import javax.enterprise.inject.Typed;\n" //
+        + "import org.sonatype.inject.EagerSingleton;\n" //
+        + "public class Beans {\n" //
+        + "  @Named public static class DefaultBean {}\n" //
+        + "  @Named( \"eager\" ) @EagerSingleton public static class EagerBean {}\n" //
+        + "  @Named @Typed( Runnable.class ) public static class TypedBean implements Runnable {\n" //
+        + "    public void run() {}\n" //
+        + "  }\n" //
+        + "  @Named( \"thread\" ) @Singleton public static class ThreadProvider implements Provider<Thread> {\n" //
+        + "    public Thread get() { return new Thread(); }\n" //
+        + "  }\n" //
+        + "  @Named public static class BeanModule extends com.google.inject.AbstractModule {\n" //
+        + "    protected void configure() { bind( String.class ).toInstance( \"module\" ); }\n" //
+        + "  }\n" //
+        + "  @Named private static class Hidden { Hidden() {} }\n" //
+        + "  @Named public static class ListProvider implements Provider<java.util.List<String>> {\n" //
+        + "    public java.util.List<String> get() { return null; }\n" //
+        + "  }\n" //
+        + "}\n";
+
+    public void testGeneratedModule()
+        throws Exception
+    {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if ( null == compiler )
+        {
+            return; // not running on a JDK
+        }
+
+        final File genDir = new File( "target/generated-module" );
+        final File srcDir = new File( genDir, "src/gen" );
+        final File outDir = new File( genDir, "classes" );
+        srcDir.mkdirs();
+        outDir.mkdirs();
+
+        final File beansFile = new File( srcDir, "Beans.java" );
+        final Writer writer = new FileWriter( beansFile );
+        writer.write( BEANS_SOURCE );
+        writer.close();
+
+        final StringBuilder classPath = new StringBuilder();
+        for ( final URL url : new URLClassSpace( getClass().getClassLoader() ).getURLs() )
+        {
+            classPath.append( new File( url.toURI() ).getPath() ).append( File.pathSeparatorChar );
+        }
+
+        final List<String> args = new ArrayList<String>();
+        args.addAll( Arrays.asList( "-nowarn", "-classpath", classPath.toString(), "-d", outDir.getPath() ) );
+        args.addAll( Arrays.asList( "-processor", SisuIndexAPT6.class.getName() ) );
+        args.addAll( Arrays.asList( "-A" + SisuIndexAPT6.GENERATE_MODULES + "=true", beansFile.getPath() ) );
+
+        assertEquals( 0, compiler.run( null, null, null, args.toArray( new String[args.size()] ) ) );
+
+        assertEquals( Arrays.asList( "gen.Beans_SisuModule" ), readTable( outDir, SisuIndex.MODULE ) );
+        assertEquals( Arrays.asList( "gen.Beans$BeanModule", "gen.Beans$DefaultBean", "gen.Beans$EagerBean",
+                                     "gen.Beans$Hidden", "gen.Beans$ListProvider", "gen.Beans$ThreadProvider",
+                                     "gen.Beans$TypedBean" ), readTable( outDir, SisuIndex.NAMED ) );
+
+        final URL[] outURLs = { outDir.toURI().toURL() };
+        final ClassLoader loader = new URLClassLoader( outURLs, getClass().getClassLoader() );
+        final ClassSpace space = new URLClassSpace( loader, outURLs );
+
+        final Class<?> moduleClazz = loader.loadClass( "gen.Beans_SisuModule" );
+        final Object boundTypes = moduleClazz.getField( SisuIndex.BOUND_TYPES ).get( null );
+        assertEquals( Arrays.asList( "gen.Beans$DefaultBean", "gen.Beans$EagerBean", "gen.Beans$TypedBean",
+                                     "gen.Beans$ThreadProvider", "gen.Beans$BeanModule" ),
+                      Arrays.asList( (String[]) boundTypes ) );
+
+
+        final Injector scanned = Guice.createInjector( new SpaceModule( space, BeanScanning.ON ) );
+        final Injector indexed = Guice.createInjector( new SpaceModule( space, BeanScanning.INDEX ) );
+        final Injector binary = Guice.createInjector( new SpaceModule( space, BeanScanning.BINARY_INDEX ) );
+
+        assertEquals( scanned.getBindings().keySet(), indexed.getBindings().keySet() );
+        assertEquals( scanned.getBindings().keySet(), binary.getBindings().keySet() );
+
+        // types bound by generated modules should not be bound again at runtime
+        final int numBindings = countBindings( new SpaceModule( space, BeanScanning.ON ) );
+        assertEquals( numBindings, countBindings( new SpaceModule( space, BeanScanning.INDEX ) ) );
+        assertEquals( numBindings, countBindings( new SpaceModule( space, BeanScanning.BINARY_INDEX ) ) );
+    }
+
+    private static int countBindings( final Module module )
+    {
+        int count = 0;
+        for ( final Element e : Elements.getElements( module ) )
+        {
+            if ( e instanceof Binding<?> )
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static List<String> readTable( final File outDir, final String name )
+        throws IOException
+    {
+        final List<String> lines = new ArrayList<String>();
+        final File table = new File( outDir, "META-INF/sisu/" + name );
+        final BufferedReader reader = new BufferedReader( new FileReader( table ) );
+        try
+        {
+            for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+            {
+                lines.add( line );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        Collections.sort( lines );
+        return lines;
+    }
+}
@@ -11,12 +11,17 @@
  *******************************************************************************/
 package org.sonatype.guice.bean.binders;
 
+import java.io.File;
 import java.io.Serializable;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.net.URL;
 import java.util.EventListener;
+import java.util.HashSet;
+import java.util.List;
 import java.util.RandomAccess;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 import javax.enterprise.inject.Typed;
@@ -29,19 +34,28 @@ import junit.framework.TestCase;
 import org.sonatype.guice.bean.locators.BeanLocator;
 import org.sonatype.guice.bean.reflect.ClassSpace;
 import org.sonatype.guice.bean.reflect.URLClassSpace;
+import org.sonatype.guice.bean.scanners.ClassSpaceVisitor;
 import org.sonatype.guice.bean.scanners.QualifiedTypeListener;
+import org.sonatype.guice.bean.scanners.QualifiedTypeVisitor;
+import org.sonatype.guice.bean.scanners.index.IndexedType;
+import org.sonatype.guice.bean.scanners.index.SisuIndex;
+import org.sonatype.inject.BeanScanning;
 import org.sonatype.inject.BeanEntry;
 import org.sonatype.inject.EagerSingleton;
 import org.sonatype.inject.Mediator;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Binder;
+import com.google.inject.Binding;
 import com.google.inject.Guice;
 import com.google.inject.ImplementedBy;
 import com.google.inject.Injector;
 import com.google.inject.Key;
 import com.google.inject.Module;
 import com.google.inject.name.Names;
+import com.google.inject.spi.Element;
+import com.google.inject.spi.Elements;
+import com.google.inject.spi.Message;
 
 public class QualifiedTypesTest
     extends TestCase
@@ -291,6 +305,99 @@ public class QualifiedTypesTest
         checkLegacyBinding( Callable.class, LegacyCallable.class );
     }
 
+    public void testBinaryIndexBindings()
+        throws Exception
+    {
+        final ClassLoader loader = getClass().getClassLoader();
+        final URL testClasses = new File( "target/test-classes" ).toURI().toURL();
+        final ClassSpace testSpace = new URLClassSpace( loader, new URL[] { testClasses } );
+
+        final File indexDir = new File( "target/binary-index" );
+        new SisuIndex( indexDir ).index( testSpace );
+        assertTrue( new File( indexDir, "META-INF/sisu/" + SisuIndex.BINARY ).isFile() );
+
+        final ClassSpace indexSpace = new URLClassSpace( loader, new URL[] { indexDir.toURI().toURL() } );
+
+        final Injector scannedInjector = Guice.createInjector( new SpaceModule( testSpace, BeanScanning.ON ) );
+        injector = Guice.createInjector( new SpaceModule( indexSpace, BeanScanning.BINARY_INDEX ) );
+        locator = injector.getInstance( BeanLocator.class );
+
+        assertEquals( scannedInjector.getBindings().keySet(), injector.getBindings().keySet() );
+
+        testQualifiedBindings();
+    }
+
+    public void testMalformedIndexedTypes()
+    {
+        final ClassSpace space = new URLClassSpace( getClass().getClassLoader() );
+        final List<Element> elements = Elements.getElements( new Module()
+        {
+            public void configure( final Binder binder )
+            {
+                final QualifiedTypeBinder typeBinder = new QualifiedTypeBinder( binder );
+
+                typeBinder.hear( new IndexedType( QualifiedProviderTest.JSR330CountingThreadProvider.class.getName(),
+                                                  IndexedType.Kind.PROVIDER, false, false, null, null, null ), space,
+                                 null );
+
+                typeBinder.hear( new IndexedType( BeanWatcherTest.NamedItemMediator.class.getName(),
+                                                  IndexedType.Kind.MEDIATOR, false, false, null, null,
+                                                  new String[] { "javax.inject.Named" } ), space, null );
+            }
+        } );
+
+        final Set<Key<?>> keys = new HashSet<Key<?>>();
+        for ( final Element e : elements )
+        {
+            assertFalse( e.toString(), e instanceof Message );
+            if ( e instanceof Binding<?> )
+            {
+                keys.add( ( (Binding<?>) e ).getKey() );
+            }
+        }
+        assertTrue( keys.contains( Key.get( Thread.class, Names.named( "jsr330-counting" ) ) ) );
+    }
+
+    public void testBinaryIndexFallbacks()
+        throws Exception
+    {
+        final ClassLoader loader = getClass().getClassLoader();
+        final URL testClasses = new File( "target/test-classes" ).toURI().toURL();
+        final ClassSpace testSpace = new URLClassSpace( loader, new URL[] { testClasses } );
+        final Injector scannedInjector = Guice.createInjector( new SpaceModule( testSpace, BeanScanning.ON ) );
+
+        // older jars only have the text index
+        final File textIndexDir = new File( "target/text-index" );
+        new SisuIndex( textIndexDir ).index( testSpace );
+        assertTrue( new File( textIndexDir, "META-INF/sisu/" + SisuIndex.BINARY ).delete() );
+
+        final ClassSpace textSpace = new URLClassSpace( loader, new URL[] { textIndexDir.toURI().toURL() } );
+        injector = Guice.createInjector( new SpaceModule( textSpace, BeanScanning.BINARY_INDEX ) );
+        assertEquals( scannedInjector.getBindings().keySet(), injector.getBindings().keySet() );
+
+        // listeners that don't understand indexed types are given the qualifiers
+        final File indexDir = new File( "target/binary-index" );
+        new SisuIndex( indexDir ).index( testSpace );
+
+        final ClassSpace indexSpace = new URLClassSpace( loader, new URL[] { indexDir.toURI().toURL() } );
+        injector = Guice.createInjector( new SpaceModule( indexSpace, BeanScanning.BINARY_INDEX )
+        {
+            @Override
+            protected ClassSpaceVisitor visitor( final Binder binder )
+            {
+                final QualifiedTypeListener delegate = new QualifiedTypeBinder( binder );
+                return new QualifiedTypeVisitor( new QualifiedTypeListener()
+                {
+                    public void hear( final Annotation qualifier, final Class<?> qualifiedType, final Object source )
+                    {
+                        delegate.hear( qualifier, qualifiedType, source );
+                    }
+                } );
+            }
+        } );
+        assertEquals( scannedInjector.getBindings().keySet(), injector.getBindings().keySet() );
+    }
+
     @ImplementedBy( AImpl.class )
     interface A
     {
@@ -13,7 +13,6 @@ package org.sonatype.guice.bean.containers;
 
 import java.io.File;
 import java.lang.annotation.Annotation;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
@@ -25,6 +24,7 @@ import org.junit.Before;
 import org.sonatype.guice.bean.binders.ParameterKeys;
 import org.sonatype.guice.bean.binders.SpaceModule;
 import org.sonatype.guice.bean.binders.WireModule;
+import org.sonatype.guice.bean.locators.BeanLocators;
 import org.sonatype.guice.bean.locators.MutableBeanLocator;
 import org.sonatype.guice.bean.reflect.ClassSpace;
 import org.sonatype.guice.bean.reflect.URLClassSpace;
@@ -168,7 +168,7 @@ public abstract class InjectedTest
 
     private final <T> T lookup( final Key<T> key )
     {
-        final Iterator<? extends Entry<Annotation, T>> i = locator.locate( key ).iterator();
-        return i.hasNext() ? i.next().getValue() : null;
+        final Entry<Annotation, T> bean = BeanLocators.locateFirst( locator, key );
+        return null != bean ? bean.getValue() : null;
     }
 }
@@ -12,12 +12,12 @@
 package org.sonatype.guice.bean.containers;
 
 import java.lang.annotation.Annotation;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.sonatype.guice.bean.binders.ParameterKeys;
 import org.sonatype.guice.bean.locators.BeanLocator;
+import org.sonatype.guice.bean.locators.BeanLocators;
 
 import com.google.inject.Injector;
 import com.google.inject.Key;
@@ -36,8 +36,8 @@ public final class SisuContainer
     public static <T> T lookup( final Key<T> key )
     {
         final BeanLocator locator = injector( key.getTypeLiteral().getRawType() ).getInstance( BeanLocator.class );
-        final Iterator<? extends Entry<Annotation, T>> i = locator.locate( key ).iterator();
-        return i.hasNext() ? i.next().getValue() : null;
+        final Entry<Annotation, T> bean = BeanLocators.locateFirst( locator, key );
+        return null != bean ? bean.getValue() : null;
     }
 
     public static void inject( final Object that )
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators;
+
+import java.lang.annotation.Annotation;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.sonatype.inject.BeanEntry;
+
+import com.google.inject.Binding;
+import com.google.inject.Scopes;
+
+/**
+ * Locator-wide registry of {@link BeanEntry}s, so every sequence of beans shares one entry per qualified singleton
+ * binding. Entries are only weakly held, as are the bindings used to find them; an entry disappears from the registry
+ * once no sequence of beans refers to it. Other bindings supply a new instance per lookup, so they are never shared.
+ */
+final class BeanCache
+{
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private final ConcurrentMap<Object, BeanRef> beanRefs = new ConcurrentHashMap<Object, BeanRef>();
+
+    private final ReferenceQueue<LazyBeanEntry<?, ?>> queue = new ReferenceQueue<LazyBeanEntry<?, ?>>();
+
+    // ----------------------------------------------------------------------
+    // Local methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Returns the shared {@link BeanEntry} for the given qualified singleton binding; creates one if it doesn't already
+     * exist. Non-singleton bindings always get a new entry.
+     * 
+     * @param qualifier The qualifier
+     * @param binding The binding
+     * @param rank The assigned rank
+     * @return Shared bean entry, or a new entry if the binding is not a singleton
+     */
+    @SuppressWarnings( "unchecked" )
+    <Q extends Annotation, T> LazyBeanEntry<Q, T> get( final Q qualifier, final Binding<T> binding, final int rank )
+    {
+        if ( !Scopes.isSingleton( binding ) )
+        {
+            return new LazyBeanEntry<Q, T>( qualifier, binding, rank );
+        }
+
+        purgeStaleRefs();
+
+        final BeanKey key = new BeanKey( qualifier, binding, rank );
+        BeanRef beanRef = beanRefs.get( key );
+        LazyBeanEntry<Q, T> bean = null != beanRef ? (LazyBeanEntry<Q, T>) beanRef.get() : null;
+        if ( null != bean )
+        {
+            return bean;
+        }
+
+        final LazyBeanEntry<Q, T> newBean = new LazyBeanEntry<Q, T>( qualifier, binding, rank );
+        final BeanRef newBeanRef = new BeanRef( newBean, key.hash, queue );
+        while ( true )
+        {
+            // the new reference is its own key, so the registry never holds bindings strongly
+            beanRef = beanRefs.putIfAbsent( newBeanRef, newBeanRef );
+            if ( null == beanRef )
+            {
+                return newBean;
+            }
+            bean = (LazyBeanEntry<Q, T>) beanRef.get();
+            if ( null != bean )
+            {
+                return bean; // another thread got there first
+            }
+            beanRefs.remove( beanRef, beanRef ); // cleared since the lookup, so try again
+        }
+    }
+
+    /**
+     * @return Number of registered entries, including any that are about to be purged
+     */
+    int size()
+    {
+        return beanRefs.size();
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Removes registrations whose entries have been garbage collected.
+     */
+    private void purgeStaleRefs()
+    {
+        for ( Reference<?> ref; null != ( ref = queue.poll() ); )
+        {
+            beanRefs.remove( ref, ref );
+        }
+    }
+
+    /**
+     * @return {@code true} if the given entry belongs to the given qualified binding; otherwise {@code false}
+     */
+    static boolean matches( final LazyBeanEntry<?, ?> bean, final Annotation qualifier, final Binding<?> binding,
+                            final int rank )
+    {
+        return null != bean && binding == bean.getBinding() && rank == bean.getRank()
+            && qualifier.equals( bean.getQualifier() );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Short-lived lookup key that compares bindings by identity and qualifiers by equality.
+     */
+    private static final class BeanKey
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        final Annotation qualifier;
+
+        final Binding<?> binding;
+
+        final int rank;
+
+        final int hash;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        BeanKey( final Annotation qualifier, final Binding<?> binding, final int rank )
+        {
+            this.qualifier = qualifier;
+            this.binding = binding;
+            this.rank = rank;
+
+            hash = ( System.identityHashCode( binding ) * 31 + qualifier.hashCode() ) * 31 + rank;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals( final Object rhs )
+        {
+            if ( this == rhs )
+            {
+                return true;
+            }
+            if ( rhs instanceof BeanRef )
+            {
+                return matches( ( (BeanRef) rhs ).get(), qualifier, binding, rank );
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Weak reference to a shared {@link BeanEntry} that acts as its own registry key.
+     */
+    private static final class BeanRef
+        extends WeakReference<LazyBeanEntry<?, ?>>
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final int hash;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        BeanRef( final LazyBeanEntry<?, ?> bean, final int hash, final ReferenceQueue<LazyBeanEntry<?, ?>> queue )
+        {
+            super( bean, queue );
+            this.hash = hash;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals( final Object rhs )
+        {
+            if ( this == rhs )
+            {
+                return true;
+            }
+            final LazyBeanEntry<?, ?> bean = get();
+            if ( rhs instanceof BeanKey )
+            {
+                final BeanKey key = (BeanKey) rhs;
+                return matches( bean, key.qualifier, key.binding, key.rank );
+            }
+            if ( rhs instanceof BeanRef && null != bean )
+            {
+                return matches( ( (BeanRef) rhs ).get(), bean.getQualifier(), bean.getBinding(), bean.getRank() );
+            }
+            return false;
+        }
+    }
+}
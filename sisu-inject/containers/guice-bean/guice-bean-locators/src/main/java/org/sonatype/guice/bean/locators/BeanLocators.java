@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators;
+
+import java.lang.annotation.Annotation;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.sonatype.guice.bean.locators.spi.BindingPublisher;
+import org.sonatype.inject.BeanEntry;
+
+import com.google.inject.Binding;
+import com.google.inject.Key;
+
+/**
+ * Utility methods for looking up beans with any {@link BeanLocator}.
+ */
+public final class BeanLocators
+{
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    private BeanLocators()
+    {
+        // static utility class, not allowed to create instances
+    }
+
+    // ----------------------------------------------------------------------
+    // Utility methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Finds the highest ranked bean implementation that matches the given qualified binding {@link Key}. <br>
+     * Same as taking the first element from {@link BeanLocator#locate(Key)}, but the {@link DefaultBeanLocator}
+     * remembers the answer until its bindings change.
+     * 
+     * @param locator The bean locator
+     * @param key The qualified key
+     * @return Highest ranked bean entry; {@code null} if there is no match
+     */
+    @SuppressWarnings( "unchecked" )
+    public static <Q extends Annotation, T> BeanEntry<Q, T> locateFirst( final BeanLocator locator, final Key<T> key )
+    {
+        if ( locator instanceof DefaultBeanLocator )
+        {
+            return ( (DefaultBeanLocator) locator ).locateFirst( key );
+        }
+        final Iterator<BeanEntry<Q, T>> itr = locator.<Q, T> locate( key ).iterator();
+        return itr.hasNext() ? itr.next() : null;
+    }
+
+    /**
+     * Adds the given ranked {@link BindingPublisher}s and distributes their {@link Binding}s. <br>
+     * Same as adding each publisher in turn, but the {@link DefaultBeanLocator} adds them as a single batch.
+     * 
+     * @param locator The bean locator
+     * @param rankedPublishers The new publishers, mapped to their assigned ranks
+     */
+    public static void add( final MutableBeanLocator locator, final Map<BindingPublisher, Integer> rankedPublishers )
+    {
+        if ( locator instanceof DefaultBeanLocator )
+        {
+            ( (DefaultBeanLocator) locator ).add( rankedPublishers );
+        }
+        else
+        {
+            for ( final Entry<BindingPublisher, Integer> e : rankedPublishers.entrySet() )
+            {
+                locator.add( e.getKey(), e.getValue().intValue() );
+            }
+        }
+    }
+}
@@ -11,11 +11,21 @@
  *******************************************************************************/
 package org.sonatype.guice.bean.locators;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -45,31 +55,65 @@ public final class DefaultBeanLocator
 
     private final RankedList<BindingPublisher> publishers = new RankedList<BindingPublisher>();
 
-    private final Map<TypeLiteral, RankedBindings> bindingsCache = new HashMap<TypeLiteral, RankedBindings>();
+    final Map<TypeLiteral, RankedBindings> bindingsCache = new ConcurrentHashMap<TypeLiteral, RankedBindings>();
 
-    private final List<WatchedBeans> watchedBeans = new ArrayList<WatchedBeans>();
+    final ConcurrentMap<Key, Reference<LocatedBeans>> beansCache =
+        new ConcurrentHashMap<Key, Reference<LocatedBeans>>();
+
+    final Set<WatchedBeans> watchedBeans = new LinkedHashSet<WatchedBeans>();
+
+    private final ReferenceQueue<Object> staleRefs = new ReferenceQueue<Object>();
+
+    private final ReferenceQueue<LocatedBeans> staleBeanRefs = new ReferenceQueue<LocatedBeans>();
+
+    private final Queue<TypeLiteral> staleTypes = new ConcurrentLinkedQueue<TypeLiteral>();
+
+    private final BeanCache sharedBeans = new BeanCache();
 
     private final ImplicitBindings implicitBindings = new ImplicitBindings( this );
 
+    private Executor mediatorExecutor;
+
+    private Executor warmUpExecutor;
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    public DefaultBeanLocator()
+    {
+        if ( Monitors.ENABLED )
+        {
+            Monitors.register( this );
+        }
+    }
+
     // ----------------------------------------------------------------------
     // Public methods
     // ----------------------------------------------------------------------
 
-    public synchronized Iterable<BeanEntry> locate( final Key key )
+    public Iterable<BeanEntry> locate( final Key key )
     {
-        final TypeLiteral type = key.getTypeLiteral();
-        final boolean isImplicit = key.getAnnotationType() == null && TypeParameters.isImplicit( type );
-        return new LocatedBeans( key, bindingsForType( type ), isImplicit ? implicitBindings : null );
+        return cachedBeans( key ).newView();
     }
 
-    public synchronized void watch( final Key key, final Mediator mediator, final Object watcher )
+    /**
+     * Finds the highest ranked bean implementation that matches the given qualified binding {@link Key}; the answer
+     * is remembered until the bindings change.
+     * 
+     * @param key The qualified key
+     * @return Highest ranked bean entry; {@code null} if there is no match
+     * @see BeanLocators#locateFirst(BeanLocator, Key)
+     */
+    public BeanEntry locateFirst( final Key key )
     {
-        final WatchedBeans beans = new WatchedBeans( key, mediator, watcher );
-        for ( int i = 0, size = publishers.size(); i < size; i++ )
-        {
-            beans.add( publishers.get( i ), 0 /* unused */);
-        }
-        watchedBeans.add( beans );
+        return cachedBeans( key ).first();
+    }
+
+    public void watch( final Key key, final Mediator mediator, final Object watcher )
+    {
+        watchBeans( key, mediator, watcher );
+        throttle();
     }
 
     public void add( final Injector injector, final int rank )
@@ -82,29 +126,107 @@ public final class DefaultBeanLocator
         remove( new InjectorPublisher( injector, null ) );
     }
 
-    public synchronized void add( final BindingPublisher publisher, final int rank )
+    public void add( final BindingPublisher publisher, final int rank )
     {
-        if ( !publishers.contains( publisher ) )
+        addPublisher( publisher, rank );
+        throttle();
+    }
+
+    /**
+     * Adds the given ranked {@link BindingPublisher}s as a single batch and distributes their {@link Binding}s; each
+     * interested party is notified once with the whole batch, highest ranked publisher first.
+     * 
+     * @param rankedPublishers The new publishers, mapped to their assigned ranks
+     * @see BeanLocators#add(MutableBeanLocator, Map)
+     */
+    public void add( final Map<BindingPublisher, Integer> rankedPublishers )
+    {
+        addPublishers( rankedPublishers );
+        throttle();
+    }
+
+    public void remove( final BindingPublisher publisher )
+    {
+        removePublisher( publisher );
+        throttle();
+    }
+
+    public void clear()
+    {
+        clearPublishers();
+        throttle();
+    }
+
+    /**
+     * Delivers {@link Mediator} events for watchers registered from now on using the given {@link Executor}. Events
+     * are queued per watcher and delivered in order, without holding any locator locks; a {@code null} executor
+     * restores inline delivery.
+     * 
+     * @param executor The executor
+     */
+    public synchronized void setMediatorExecutor( final Executor executor )
+    {
+        mediatorExecutor = executor;
+    }
+
+    /**
+     * Subscribes recently iterated types to newly added publishers using the given {@link Executor}, so the next
+     * lookup doesn't have to; a {@code null} executor restores lazy subscription.
+     * 
+     * @param executor The executor
+     */
+    public synchronized void setWarmUpExecutor( final Executor executor )
+    {
+        warmUpExecutor = executor;
+    }
+
+    /**
+     * Waits until all queued {@link Mediator} events have been delivered.
+     * 
+     * @see #setMediatorExecutor(Executor)
+     */
+    public void flush()
+    {
+        for ( final WatchedBeans b : watchers() )
         {
-            Logs.debug( "Add: {} rank: {}", publisher, Integer.valueOf( rank ) );
-            publishers.insert( publisher, rank );
-            distribute( BindingEvent.ADD, publisher, rank );
+            b.flush();
         }
     }
 
-    public synchronized void remove( final BindingPublisher publisher )
+    // ----------------------------------------------------------------------
+    // Local methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * @return Number of types currently tracked by this locator
+     */
+    int cachedTypes()
+    {
+        return bindingsCache.size();
+    }
+
+    /**
+     * @return Number of located bean sequences that are still in use
+     */
+    int liveBeans()
     {
-        if ( publishers.remove( publisher ) )
+        int liveBeans = 0;
+        for ( final Reference<LocatedBeans> beansRef : beansCache.values() )
         {
-            Logs.debug( "Remove: {}", publisher, null );
-            distribute( BindingEvent.REMOVE, publisher, 0 );
+            if ( null != beansRef.get() )
+            {
+                liveBeans++;
+            }
         }
+        return liveBeans;
     }
 
-    public synchronized void clear()
+    /**
+     * @return Number of publishers currently added to this locator
+     */
+    synchronized int publisherCount()
     {
-        publishers.clear();
-        distribute( BindingEvent.CLEAR, null, 0 );
+        return publishers.size();
     }
 
     // ----------------------------------------------------------------------
@@ -123,14 +245,161 @@ public final class DefaultBeanLocator
         add( new InjectorPublisher( injector, function ), function.maxRank() );
     }
 
+    private synchronized void watchBeans( final Key key, final Mediator mediator, final Object watcher )
+    {
+        expungeStaleEntries();
+
+        final WatchedBeans beans = new WatchedBeans( key, mediator, watcher, sharedBeans, mediatorExecutor, staleRefs );
+        for ( int i = 0, size = publishers.size(); i < size; i++ )
+        {
+            beans.add( publishers.get( i ), 0 /* unused */);
+        }
+        watchedBeans.add( beans );
+    }
+
+    private synchronized void addPublisher( final BindingPublisher publisher, final int rank )
+    {
+        if ( !publishers.contains( publisher ) )
+        {
+            Logs.debug( "Add: {} rank: {}", publisher, Integer.valueOf( rank ) );
+            publishers.insert( publisher, rank );
+            distribute( BindingEvent.ADD, batchOf( publisher, rank ) );
+            warmUpHotTypes();
+        }
+    }
+
+    private synchronized void addPublishers( final Map<BindingPublisher, Integer> rankedPublishers )
+    {
+        final RankedList<BindingPublisher> batch = new RankedList<BindingPublisher>();
+        for ( final Entry<BindingPublisher, Integer> entry : rankedPublishers.entrySet() )
+        {
+            final BindingPublisher publisher = entry.getKey();
+            if ( !publishers.contains( publisher ) )
+            {
+                Logs.debug( "Add: {} rank: {}", publisher, entry.getValue() );
+                publishers.insert( publisher, entry.getValue().intValue() );
+                batch.insert( publisher, entry.getValue().intValue() );
+            }
+        }
+        if ( !batch.isEmpty() )
+        {
+            distribute( BindingEvent.ADD, batch );
+            warmUpHotTypes();
+        }
+    }
+
+    private synchronized void removePublisher( final BindingPublisher publisher )
+    {
+        if ( publishers.remove( publisher ) )
+        {
+            Logs.debug( "Remove: {}", publisher, null );
+            distribute( BindingEvent.REMOVE, batchOf( publisher, 0 ) );
+        }
+    }
+
+    private synchronized void clearPublishers()
+    {
+        publishers.clear();
+        distribute( BindingEvent.CLEAR, null );
+    }
+
+    /**
+     * @return Snapshot of the current watchers
+     */
+    private synchronized List<WatchedBeans> watchers()
+    {
+        return new ArrayList<WatchedBeans>( watchedBeans );
+    }
+
+    /**
+     * Lets watchers with a large backlog of queued events catch up; this happens after releasing the locator lock, so
+     * their mediators can safely call back into the locator while we wait.
+     */
+    private void throttle()
+    {
+        if ( !Thread.holdsLock( this ) )
+        {
+            for ( final WatchedBeans b : watchers() )
+            {
+                b.throttle();
+            }
+        }
+    }
+
+    /**
+     * Returns the {@link LocatedBeans} sequence for the given key; creates one if it's not already cached.
+     * 
+     * @param key The qualified key
+     * @return Sequence of located beans
+     */
+    private LocatedBeans cachedBeans( final Key key )
+    {
+        final Reference<LocatedBeans> beansRef = beansCache.get( key );
+        final LocatedBeans beans = null != beansRef ? beansRef.get() : null;
+        if ( null != beans )
+        {
+            return beans;
+        }
+        expungeStaleBeans();
+        final LocatedBeans newBeans = locatedBeans( key );
+        final BeansRef newBeansRef = new BeansRef( key, newBeans, staleBeanRefs );
+        while ( true )
+        {
+            final Reference<LocatedBeans> oldBeansRef = beansCache.putIfAbsent( key, newBeansRef );
+            if ( null == oldBeansRef )
+            {
+                return newBeans;
+            }
+            final LocatedBeans oldBeans = oldBeansRef.get();
+            if ( null != oldBeans )
+            {
+                return oldBeans; // another thread got there first, so share its sequence
+            }
+            beansCache.remove( key, oldBeansRef ); // cleared since the lookup, so try again
+        }
+    }
+
     /**
-     * Returns the {@link RankedBindings} tracking the given type; creates one if it doesn't already exist.
+     * Creates a new {@link LocatedBeans} sequence for the given key, backed by the bindings of its type.
+     * 
+     * @param key The qualified key
+     * @return Sequence of located beans
+     */
+    private LocatedBeans locatedBeans( final Key key )
+    {
+        final TypeLiteral type = key.getTypeLiteral();
+        final boolean isImplicit = key.getAnnotationType() == null && TypeParameters.isImplicit( type );
+        while ( true )
+        {
+            // fast path: avoid the lock when the type is already being tracked
+            RankedBindings bindings = bindingsCache.get( type );
+            if ( null == bindings )
+            {
+                synchronized ( this )
+                {
+                    bindings = bindingsForType( type );
+                }
+            }
+            final LocatedBeans beans =
+                new LocatedBeans( key, bindings, isImplicit ? implicitBindings : null, sharedBeans );
+            if ( bindings == bindingsCache.get( type ) )
+            {
+                return beans; // still being tracked, so safe to use
+            }
+        }
+    }
+
+    /**
+     * Returns the {@link RankedBindings} tracking the given type; creates one if it doesn't already exist. Callers
+     * must hold the locator lock to make sure the new sequence sees a consistent set of publishers.
      * 
      * @param type The required type
      * @return Sequence of ranked bindings
      */
     private <T> RankedBindings<T> bindingsForType( final TypeLiteral<T> type )
     {
+        expungeStaleEntries();
+
         RankedBindings<T> bindings = bindingsCache.get( type );
         if ( null == bindings )
         {
@@ -141,39 +410,132 @@ public final class DefaultBeanLocator
     }
 
     /**
-     * Distributes the given binding event to interested parties.
+     * @return Batch containing just the given ranked publisher
+     */
+    private static RankedList<BindingPublisher> batchOf( final BindingPublisher publisher, final int rank )
+    {
+        final RankedList<BindingPublisher> batch = new RankedList<BindingPublisher>();
+        batch.insert( publisher, rank );
+        return batch;
+    }
+
+    /**
+     * Distributes the given binding event to interested parties; each party is visited once per batch.
      * 
      * @param event The binding event
-     * @param publisher The optional publisher
-     * @param rank The optional assigned rank
+     * @param batch The optional batch of ranked publishers
      */
-    private void distribute( final BindingEvent event, final BindingPublisher publisher, final int rank )
+    private void distribute( final BindingEvent event, final RankedList<BindingPublisher> batch )
     {
-        for ( final Iterator<RankedBindings> itr = bindingsCache.values().iterator(); itr.hasNext(); )
+        expungeStaleEntries();
+
+        if ( BindingEvent.ADD != event )
         {
-            final RankedBindings bindings = itr.next();
-            if ( bindings.isActive() )
+            // new publishers are picked up from the shared list when each type is next used
+            for ( final RankedBindings bindings : bindingsCache.values() )
             {
-                notify( bindings, event, publisher, rank );
+                notify( bindings, event, batch );
             }
-            else
+        }
+
+        // must come after the bindings are updated, so new lookups see the latest injectors
+        implicitBindings.clear();
+
+        // mediators may register new watchers, so work from a copy
+        for ( final WatchedBeans beans : watchedBeans.toArray( new WatchedBeans[watchedBeans.size()] ) )
+        {
+            if ( beans.isActive() )
             {
-                itr.remove(); // cleanup up stale entries
+                notify( beans, event, batch );
             }
         }
+    }
 
-        for ( int i = 0; i < watchedBeans.size(); i++ )
+    /**
+     * Removes cached beans, bindings and watchers whose references have been cleared by the garbage collector; only
+     * visits the stale entries. Callers must hold the locator lock.
+     */
+    private void expungeStaleEntries()
+    {
+        expungeStaleBeans();
+        for ( TypeLiteral type; null != ( type = staleTypes.poll() ); )
         {
-            final WatchedBeans beans = watchedBeans.get( i );
-            if ( beans.isActive() )
+            final RankedBindings bindings = bindingsCache.get( type );
+            if ( null != bindings && !bindings.isActive() )
             {
-                notify( beans, event, publisher, rank );
+                bindingsCache.remove( type );
+                if ( bindings.isActive() )
+                {
+                    bindingsCache.put( type, bindings ); // concurrent lookup revived it
+                }
             }
-            else
+        }
+        for ( Reference<?> ref; null != ( ref = staleRefs.poll() ); )
+        {
+            watchedBeans.remove( ( (WatchedBeans.WatcherRef) ref ).beans() );
+        }
+    }
+
+    /**
+     * Removes cached beans whose references have been cleared by the garbage collector; safe to call without the
+     * locator lock, so lookups can do this as well. Their types are checked the next time stale entries are expunged.
+     */
+    private void expungeStaleBeans()
+    {
+        for ( Reference<?> ref; null != ( ref = staleBeanRefs.poll() ); )
+        {
+            final Key key = ( (BeansRef) ref ).key;
+            beansCache.remove( key, ref );
+            staleTypes.add( key.getTypeLiteral() );
+        }
+    }
+
+    /**
+     * Schedules background subscription of types that have been iterated since the last warm-up; lookups that race
+     * with the warm-up simply subscribe as usual, since both sides take the same lock.
+     */
+    private void warmUpHotTypes()
+    {
+        if ( null == warmUpExecutor )
+        {
+            return;
+        }
+        final List<RankedBindings> hotBindings = new ArrayList<RankedBindings>();
+        for ( final RankedBindings bindings : bindingsCache.values() )
+        {
+            if ( bindings.takeHot() )
             {
-                watchedBeans.remove( i-- ); // cleanup up stale entries
+                hotBindings.add( bindings );
             }
         }
+        if ( hotBindings.isEmpty() )
+        {
+            return;
+        }
+        try
+        {
+            warmUpExecutor.execute( new Runnable()
+            {
+                public void run()
+                {
+                    for ( final RankedBindings bindings : hotBindings )
+                    {
+                        try
+                        {
+                            bindings.subscribePending();
+                        }
+                        catch ( final Throwable e )
+                        {
+                            Logs.warn( "Problem warming up: {}", bindings.type, e );
+                        }
+                    }
+                }
+            } );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            // fall back to lazy subscription
+        }
     }
 
     /**
@@ -181,19 +543,24 @@ public final class DefaultBeanLocator
      * 
      * @param distributor The distributor
      * @param event The binding event
-     * @param publisher The optional publisher
-     * @param rank The optional assigned rank
+     * @param batch The optional batch of ranked publishers
      */
     private static void notify( final BindingDistributor distributor, final BindingEvent event,
-                                final BindingPublisher publisher, final int rank )
+                                final RankedList<BindingPublisher> batch )
     {
         switch ( event )
         {
             case ADD:
-                distributor.add( publisher, rank );
+                for ( int i = 0, size = batch.size(); i < size; i++ )
+                {
+                    distributor.add( batch.get( i ), batch.getRank( i ) );
+                }
                 break;
             case REMOVE:
-                distributor.remove( publisher );
+                for ( int i = 0, size = batch.size(); i < size; i++ )
+                {
+                    distributor.remove( batch.get( i ) );
+                }
                 break;
             case CLEAR:
                 distributor.clear();
@@ -209,4 +576,19 @@ public final class DefaultBeanLocator
     {
         ADD, REMOVE, CLEAR
     }
+
+    /**
+     * Weak reference to cached {@link LocatedBeans} that remembers the key they were cached under.
+     */
+    private static final class BeansRef
+        extends WeakReference<LocatedBeans>
+    {
+        final Key key;
+
+        BeansRef( final Key key, final LocatedBeans beans, final ReferenceQueue<LocatedBeans> staleRefs )
+        {
+            super( beans, staleRefs );
+            this.key = key;
+        }
+    }
 }
@@ -11,6 +11,7 @@
  *******************************************************************************/
 package org.sonatype.guice.bean.locators;
 
+import java.util.AbstractList;
 import java.util.AbstractSequentialList;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -18,6 +19,7 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 
 /**
  * {@link List} backed by an {@link Iterable} sequence of map entries.
@@ -44,6 +46,19 @@ public final class EntryListAdapter<K, V>
     // Public methods
     // ----------------------------------------------------------------------
 
+    /**
+     * Returns a {@link RandomAccess} {@link List} backed by an array snapshot of the given sequence of map entries. The
+     * snapshot is refreshed whenever the located beans behind the sequence change; other sequences are captured on
+     * first use.
+     * 
+     * @param iterable The map entries
+     * @return Snapshot list of values
+     */
+    public static <K, V> List<V> snapshot( final Iterable<? extends Entry<K, V>> iterable )
+    {
+        return new SnapshotList<K, V>( new EntrySnapshot<K, V>( iterable ) );
+    }
+
     @Override
     public Iterator<V> iterator()
     {
@@ -77,6 +92,57 @@ public final class EntryListAdapter<K, V>
     // Implementation types
     // ----------------------------------------------------------------------
 
+    /**
+     * {@link RandomAccess} value {@link List} backed by an {@link EntrySnapshot}.
+     */
+    private static final class SnapshotList<K, V>
+        extends AbstractList<V>
+        implements RandomAccess
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final EntrySnapshot<K, V> snapshot;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        SnapshotList( final EntrySnapshot<K, V> snapshot )
+        {
+            this.snapshot = snapshot;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        @Override
+        public V get( final int index )
+        {
+            final Entry<K, V>[] entries = snapshot.get().entries;
+            if ( index < 0 || index >= entries.length )
+            {
+                throw new IndexOutOfBoundsException();
+            }
+            return entries[index].getValue();
+        }
+
+        @Override
+        public int size()
+        {
+            return snapshot.get().entries.length;
+        }
+
+        @Override
+        public Iterator<V> iterator()
+        {
+            // stick with the same capture for the whole iteration
+            return new ValueIterator<K, V>( snapshot.get() );
+        }
+    }
+
     /**
      * Value {@link Iterator} backed by a Key:Value {@link Iterator}.
      */
@@ -42,6 +42,19 @@ public final class EntryMapAdapter<K, V>
     // Public methods
     // ----------------------------------------------------------------------
 
+    /**
+     * Returns a {@link Map} backed by an array snapshot of the given sequence of map entries, with hashed key lookup.
+     * The snapshot is refreshed whenever the located beans behind the sequence change; other sequences are captured
+     * on first use. As with the live adapter, earlier entries take precedence over later entries with the same key.
+     * 
+     * @param iterable The map entries
+     * @return Snapshot map
+     */
+    public static <K, V> Map<K, V> snapshot( final Iterable<? extends Entry<K, V>> iterable )
+    {
+        return new SnapshotMap<K, V>( new EntrySnapshot<K, V>( iterable ) );
+    }
+
     @Override
     public Set<Entry<K, V>> entrySet()
     {
@@ -58,6 +71,72 @@ public final class EntryMapAdapter<K, V>
     // Implementation types
     // ----------------------------------------------------------------------
 
+    /**
+     * {@link Map} backed by an {@link EntrySnapshot}.
+     */
+    private static final class SnapshotMap<K, V>
+        extends AbstractMap<K, V>
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final EntrySnapshot<K, V> snapshot;
+
+        private final Set<Entry<K, V>> entrySet = new AbstractSet<Entry<K, V>>()
+        {
+            @Override
+            public Iterator<Entry<K, V>> iterator()
+            {
+                return snapshot.get().iterator();
+            }
+
+            @Override
+            public int size()
+            {
+                return snapshot.get().entries.length;
+            }
+        };
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        SnapshotMap( final EntrySnapshot<K, V> snapshot )
+        {
+            this.snapshot = snapshot;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        @Override
+        public Set<Entry<K, V>> entrySet()
+        {
+            return entrySet;
+        }
+
+        @Override
+        public int size()
+        {
+            return snapshot.get().entries.length;
+        }
+
+        @Override
+        public boolean containsKey( final Object key )
+        {
+            return snapshot.get().index.containsKey( key );
+        }
+
+        @Override
+        public V get( final Object key )
+        {
+            final Entry<K, V> entry = snapshot.get().index.get( key );
+            return null != entry ? entry.getValue() : null;
+        }
+    }
+
     /**
      * Entry {@link Set} backed by an {@link Iterable} sequence of map entries.
      */
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+/**
+ * Array-backed snapshot of an {@link Iterable} sequence of map entries; the snapshot is re-captured whenever the
+ * underlying {@link LocatedBeans} change. Snapshots of other sequences are captured on first use and never refreshed.
+ */
+final class EntrySnapshot<K, V>
+{
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private final Iterable<? extends Entry<K, V>> iterable;
+
+    private final LocatedBeans<?, ?> beans;
+
+    private volatile Capture<K, V> capture;
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    EntrySnapshot( final Iterable<? extends Entry<K, V>> iterable )
+    {
+        this.iterable = iterable;
+
+        beans = locatedBeans( iterable );
+    }
+
+    // ----------------------------------------------------------------------
+    // Local methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * @return Current capture of the underlying sequence
+     */
+    Capture<K, V> get()
+    {
+        Capture<K, V> current = capture;
+        if ( null == current || null != beans && current.version != beans.version() )
+        {
+            // read the stamp before iterating, so any concurrent change forces another capture
+            current = new Capture<K, V>( null != beans ? beans.version() : 0, iterable );
+            capture = current;
+        }
+        return current;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * @return The {@link LocatedBeans} backing the given sequence; {@code null} if it's not backed by located beans
+     */
+    @SuppressWarnings( "rawtypes" )
+    private static LocatedBeans<?, ?> locatedBeans( final Iterable<?> iterable )
+    {
+        if ( iterable instanceof LocatedBeans.View )
+        {
+            return ( (LocatedBeans.View) iterable ).beans();
+        }
+        if ( iterable instanceof LocatedBeans )
+        {
+            return (LocatedBeans) iterable;
+        }
+        if ( iterable instanceof NamedIterableAdapter )
+        {
+            return locatedBeans( ( (NamedIterableAdapter) iterable ).delegate() );
+        }
+        return null;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Immutable capture of map entries in sequence order, with a hashed index of their keys.
+     */
+    static final class Capture<K, V>
+        implements Iterable<Entry<K, V>>
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        final int version;
+
+        final Entry<K, V>[] entries;
+
+        final Map<Object, Entry<K, V>> index;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        @SuppressWarnings( "unchecked" )
+        Capture( final int version, final Iterable<? extends Entry<K, V>> iterable )
+        {
+            this.version = version;
+
+            final List<Entry<K, V>> list = new ArrayList<Entry<K, V>>();
+            for ( final Entry<K, V> e : iterable )
+            {
+                list.add( e );
+            }
+            entries = list.toArray( new Entry[list.size()] );
+
+            index = new HashMap<Object, Entry<K, V>>( entries.length * 4 / 3 + 1 );
+            for ( final Entry<K, V> e : entries )
+            {
+                if ( !index.containsKey( e.getKey() ) )
+                {
+                    index.put( e.getKey(), e ); // earlier entries take precedence
+                }
+            }
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        public Iterator<Entry<K, V>> iterator()
+        {
+            return new Iterator<Entry<K, V>>()
+            {
+                private int i;
+
+                public boolean hasNext()
+                {
+                    return i < entries.length;
+                }
+
+                public Entry<K, V> next()
+                {
+                    if ( i < entries.length )
+                    {
+                        return entries[i++];
+                    }
+                    throw new NoSuchElementException();
+                }
+
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
@@ -12,6 +12,8 @@
 package org.sonatype.guice.bean.locators;
 
 import java.lang.annotation.Annotation;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.inject.Binding;
 import com.google.inject.ImplementedBy;
@@ -25,12 +27,22 @@ import com.google.inject.TypeLiteral;
  */
 final class ImplicitBindings
 {
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    private static final Object NO_BINDING = new Object();
+
     // ----------------------------------------------------------------------
     // Implementation fields
     // ----------------------------------------------------------------------
 
     private final Iterable<Injector> injectors;
 
+    private volatile Map<TypeLiteral<?>, Object> bindingCache = new ConcurrentHashMap<TypeLiteral<?>, Object>();
+
+    private volatile int version;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
@@ -44,8 +56,52 @@ final class ImplicitBindings
     // Public methods
     // ----------------------------------------------------------------------
 
-    @SuppressWarnings( { "unchecked", "rawtypes" } )
+    @SuppressWarnings( "unchecked" )
     public <T> Binding<T> get( final TypeLiteral<T> type )
+    {
+        // a cleared cache is swapped out, so results found while clearing are simply dropped
+        final Map<TypeLiteral<?>, Object> cache = bindingCache;
+        Object binding = cache.get( type );
+        if ( null == binding )
+        {
+            final long start = Monitors.ENABLED ? System.nanoTime() : 0;
+            binding = lookup( type );
+            if ( Monitors.ENABLED )
+            {
+                Monitors.MONITOR.implicitBinding( type, null != binding, System.nanoTime() - start );
+            }
+            cache.put( type, null != binding ? binding : NO_BINDING );
+        }
+        return NO_BINDING != binding ? (Binding<T>) binding : null;
+    }
+
+    // ----------------------------------------------------------------------
+    // Local methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Forgets all cached results, including misses; called whenever the set of {@link Injector}s might have changed.
+     */
+    void clear()
+    {
+        bindingCache = new ConcurrentHashMap<TypeLiteral<?>, Object>();
+        version++;
+    }
+
+    /**
+     * @return Stamp that changes whenever cached results have been forgotten
+     */
+    int version()
+    {
+        return version;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    @SuppressWarnings( { "unchecked", "rawtypes" } )
+    private <T> Binding<T> lookup( final TypeLiteral<T> type )
     {
         final Class clazz = type.getRawType();
         final Key implicitKey = Key.get( clazz, Implicit.class );
@@ -11,8 +11,14 @@
  *******************************************************************************/
 package org.sonatype.guice.bean.locators;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.sonatype.guice.bean.locators.spi.BindingManifest;
 import org.sonatype.guice.bean.locators.spi.BindingPublisher;
 import org.sonatype.guice.bean.locators.spi.BindingSubscriber;
 import org.sonatype.guice.bean.reflect.Logs;
@@ -26,7 +32,7 @@ import com.google.inject.TypeLiteral;
  * Publisher of {@link Binding}s from a single {@link Injector}; ranked according to a given {@link RankingFunction}.
  */
 final class InjectorPublisher
-    implements BindingPublisher
+    implements BindingPublisher, BindingManifest
 {
     // ----------------------------------------------------------------------
     // Constants
@@ -42,6 +48,10 @@ final class InjectorPublisher
 
     private final RankingFunction function;
 
+    private volatile Set<Class<?>> keyTypes;
+
+    private volatile Map<Class<?>, List<Binding<?>>> wildcardIndex;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
@@ -58,15 +68,18 @@ final class InjectorPublisher
 
     public <T> void subscribe( final TypeLiteral<T> type, final BindingSubscriber subscriber )
     {
-        publishBindings( type, subscriber, null );
         final Class<?> clazz = type.getRawType();
-        if ( clazz != type.getType() )
+        if ( keyTypes().contains( clazz ) )
         {
-            publishBindings( TypeLiteral.get( clazz ), subscriber, type );
+            publishBindings( type, subscriber, null );
+            if ( clazz != type.getType() )
+            {
+                publishBindings( TypeLiteral.get( clazz ), subscriber, type );
+            }
         }
         if ( clazz != Object.class )
         {
-            publishBindings( OBJECT_TYPE_LITERAL, subscriber, type );
+            publishWildcardBindings( type, subscriber );
         }
     }
 
@@ -76,6 +89,12 @@ final class InjectorPublisher
         return binding == injector.getBindings().get( binding.getKey() );
     }
 
+    public <T> boolean mayPublish( final TypeLiteral<T> type )
+    {
+        final Class<?> clazz = type.getRawType();
+        return keyTypes().contains( clazz ) || wildcardIndex().containsKey( clazz );
+    }
+
     public <T> void unsubscribe( final TypeLiteral<T> type, final BindingSubscriber importer )
     {
         // nothing to do, we don't publish injector bindings asynchronously
@@ -138,6 +157,102 @@ final class InjectorPublisher
         return false;
     }
 
+    /**
+     * @return Raw types of the visible explicit bindings; explicit bindings don't change, so built at most once
+     */
+    private Set<Class<?>> keyTypes()
+    {
+        Set<Class<?>> rawTypes = keyTypes;
+        if ( null == rawTypes )
+        {
+            rawTypes = new HashSet<Class<?>>();
+            for ( final Binding<?> binding : injector.getBindings().values() )
+            {
+                if ( isVisible( binding ) )
+                {
+                    rawTypes.add( binding.getKey().getTypeLiteral().getRawType() );
+                }
+            }
+            keyTypes = rawTypes; // benign race
+        }
+        return rawTypes;
+    }
+
+    /**
+     * @return Visible wildcard bindings, indexed by each raw supertype of their implementation
+     */
+    private Map<Class<?>, List<Binding<?>>> wildcardIndex()
+    {
+        Map<Class<?>, List<Binding<?>>> index = wildcardIndex;
+        if ( null == index )
+        {
+            index = new HashMap<Class<?>, List<Binding<?>>>();
+            final List<? extends Binding<?>> bindings = injector.findBindingsByType( OBJECT_TYPE_LITERAL );
+            for ( int i = 0, size = bindings.size(); i < size; i++ )
+            {
+                final Binding<?> binding = bindings.get( i );
+                if ( isVisible( binding ) )
+                {
+                    final Class<?> implementation = binding.acceptTargetVisitor( ImplementationVisitor.THIS );
+                    if ( null != implementation )
+                    {
+                        // don't index the exact implementation as it's already covered by an explicit binding
+                        indexSuperTypes( index, binding, implementation.getSuperclass() );
+                        for ( final Class<?> iface : implementation.getInterfaces() )
+                        {
+                            indexSuperTypes( index, binding, iface );
+                        }
+                    }
+                }
+            }
+            wildcardIndex = index; // benign race
+        }
+        return index;
+    }
+
+    private static void indexSuperTypes( final Map<Class<?>, List<Binding<?>>> index, final Binding<?> binding,
+                                         final Class<?> clazz )
+    {
+        if ( null == clazz || Object.class == clazz )
+        {
+            return;
+        }
+        List<Binding<?>> candidates = index.get( clazz );
+        if ( null == candidates )
+        {
+            candidates = new ArrayList<Binding<?>>( 2 );
+            index.put( clazz, candidates );
+        }
+        else if ( binding == candidates.get( candidates.size() - 1 ) )
+        {
+            return; // already reached this type via another path
+        }
+        candidates.add( binding );
+        indexSuperTypes( index, binding, clazz.getSuperclass() );
+        for ( final Class<?> iface : clazz.getInterfaces() )
+        {
+            indexSuperTypes( index, binding, iface );
+        }
+    }
+
+    private void publishWildcardBindings( final TypeLiteral<?> superType, final BindingSubscriber subscriber )
+    {
+        final List<Binding<?>> candidates = wildcardIndex().get( superType.getRawType() );
+        if ( null != candidates )
+        {
+            // raw types are already known to be assignable, only generic types need checking
+            final boolean isRawType = superType.getRawType() == superType.getType();
+            for ( int i = 0, size = candidates.size(); i < size; i++ )
+            {
+                final Binding<?> binding = candidates.get( i );
+                if ( isRawType || isAssignableFrom( superType, binding ) )
+                {
+                    subscriber.add( binding, function.rank( binding ) );
+                }
+            }
+        }
+    }
+
     private void publishBindings( final TypeLiteral<?> searchType, final BindingSubscriber subscriber,
                                   final TypeLiteral<?> superType )
     {
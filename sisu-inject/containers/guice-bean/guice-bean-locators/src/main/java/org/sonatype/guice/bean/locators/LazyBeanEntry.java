@@ -39,6 +39,8 @@ final class LazyBeanEntry<Q extends Annotation, T>
 
     private final int rank;
 
+    private final boolean isSingleton;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
@@ -49,7 +51,8 @@ final class LazyBeanEntry<Q extends Annotation, T>
         this.binding = binding;
         this.rank = rank;
 
-        if ( Scopes.isSingleton( binding ) )
+        isSingleton = Scopes.isSingleton( binding );
+        if ( isSingleton )
         {
             this.provider = binding.getProvider();
         }
@@ -60,6 +63,16 @@ final class LazyBeanEntry<Q extends Annotation, T>
         }
     }
 
+    /**
+     * Creates a new entry for the same qualified binding, but with its own lazily created bean instance.
+     * 
+     * @param entry The original entry
+     */
+    LazyBeanEntry( final LazyBeanEntry<Q, T> entry )
+    {
+        this( entry.qualifier, entry.binding, entry.rank );
+    }
+
     // ----------------------------------------------------------------------
     // Public methods
     // ----------------------------------------------------------------------
@@ -134,6 +147,34 @@ final class LazyBeanEntry<Q extends Annotation, T>
         return buf.toString();
     }
 
+    // ----------------------------------------------------------------------
+    // Local methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * @return The original qualifier
+     */
+    Q getQualifier()
+    {
+        return qualifier;
+    }
+
+    /**
+     * @return The qualified binding
+     */
+    Binding<T> getBinding()
+    {
+        return binding;
+    }
+
+    /**
+     * @return {@code true} if the binding always supplies the same bean instance; otherwise {@code false}
+     */
+    boolean isSingleton()
+    {
+        return isSingleton;
+    }
+
     // ----------------------------------------------------------------------
     // Implementation types
     // ----------------------------------------------------------------------
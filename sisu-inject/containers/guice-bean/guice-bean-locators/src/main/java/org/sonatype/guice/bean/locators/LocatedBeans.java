@@ -12,11 +12,11 @@
 package org.sonatype.guice.bean.locators;
 
 import java.lang.annotation.Annotation;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 
 import org.sonatype.inject.BeanEntry;
@@ -42,21 +42,29 @@ final class LocatedBeans<Q extends Annotation, T>
 
     final ImplicitBindings implicitBindings;
 
+    final BeanCache sharedBeans;
+
     final QualifyingStrategy strategy;
 
     @SuppressWarnings( "unchecked" )
-    volatile Map<Binding<T>, BeanEntry<Q, T>> readCache = Collections.EMPTY_MAP;
+    volatile Map<Binding<T>, LazyBeanEntry<Q, T>> readCache = Collections.EMPTY_MAP;
+
+    volatile int evictions;
+
+    private volatile Head<Q, T> head;
 
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
 
-    LocatedBeans( final Key<T> key, final RankedBindings<T> explicitBindings, final ImplicitBindings implicitBindings )
+    LocatedBeans( final Key<T> key, final RankedBindings<T> explicitBindings, final ImplicitBindings implicitBindings,
+                  final BeanCache sharedBeans )
     {
         this.key = key;
 
         this.explicitBindings = explicitBindings;
         this.implicitBindings = implicitBindings;
+        this.sharedBeans = sharedBeans;
 
         strategy = QualifyingStrategy.selectFor( key );
 
@@ -72,29 +80,71 @@ final class LocatedBeans<Q extends Annotation, T>
         return new Itr();
     }
 
+    // ----------------------------------------------------------------------
+    // Local methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Returns a new lookup view of these beans. Views share singleton entries, but non-singleton beans are only shared
+     * within the same view; this keeps the semantics of separate lookups while avoiding repeated work.
+     * 
+     * @return Lookup view
+     */
+    Iterable<BeanEntry<Q, T>> newView()
+    {
+        return new View();
+    }
+
+    /**
+     * @return Stamp that changes whenever the sequence of located beans might have changed
+     */
+    int version()
+    {
+        // both stamps only ever increase, so their sum changes whenever either one does
+        return explicitBindings.version() + ( null != implicitBindings ? implicitBindings.version() : 0 );
+    }
+
+    /**
+     * Returns the highest ranked bean entry, remembered until the {@link #version()} changes. Non-singleton beans get
+     * a new entry on each call, just like the first element of a new lookup view.
+     * 
+     * @return Highest ranked bean entry; {@code null} if there is no match
+     */
+    BeanEntry<Q, T> first()
+    {
+        final int version = version(); // read before searching, so concurrent updates force another search
+        Head<Q, T> h = head;
+        if ( null == h || h.version != version )
+        {
+            final Itr itr = new Itr();
+            h = new Head<Q, T>( version, itr.hasNext() ? itr.next() : null );
+            head = h;
+        }
+        final LazyBeanEntry<Q, T> bean = h.bean;
+        return null == bean || bean.isSingleton() ? bean : new LazyBeanEntry<Q, T>( bean );
+    }
+
     // ----------------------------------------------------------------------
     // Implementation methods
     // ----------------------------------------------------------------------
 
     /**
-     * Evict any stale {@link BeanEntry}s from this collection; an entry is stale if its binding is gone.
+     * Evict the {@link BeanEntry}s belonging to the given stale {@link Binding}s.
      * 
-     * @param activeBindings The active bindings
+     * @param staleBindings The stale bindings, compared by identity; {@code null} means evict all entries
      */
-    synchronized void retainAll( final RankedList<Binding<T>> activeBindings )
+    synchronized void evict( final Collection<Binding<T>> staleBindings )
     {
         if ( readCache.size() > 0 )
         {
             @SuppressWarnings( { "rawtypes", "unchecked" } )
-            final Map<Binding<T>, BeanEntry<Q, T>> tempCache = (Map) ( (IdentityHashMap) readCache ).clone();
-            for ( final Iterator<Entry<Binding<T>, BeanEntry<Q, T>>> i = tempCache.entrySet().iterator(); i.hasNext(); )
+            final Map<Binding<T>, LazyBeanEntry<Q, T>> tempCache =
+                null != staleBindings ? (Map) ( (IdentityHashMap) readCache ).clone() : Collections.EMPTY_MAP;
+            if ( null == staleBindings || tempCache.keySet().removeAll( staleBindings ) )
             {
-                if ( activeBindings.indexOfThis( i.next().getKey() ) < 0 )
-                {
-                    i.remove();
-                }
+                readCache = tempCache;
+                evictions++;
             }
-            readCache = tempCache;
         }
     }
 
@@ -106,17 +156,17 @@ final class LocatedBeans<Q extends Annotation, T>
      * @param rank The assigned rank
      * @return Cached bean entry
      */
-    synchronized BeanEntry<Q, T> cacheBean( final Q qualifier, final Binding<T> binding, final int rank )
+    synchronized LazyBeanEntry<Q, T> cacheBean( final Q qualifier, final Binding<T> binding, final int rank )
     {
-        BeanEntry<Q, T> bean = readCache.get( binding );
+        LazyBeanEntry<Q, T> bean = readCache.get( binding );
         if ( null == bean )
         {
-            bean = new LazyBeanEntry<Q, T>( qualifier, binding, rank );
+            bean = sharedBeans.get( qualifier, binding, rank );
 
             @SuppressWarnings( { "rawtypes", "unchecked" } )
-            final Map<Binding<T>, BeanEntry<Q, T>> tempCache =
+            final Map<Binding<T>, LazyBeanEntry<Q, T>> tempCache =
                 readCache.size() > 0 ? (Map) ( (IdentityHashMap) readCache ).clone()
-                                : new IdentityHashMap<Binding<T>, BeanEntry<Q, T>>();
+                                : new IdentityHashMap<Binding<T>, LazyBeanEntry<Q, T>>();
 
             tempCache.put( binding, bean );
             readCache = tempCache;
@@ -128,6 +178,22 @@ final class LocatedBeans<Q extends Annotation, T>
     // Implementation types
     // ----------------------------------------------------------------------
 
+    /**
+     * Highest ranked bean entry at a given version; the entry is {@code null} if there was no match.
+     */
+    private static final class Head<Q extends Annotation, T>
+    {
+        final int version;
+
+        final LazyBeanEntry<Q, T> bean;
+
+        Head( final int version, final LazyBeanEntry<Q, T> bean )
+        {
+            this.version = version;
+            this.bean = bean;
+        }
+    }
+
     /**
      * {@link BeanEntry} iterator that creates new elements from {@link Binding}s as required.
      */
@@ -138,34 +204,87 @@ final class LocatedBeans<Q extends Annotation, T>
         // Implementation fields
         // ----------------------------------------------------------------------
 
-        private final RankedBindings<T>.Itr itr = explicitBindings.iterator();
+        private final RankedBindings<T>.Itr itr = explicitBindings.iterator( strategy.indexQualifier( key ) );
 
         private boolean checkImplicitBindings = implicitBindings != null;
 
-        private BeanEntry<Q, T> nextBean;
+        private LazyBeanEntry<Q, T> nextBean;
+
+        private boolean searched;
 
         // ----------------------------------------------------------------------
         // Public methods
         // ----------------------------------------------------------------------
 
-        @SuppressWarnings( "unchecked" )
         public boolean hasNext()
         {
             if ( null != nextBean )
             {
                 return true;
             }
+            if ( Monitors.ENABLED && !searched )
+            {
+                // time the first search, which includes any pending subscriptions and qualification
+                searched = true;
+                final long start = System.nanoTime();
+                final boolean found = findNext();
+                Monitors.MONITOR.locate( key, System.nanoTime() - start );
+                return found;
+            }
+            return findNext();
+        }
+
+        public LazyBeanEntry<Q, T> next()
+        {
+            if ( hasNext() )
+            {
+                // no need to check this again
+                checkImplicitBindings = false;
+
+                // populated by hasNext()
+                final LazyBeanEntry<Q, T> bean = nextBean;
+                nextBean = null;
+                return bean;
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        // ----------------------------------------------------------------------
+        // Implementation methods
+        // ----------------------------------------------------------------------
+
+        /**
+         * Searches the remaining bindings for the next qualified bean entry.
+         * 
+         * @return {@code true} if another bean entry was found; otherwise {@code false}
+         */
+        @SuppressWarnings( "unchecked" )
+        private boolean findNext()
+        {
             while ( itr.hasNext() )
             {
                 final Binding<T> binding = itr.next();
                 nextBean = readCache.get( binding );
                 if ( null != nextBean )
                 {
+                    if ( Monitors.ENABLED )
+                    {
+                        Monitors.MONITOR.readCache( key, true );
+                    }
                     return true;
                 }
                 final Q qualifier = (Q) strategy.qualifies( key, binding );
                 if ( null != qualifier )
                 {
+                    if ( Monitors.ENABLED )
+                    {
+                        Monitors.MONITOR.readCache( key, false );
+                    }
                     nextBean = cacheBean( qualifier, binding, itr.rank() );
                     return true;
                 }
@@ -182,25 +301,136 @@ final class LocatedBeans<Q extends Annotation, T>
             }
             return false;
         }
+    }
+
+    /**
+     * Lookup view that keeps its own instances of non-singleton beans.
+     */
+    final class View
+        implements Iterable<BeanEntry<Q, T>>
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        @SuppressWarnings( "unchecked" )
+        private volatile Map<Binding<T>, LazyBeanEntry<Q, T>> viewCache = Collections.EMPTY_MAP;
+
+        private int expectedEvictions = evictions;
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
 
-        public BeanEntry<Q, T> next()
+        public Iterator<BeanEntry<Q, T>> iterator()
         {
-            if ( hasNext() )
+            if ( expectedEvictions != evictions )
             {
-                // no need to check this again
-                checkImplicitBindings = false;
+                retainShared();
+            }
+            return new ViewItr();
+        }
 
-                // populated by hasNext()
-                final BeanEntry<Q, T> bean = nextBean;
-                nextBean = null;
-                return bean;
+        // ----------------------------------------------------------------------
+        // Local methods
+        // ----------------------------------------------------------------------
+
+        /**
+         * @return The shared sequence of located beans
+         */
+        LocatedBeans<Q, T> beans()
+        {
+            return LocatedBeans.this;
+        }
+
+        // ----------------------------------------------------------------------
+        // Implementation methods
+        // ----------------------------------------------------------------------
+
+        /**
+         * Returns the bean entry this view should use for the given located entry.
+         * 
+         * @param bean The located entry
+         * @return Bean entry for this view
+         */
+        BeanEntry<Q, T> viewBean( final LazyBeanEntry<Q, T> bean )
+        {
+            if ( bean.isSingleton() )
+            {
+                return bean; // same instance no matter who asks
             }
-            throw new NoSuchElementException();
+            final BeanEntry<Q, T> viewBean = viewCache.get( bean.getBinding() );
+            return null != viewBean ? viewBean : cacheViewBean( bean );
         }
 
-        public void remove()
+        private synchronized BeanEntry<Q, T> cacheViewBean( final LazyBeanEntry<Q, T> bean )
         {
-            throw new UnsupportedOperationException();
+            final Binding<T> binding = bean.getBinding();
+            LazyBeanEntry<Q, T> viewBean = viewCache.get( binding );
+            if ( null == viewBean )
+            {
+                viewBean = new LazyBeanEntry<Q, T>( bean );
+
+                @SuppressWarnings( { "rawtypes", "unchecked" } )
+                final Map<Binding<T>, LazyBeanEntry<Q, T>> tempCache =
+                    viewCache.size() > 0 ? (Map) ( (IdentityHashMap) viewCache ).clone()
+                                    : new IdentityHashMap<Binding<T>, LazyBeanEntry<Q, T>>();
+
+                tempCache.put( binding, viewBean );
+                viewCache = tempCache;
+            }
+            return viewBean;
+        }
+
+        /**
+         * Evict any stale view entries; an entry is stale once its located entry has been evicted.
+         */
+        private synchronized void retainShared()
+        {
+            expectedEvictions = evictions;
+            if ( viewCache.size() > 0 )
+            {
+                @SuppressWarnings( { "rawtypes", "unchecked" } )
+                final Map<Binding<T>, LazyBeanEntry<Q, T>> tempCache = (Map) ( (IdentityHashMap) viewCache ).clone();
+                tempCache.keySet().retainAll( readCache.keySet() );
+                viewCache = tempCache;
+            }
+        }
+
+        // ----------------------------------------------------------------------
+        // Implementation types
+        // ----------------------------------------------------------------------
+
+        /**
+         * {@link BeanEntry} iterator that maps located entries to view entries.
+         */
+        final class ViewItr
+            implements Iterator<BeanEntry<Q, T>>
+        {
+            // ----------------------------------------------------------------------
+            // Implementation fields
+            // ----------------------------------------------------------------------
+
+            private final Itr itr = new Itr();
+
+            // ----------------------------------------------------------------------
+            // Public methods
+            // ----------------------------------------------------------------------
+
+            public boolean hasNext()
+            {
+                return itr.hasNext();
+            }
+
+            public BeanEntry<Q, T> next()
+            {
+                return viewBean( itr.next() );
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
         }
     }
 }
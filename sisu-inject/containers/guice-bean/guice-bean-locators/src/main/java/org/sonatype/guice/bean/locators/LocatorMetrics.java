@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.sonatype.guice.bean.locators.spi.BindingPublisher;
+import org.sonatype.guice.bean.locators.spi.LocatorMonitor;
+import org.sonatype.guice.bean.reflect.Logs;
+
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+
+/**
+ * {@link LocatorMonitor} that keeps running totals of locator activity and exports them as an MBean.
+ */
+final class LocatorMetrics
+    implements LocatorMonitor, LocatorMetricsMBean
+{
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    static final String OBJECT_NAME = "org.sonatype.inject:type=LocatorMetrics";
+
+    private static final int TOP_TYPES = 20;
+
+    static final int MAX_TYPES = 256;
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private final AtomicLong locateCount = new AtomicLong();
+
+    private final AtomicLong locateNanos = new AtomicLong();
+
+    private final AtomicLong subscribeCount = new AtomicLong();
+
+    private final AtomicLong subscribeNanos = new AtomicLong();
+
+    private final AtomicLong readCacheHits = new AtomicLong();
+
+    private final AtomicLong readCacheMisses = new AtomicLong();
+
+    private final AtomicLong implicitCount = new AtomicLong();
+
+    private final AtomicLong implicitMisses = new AtomicLong();
+
+    private final AtomicLong implicitNanos = new AtomicLong();
+
+    private final AtomicLong mediateCount = new AtomicLong();
+
+    private final AtomicLong mediateNanos = new AtomicLong();
+
+    // keyed by name, so the metrics never keep types (or their class loaders) alive
+    private final ConcurrentMap<String, TypeMetrics> typeMetrics = new ConcurrentHashMap<String, TypeMetrics>();
+
+    private final Map<DefaultBeanLocator, Boolean> locators =
+        Collections.synchronizedMap( new WeakHashMap<DefaultBeanLocator, Boolean>() );
+
+    // ----------------------------------------------------------------------
+    // Public methods
+    // ----------------------------------------------------------------------
+
+    public void locate( final Key<?> key, final long nanos )
+    {
+        locateCount.incrementAndGet();
+        locateNanos.addAndGet( nanos );
+        metricsFor( key.getTypeLiteral() ).add( nanos );
+    }
+
+    public void subscribe( final TypeLiteral<?> type, final BindingPublisher publisher, final long nanos )
+    {
+        subscribeCount.incrementAndGet();
+        subscribeNanos.addAndGet( nanos );
+        metricsFor( type ).add( nanos );
+    }
+
+    public void readCache( final Key<?> key, final boolean hit )
+    {
+        ( hit ? readCacheHits : readCacheMisses ).incrementAndGet();
+    }
+
+    public void implicitBinding( final TypeLiteral<?> type, final boolean found, final long nanos )
+    {
+        implicitCount.incrementAndGet();
+        if ( !found )
+        {
+            implicitMisses.incrementAndGet();
+        }
+        implicitNanos.addAndGet( nanos );
+        metricsFor( type ).add( nanos );
+    }
+
+    public void mediate( final Key<?> key, final Object watcher, final long nanos )
+    {
+        mediateCount.incrementAndGet();
+        mediateNanos.addAndGet( nanos );
+    }
+
+    public long getLocateCount()
+    {
+        return locateCount.get();
+    }
+
+    public long getLocateMillis()
+    {
+        return locateNanos.get() / NANOS_PER_MILLI;
+    }
+
+    public long getSubscribeCount()
+    {
+        return subscribeCount.get();
+    }
+
+    public long getSubscribeMillis()
+    {
+        return subscribeNanos.get() / NANOS_PER_MILLI;
+    }
+
+    public long getReadCacheHits()
+    {
+        return readCacheHits.get();
+    }
+
+    public long getReadCacheMisses()
+    {
+        return readCacheMisses.get();
+    }
+
+    public long getImplicitCount()
+    {
+        return implicitCount.get();
+    }
+
+    public long getImplicitMisses()
+    {
+        return implicitMisses.get();
+    }
+
+    public long getImplicitMillis()
+    {
+        return implicitNanos.get() / NANOS_PER_MILLI;
+    }
+
+    public long getMediateCount()
+    {
+        return mediateCount.get();
+    }
+
+    public long getMediateMillis()
+    {
+        return mediateNanos.get() / NANOS_PER_MILLI;
+    }
+
+    public int getCachedTypes()
+    {
+        int cachedTypes = 0;
+        for ( final DefaultBeanLocator locator : locators() )
+        {
+            cachedTypes += locator.cachedTypes();
+        }
+        return cachedTypes;
+    }
+
+    public int getLiveBeans()
+    {
+        int liveBeans = 0;
+        for ( final DefaultBeanLocator locator : locators() )
+        {
+            liveBeans += locator.liveBeans();
+        }
+        return liveBeans;
+    }
+
+    public int getPublishers()
+    {
+        int publishers = 0;
+        for ( final DefaultBeanLocator locator : locators() )
+        {
+            publishers += locator.publisherCount();
+        }
+        return publishers;
+    }
+
+    public String[] getTopTypes()
+    {
+        final List<TypeTotals> totals = slowestTypes();
+        final String[] topTypes = new String[Math.min( totals.size(), TOP_TYPES )];
+        for ( int i = 0; i < topTypes.length; i++ )
+        {
+            final TypeTotals t = totals.get( i );
+            topTypes[i] = t.name + ": " + t.count + " calls, " + t.nanos / NANOS_PER_MILLI + " ms";
+        }
+        return topTypes;
+    }
+
+    public void reset()
+    {
+        for ( final AtomicLong counter : new AtomicLong[] { locateCount, locateNanos, subscribeCount, subscribeNanos,
+            readCacheHits, readCacheMisses, implicitCount, implicitMisses, implicitNanos, mediateCount, mediateNanos } )
+        {
+            counter.set( 0 );
+        }
+        typeMetrics.clear();
+    }
+
+    // ----------------------------------------------------------------------
+    // Local methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Registers these metrics with the platform MBean server, if JMX is available.
+     * 
+     * @return These metrics
+     */
+    LocatorMetrics export()
+    {
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean( new StandardMBean( this,
+                                                                                         LocatorMetricsMBean.class ),
+                                                                      new ObjectName( OBJECT_NAME ) );
+        }
+        catch ( final Throwable e )
+        {
+            Logs.debug( "Unable to export {}: {}", OBJECT_NAME, e );
+        }
+        return this;
+    }
+
+    /**
+     * Includes the given locator when reporting gauges.
+     * 
+     * @param locator The bean locator
+     */
+    void register( final DefaultBeanLocator locator )
+    {
+        locators.put( locator, Boolean.TRUE );
+    }
+
+    /**
+     * @return Number of types currently tracked
+     */
+    int trackedTypes()
+    {
+        return typeMetrics.size();
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    private TypeMetrics metricsFor( final TypeLiteral<?> type )
+    {
+        final String name = type.toString();
+        TypeMetrics metrics = typeMetrics.get( name );
+        if ( null == metrics )
+        {
+            metrics = new TypeMetrics();
+            final TypeMetrics oldMetrics = typeMetrics.putIfAbsent( name, metrics );
+            if ( null != oldMetrics )
+            {
+                metrics = oldMetrics;
+            }
+            else if ( typeMetrics.size() > MAX_TYPES )
+            {
+                trimTypes();
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Forgets the faster half of the tracked types, keeping the table bounded.
+     */
+    private synchronized void trimTypes()
+    {
+        final List<TypeTotals> totals = slowestTypes();
+        for ( int i = MAX_TYPES / 2, size = totals.size(); i < size; i++ )
+        {
+            final TypeTotals t = totals.get( i );
+            typeMetrics.remove( t.name, t.metrics );
+        }
+    }
+
+    /**
+     * @return Snapshot of the tracked types, slowest first
+     */
+    private List<TypeTotals> slowestTypes()
+    {
+        // copy the running totals first, as sorting needs values that don't change under it
+        final List<TypeTotals> totals = new ArrayList<TypeTotals>( typeMetrics.size() );
+        for ( final Entry<String, TypeMetrics> e : typeMetrics.entrySet() )
+        {
+            totals.add( new TypeTotals( e.getKey(), e.getValue() ) );
+        }
+
+        Collections.sort( totals, new Comparator<TypeTotals>()
+        {
+            public int compare( final TypeTotals lhs, final TypeTotals rhs )
+            {
+                return lhs.nanos < rhs.nanos ? 1 : lhs.nanos > rhs.nanos ? -1 : 0;
+            }
+        } );
+
+        return totals;
+    }
+
+    private List<DefaultBeanLocator> locators()
+    {
+        synchronized ( locators )
+        {
+            return new ArrayList<DefaultBeanLocator>( locators.keySet() );
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Running totals for a particular type.
+     */
+    private static final class TypeMetrics
+    {
+        final AtomicLong count = new AtomicLong();
+
+        final AtomicLong nanos = new AtomicLong();
+
+        void add( final long elapsed )
+        {
+            count.incrementAndGet();
+            nanos.addAndGet( elapsed );
+        }
+    }
+
+    /**
+     * Fixed copy of the running totals for a particular type.
+     */
+    private static final class TypeTotals
+    {
+        final String name;
+
+        final TypeMetrics metrics;
+
+        final long count;
+
+        final long nanos;
+
+        TypeTotals( final String name, final TypeMetrics metrics )
+        {
+            this.name = name;
+            this.metrics = metrics;
+            count = metrics.count.get();
+            nanos = metrics.nanos.get();
+        }
+    }
+}
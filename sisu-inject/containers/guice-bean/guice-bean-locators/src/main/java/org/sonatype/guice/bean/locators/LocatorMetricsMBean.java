@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators;
+
+/**
+ * JMX view of the metrics collected by the bean locator.
+ */
+public interface LocatorMetricsMBean
+{
+    long getLocateCount();
+
+    long getLocateMillis();
+
+    long getSubscribeCount();
+
+    long getSubscribeMillis();
+
+    long getReadCacheHits();
+
+    long getReadCacheMisses();
+
+    long getImplicitCount();
+
+    long getImplicitMisses();
+
+    long getImplicitMillis();
+
+    long getMediateCount();
+
+    long getMediateMillis();
+
+    int getCachedTypes();
+
+    int getLiveBeans();
+
+    int getPublishers();
+
+    /**
+     * @return Summary of the types with the most time spent locating, subscribing, and searching for their beans
+     */
+    String[] getTopTypes();
+
+    /**
+     * Resets all counters and timings back to zero; gauges are unaffected.
+     */
+    void reset();
+}
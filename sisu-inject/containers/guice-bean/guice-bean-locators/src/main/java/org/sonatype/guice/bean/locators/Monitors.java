@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators;
+
+import org.sonatype.guice.bean.locators.spi.LocatorMonitor;
+import org.sonatype.guice.bean.reflect.Logs;
+
+/**
+ * Utility methods for locating the installed {@link LocatorMonitor}.<br>
+ * Set <b>-Dorg.sonatype.inject.monitor=true</b> to export locator metrics over JMX.
+ */
+final class Monitors
+{
+    // ----------------------------------------------------------------------
+    // Static initialization
+    // ----------------------------------------------------------------------
+
+    static
+    {
+        LocatorMonitor monitor;
+        try
+        {
+            final String name = System.getProperty( "org.sonatype.inject.monitor" );
+            if ( null == name || "false".equalsIgnoreCase( name ) )
+            {
+                monitor = null;
+            }
+            else if ( "true".equalsIgnoreCase( name ) )
+            {
+                monitor = new LocatorMetrics().export();
+            }
+            else
+            {
+                monitor = (LocatorMonitor) Class.forName( name ).newInstance();
+            }
+        }
+        catch ( final Throwable e )
+        {
+            Logs.warn( "Problem installing monitor: {}", e, null );
+            monitor = null;
+        }
+        MONITOR = monitor;
+    }
+
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    /**
+     * The installed monitor; {@code null} when monitoring is disabled.
+     */
+    static final LocatorMonitor MONITOR;
+
+    /**
+     * Fixed once the class is initialized, so the JIT can drop instrumentation when monitoring is disabled.
+     */
+    static final boolean ENABLED = null != MONITOR;
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    private Monitors()
+    {
+        // static utility class, not allowed to create instances
+    }
+
+    // ----------------------------------------------------------------------
+    // Utility methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Lets the installed monitor report gauges from the given locator, if it supports them.
+     * 
+     * @param locator The bean locator
+     */
+    static void register( final DefaultBeanLocator locator )
+    {
+        if ( MONITOR instanceof LocatorMetrics )
+        {
+            ( (LocatorMetrics) MONITOR ).register( locator );
+        }
+    }
+}
@@ -46,6 +46,18 @@ public final class NamedIterableAdapter<V>
         return new NamedIterator<V>( delegate );
     }
 
+    // ----------------------------------------------------------------------
+    // Local methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * @return The {@link Named} mapping sequence
+     */
+    Iterable<Entry<Named, V>> delegate()
+    {
+        return delegate;
+    }
+
     // ----------------------------------------------------------------------
     // Implementation types
     // ----------------------------------------------------------------------
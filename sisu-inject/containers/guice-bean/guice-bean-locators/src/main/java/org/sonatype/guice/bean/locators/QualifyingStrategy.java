@@ -12,10 +12,13 @@
 package org.sonatype.guice.bean.locators;
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.inject.Qualifier;
 
 import com.google.inject.Binding;
+import com.google.inject.BindingAnnotation;
 import com.google.inject.Key;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
@@ -55,6 +58,12 @@ enum QualifyingStrategy
             final Annotation qualifier = qualify( binding.getKey() );
             return requirement.getAnnotation().equals( qualifier ) ? qualifier : null;
         }
+
+        @Override
+        final Annotation indexQualifier( final Key<?> requirement )
+        {
+            return requirement.getAnnotation();
+        }
     },
     MARKED
     {
@@ -81,6 +90,12 @@ enum QualifyingStrategy
             final Annotation qualifier = MARKED.qualifies( requirement, binding );
             return requirement.getAnnotation().equals( qualifier ) ? qualifier : null;
         }
+
+        @Override
+        final Annotation indexQualifier( final Key<?> requirement )
+        {
+            return requirement.getAnnotation();
+        }
     };
 
     // ----------------------------------------------------------------------
@@ -104,6 +119,18 @@ enum QualifyingStrategy
      */
     abstract Annotation qualifies( final Key<?> requirement, final Binding<?> binding );
 
+    /**
+     * Returns the qualifier that can be used to narrow the search down to indexed {@link Binding}s.
+     * 
+     * @param requirement The requirement key
+     * @return Qualifier to search for; {@code null} if every binding must be checked
+     * @see #indexQualifiers(Binding)
+     */
+    Annotation indexQualifier( final Key<?> requirement )
+    {
+        return null;
+    }
+
     /**
      * Selects the appropriate qualifying strategy for the given requirement {@link Key}.
      * 
@@ -139,4 +166,45 @@ enum QualifyingStrategy
         }
         return null != key.getAnnotationType() ? key.getAnnotation() : DEFAULT_QUALIFIER;
     }
+
+    /**
+     * Lists the qualifiers that {@link #NAMED_WITH_ATTRIBUTES} or {@link #MARKED_WITH_ATTRIBUTES} could match against
+     * the given {@link Binding}; this is the binding's own qualifier plus any extra qualifiers on its implementation.
+     * 
+     * @param binding The binding
+     * @return Qualifiers that can be used to index the binding
+     */
+    static final List<Annotation> indexQualifiers( final Binding<?> binding )
+    {
+        final List<Annotation> qualifiers = new ArrayList<Annotation>( 2 );
+        final Annotation qualifier = qualify( binding.getKey() );
+        if ( null != qualifier )
+        {
+            qualifiers.add( qualifier );
+        }
+        final Class<?> implementation = binding.acceptTargetVisitor( ImplementationVisitor.THIS );
+        if ( null != implementation )
+        {
+            for ( final Annotation a : implementation.getAnnotations() )
+            {
+                // marker search only falls back to the implementation when the binding qualifier is a different type
+                final Class<? extends Annotation> markerType = a.annotationType();
+                if ( !markerType.isInstance( qualifier ) && isQualifier( markerType ) )
+                {
+                    qualifiers.add( a );
+                }
+            }
+        }
+        return qualifiers;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    private static boolean isQualifier( final Class<? extends Annotation> annotationType )
+    {
+        return annotationType.isAnnotationPresent( Qualifier.class )
+            || annotationType.isAnnotationPresent( BindingAnnotation.class );
+    }
 }
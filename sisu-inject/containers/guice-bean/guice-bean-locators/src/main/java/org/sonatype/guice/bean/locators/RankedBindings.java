@@ -13,12 +13,21 @@ package org.sonatype.guice.bean.locators;
 
 import java.lang.annotation.Annotation;
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.sonatype.guice.bean.locators.spi.BindingDistributor;
+import org.sonatype.guice.bean.locators.spi.BindingManifest;
 import org.sonatype.guice.bean.locators.spi.BindingPublisher;
 import org.sonatype.guice.bean.locators.spi.BindingSubscriber;
 
@@ -37,20 +46,40 @@ final class RankedBindings<T>
 
     final RankedList<Binding<T>> bindings = new RankedList<Binding<T>>();
 
-    final List<Reference<LocatedBeans<?, T>>> locatedBeanRefs = new ArrayList<Reference<LocatedBeans<?, T>>>();
+    final Map<Annotation, RankedList<Binding<T>>> qualifiedBindings =
+        new ConcurrentHashMap<Annotation, RankedList<Binding<T>>>();
+
+    final Set<Reference<LocatedBeans<?, T>>> locatedBeanRefs = new HashSet<Reference<LocatedBeans<?, T>>>();
+
+    final ReferenceQueue<LocatedBeans<?, T>> staleBeanRefs = new ReferenceQueue<LocatedBeans<?, T>>();
+
+    final RankedList<BindingPublisher> sharedPublishers;
 
     final RankedList<BindingPublisher> pendingPublishers;
 
+    final Map<BindingPublisher, Partition> partitions = new HashMap<BindingPublisher, Partition>();
+
+    final Partition directBindings = new Partition();
+
     final TypeLiteral<T> type;
 
+    volatile int version;
+
+    volatile boolean isHot;
+
+    volatile int publisherCursor;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
 
     RankedBindings( final TypeLiteral<T> type, final RankedList<BindingPublisher> publishers )
     {
-        pendingPublishers = null != publishers ? publishers.clone() : new RankedList<BindingPublisher>();
         this.type = type;
+
+        // shared publishers are only queued when this type is next used
+        sharedPublishers = null != publishers ? publishers : new RankedList<BindingPublisher>();
+        pendingPublishers = new RankedList<BindingPublisher>();
     }
 
     // ----------------------------------------------------------------------
@@ -59,9 +88,17 @@ final class RankedBindings<T>
 
     public void add( final BindingPublisher publisher, final int rank )
     {
+        if ( !mayPublish( publisher ) )
+        {
+            return; // nothing to contribute, so don't bother queuing it
+        }
         synchronized ( pendingPublishers )
         {
             pendingPublishers.insert( publisher, rank );
+            synchronized ( bindings )
+            {
+                version++;
+            }
         }
     }
 
@@ -72,48 +109,48 @@ final class RankedBindings<T>
             // extra cleanup if we're already subscribed
             if ( !pendingPublishers.remove( publisher ) )
             {
-                publisher.unsubscribe( type, this );
+                final Partition partition = partitions.remove( publisher );
+                if ( null != partition )
+                {
+                    publisher.unsubscribe( type, partition );
+                }
                 synchronized ( bindings )
                 {
-                    boolean updated = false;
-                    for ( int i = 0; i < bindings.size(); i++ )
+                    final Map<Binding<T>, Boolean> staleBindings = new IdentityHashMap<Binding<T>, Boolean>();
+                    if ( null != partition )
                     {
-                        if ( publisher.contains( bindings.get( i ) ) )
-                        {
-                            bindings.remove( i-- );
-                            updated = true;
-                        }
+                        staleBindings.putAll( partition.members );
                     }
-                    if ( updated )
+                    // bindings added without a partition must be checked the slow way
+                    for ( final Iterator<Binding<T>> itr = directBindings.members.keySet().iterator(); itr.hasNext(); )
                     {
-                        evictStaleBeanEntries();
+                        final Binding<T> binding = itr.next();
+                        if ( publisher.contains( binding ) )
+                        {
+                            staleBindings.put( binding, Boolean.TRUE );
+                            itr.remove();
+                        }
                     }
+                    removeBindings( staleBindings.keySet() );
                 }
             }
+            synchronized ( bindings )
+            {
+                version++;
+            }
         }
     }
 
     @SuppressWarnings( { "rawtypes", "unchecked" } )
     public void add( final Binding binding, final int rank )
     {
-        synchronized ( bindings )
-        {
-            bindings.insert( binding, rank );
-        }
+        directBindings.add( binding, rank );
     }
 
     @SuppressWarnings( { "rawtypes", "unchecked" } )
     public void remove( final Binding binding )
     {
-        synchronized ( bindings )
-        {
-            // we only want to remove this _exact_ instance
-            final int index = bindings.indexOfThis( binding );
-            if ( index >= 0 )
-            {
-                bindings.remove( index );
-            }
-        }
+        directBindings.remove( binding );
     }
 
     public void clear()
@@ -121,23 +158,55 @@ final class RankedBindings<T>
         synchronized ( pendingPublishers )
         {
             pendingPublishers.clear();
+            partitions.clear();
             synchronized ( bindings )
             {
+                directBindings.members.clear();
                 bindings.clear();
-                evictStaleBeanEntries();
+                for ( final RankedList<Binding<T>> qualified : qualifiedBindings.values() )
+                {
+                    synchronized ( qualified )
+                    {
+                        qualified.clear();
+                    }
+                }
+                qualifiedBindings.clear();
+                evictStaleBeanEntries( null );
+                version++;
             }
         }
     }
 
     public Itr iterator()
     {
-        return new Itr();
+        return new Itr( null );
     }
 
     // ----------------------------------------------------------------------
     // Local methods
     // ----------------------------------------------------------------------
 
+    /**
+     * Returns an iterator that only visits {@link Binding}s indexed under the given qualifier, in rank order.
+     * 
+     * @param qualifier The qualifier; {@code null} means visit all bindings
+     * @return Qualified binding iterator
+     * @see QualifyingStrategy#indexQualifiers(Binding)
+     */
+    Itr iterator( final Annotation qualifier )
+    {
+        return new Itr( qualifier );
+    }
+
+    /**
+     * @return Stamp that changes whenever the sequence of bindings might have changed
+     */
+    int version()
+    {
+        // both stamps only ever increase, so their sum changes whenever either one does
+        return version + sharedPublishers.contents.uniq;
+    }
+
     /**
      * Associates the given {@link LocatedBeans} with this binding sequence so stale beans can be eagerly evicted.
      * 
@@ -147,65 +216,257 @@ final class RankedBindings<T>
     {
         synchronized ( locatedBeanRefs )
         {
-            final Reference<LocatedBeans<?, T>> beanRef = new WeakReference<LocatedBeans<?, T>>( beans );
-            for ( int i = 0, size = locatedBeanRefs.size(); i < size; i++ )
+            expungeStaleBeanRefs();
+            locatedBeanRefs.add( new WeakReference<LocatedBeans<?, T>>( beans, staleBeanRefs ) );
+        }
+    }
+
+    /**
+     * Subscribes to all pending publishers now, instead of waiting for the next iteration to need them.
+     */
+    void subscribePending()
+    {
+        synchronized ( pendingPublishers )
+        {
+            catchUp();
+            while ( pendingPublishers.size() > 0 )
             {
-                if ( null == locatedBeanRefs.get( i ).get() )
-                {
-                    // replace evicted element
-                    locatedBeanRefs.set( i, beanRef );
-                    return; // bail-out early
-                }
+                final BindingPublisher publisher = pendingPublishers.get( 0 );
+                partitionFor( publisher ).subscribe( publisher );
+                pendingPublishers.remove( 0 );
             }
-            locatedBeanRefs.add( beanRef );
         }
     }
 
+    /**
+     * Reports whether this binding sequence has been iterated since the last call, and resets the flag.
+     * 
+     * @return {@code true} if this binding sequence was recently iterated; otherwise {@code false}
+     */
+    boolean takeHot()
+    {
+        if ( isHot )
+        {
+            isHot = false;
+            return true;
+        }
+        return false;
+    }
+
     /**
      * @return {@code true} if this binding sequence is still associated with active beans; otherwise {@code false}
      */
     boolean isActive()
     {
-        boolean isActive = false;
         synchronized ( locatedBeanRefs )
         {
-            for ( int i = 0; i < locatedBeanRefs.size(); i++ )
+            expungeStaleBeanRefs();
+            for ( final Reference<LocatedBeans<?, T>> beanRef : locatedBeanRefs )
             {
-                if ( null != locatedBeanRefs.get( i ).get() )
-                {
-                    isActive = true;
-                }
-                else
+                if ( null != beanRef.get() )
                 {
-                    locatedBeanRefs.remove( i-- );
+                    return true; // usually the first one, as cleared references are expunged above
                 }
             }
         }
-        return isActive;
+        return false;
     }
 
     // ----------------------------------------------------------------------
     // Implementation methods
     // ----------------------------------------------------------------------
 
+    /**
+     * Determines whether the given publisher could contribute bindings of this type, according to its manifest.
+     * 
+     * @param publisher The publisher
+     * @return {@code true} if the publisher may have bindings of this type; otherwise {@code false}
+     */
+    private boolean mayPublish( final BindingPublisher publisher )
+    {
+        return !( publisher instanceof BindingManifest ) || ( (BindingManifest) publisher ).mayPublish( type );
+    }
+
+    /**
+     * @return {@code true} if publishers have been added to the shared list since we last caught up
+     */
+    private boolean isBehind()
+    {
+        return publisherCursor != sharedPublishers.contents.uniq;
+    }
+
+    /**
+     * Queues publishers added to the shared list since we last caught up; caller must hold the
+     * {@link #pendingPublishers} lock. Removed publishers are handled eagerly, so only additions need tracking.
+     */
+    private void catchUp()
+    {
+        final RankedList.Contents shared = sharedPublishers.contents;
+        if ( publisherCursor != shared.uniq )
+        {
+            for ( int i = 0; i < shared.size; i++ )
+            {
+                final long uid = shared.uids[i];
+                if ( RankedList.uid2uniq( uid ) >= publisherCursor )
+                {
+                    final BindingPublisher publisher = (BindingPublisher) shared.objs[i];
+                    if ( mayPublish( publisher ) )
+                    {
+                        pendingPublishers.insert( publisher, RankedList.uid2rank( uid ) );
+                    }
+                }
+            }
+            publisherCursor = shared.uniq;
+        }
+    }
+
+    /**
+     * Returns the {@link Partition} that tracks bindings from the given publisher; caller must hold the
+     * {@link #pendingPublishers} lock.
+     * 
+     * @param publisher The publisher
+     * @return Publisher partition
+     */
+    private Partition partitionFor( final BindingPublisher publisher )
+    {
+        Partition partition = partitions.get( publisher );
+        if ( null == partition )
+        {
+            partition = new Partition();
+            partitions.put( publisher, partition );
+        }
+        return partition;
+    }
+
+    /**
+     * Removes the given {@link Binding}s in a single pass; caller must hold the {@link #bindings} lock.
+     * 
+     * @param staleBindings The stale bindings, compared by identity
+     */
+    private void removeBindings( final Collection<Binding<T>> staleBindings )
+    {
+        if ( staleBindings.isEmpty() || !bindings.removeAll( staleBindings ) )
+        {
+            return;
+        }
+        final Map<Annotation, RankedList<Binding<T>>> staleLists = new HashMap<Annotation, RankedList<Binding<T>>>();
+        for ( final Binding<T> binding : staleBindings )
+        {
+            for ( final Annotation qualifier : QualifyingStrategy.indexQualifiers( binding ) )
+            {
+                final RankedList<Binding<T>> qualified = qualifiedBindings.get( qualifier );
+                if ( null != qualified )
+                {
+                    staleLists.put( qualifier, qualified );
+                }
+            }
+        }
+        for ( final Entry<Annotation, RankedList<Binding<T>>> e : staleLists.entrySet() )
+        {
+            final RankedList<Binding<T>> qualified = e.getValue();
+            synchronized ( qualified )
+            {
+                qualified.removeAll( staleBindings );
+            }
+            prune( e.getKey(), qualified );
+        }
+        evictStaleBeanEntries( staleBindings );
+    }
+
+    /**
+     * Adds the given {@link Binding} to the qualifier index; caller must hold the {@link #bindings} lock.
+     * 
+     * @param binding The new binding
+     * @param rank The assigned rank
+     */
+    private void index( final Binding<T> binding, final int rank )
+    {
+        for ( final Annotation qualifier : QualifyingStrategy.indexQualifiers( binding ) )
+        {
+            RankedList<Binding<T>> qualified = qualifiedBindings.get( qualifier );
+            if ( null == qualified )
+            {
+                qualified = new RankedList<Binding<T>>();
+                qualifiedBindings.put( qualifier, qualified );
+            }
+            synchronized ( qualified )
+            {
+                qualified.insert( binding, rank );
+            }
+        }
+    }
+
+    /**
+     * Removes the given {@link Binding} from the qualifier index; caller must hold the {@link #bindings} lock.
+     * 
+     * @param binding The old binding
+     */
+    private void unindex( final Binding<T> binding )
+    {
+        for ( final Annotation qualifier : QualifyingStrategy.indexQualifiers( binding ) )
+        {
+            final RankedList<Binding<T>> qualified = qualifiedBindings.get( qualifier );
+            if ( null != qualified )
+            {
+                synchronized ( qualified )
+                {
+                    final int index = qualified.indexOfThis( binding );
+                    if ( index >= 0 )
+                    {
+                        qualified.remove( index );
+                    }
+                }
+                prune( qualifier, qualified );
+            }
+        }
+    }
+
+    /**
+     * Drops the given qualified list from the index once it is empty; caller must hold the {@link #bindings} lock.
+     * 
+     * @param qualifier The qualifier
+     * @param qualified The qualified bindings
+     */
+    private void prune( final Annotation qualifier, final RankedList<Binding<T>> qualified )
+    {
+        if ( qualified.size() == 0 )
+        {
+            qualifiedBindings.remove( qualifier );
+        }
+    }
+
     /**
      * Evicts any stale bean entries from the associated {@link LocatedBeans}.
+     * 
+     * @param staleBindings The stale bindings; {@code null} means evict everything
      */
-    private void evictStaleBeanEntries()
+    private void evictStaleBeanEntries( final Collection<Binding<T>> staleBindings )
     {
         synchronized ( locatedBeanRefs )
         {
-            for ( int i = 0, size = locatedBeanRefs.size(); i < size; i++ )
+            for ( final Reference<LocatedBeans<?, T>> beanRef : locatedBeanRefs )
             {
-                final LocatedBeans<?, T> beans = locatedBeanRefs.get( i ).get();
+                final LocatedBeans<?, T> beans = beanRef.get();
                 if ( null != beans )
                 {
-                    beans.retainAll( bindings );
+                    beans.evict( staleBindings );
                 }
             }
         }
     }
 
+    /**
+     * Removes references to {@link LocatedBeans} that have been garbage collected; caller must hold the
+     * {@link #locatedBeanRefs} lock.
+     */
+    private void expungeStaleBeanRefs()
+    {
+        for ( Reference<?> ref; null != ( ref = staleBeanRefs.poll() ); )
+        {
+            locatedBeanRefs.remove( ref );
+        }
+    }
+
     // ----------------------------------------------------------------------
     // Implementation types
     // ----------------------------------------------------------------------
@@ -220,7 +481,28 @@ final class RankedBindings<T>
         // Implementation fields
         // ----------------------------------------------------------------------
 
-        private final RankedList<Binding<T>>.Itr itr = bindings.iterator();
+        private final Annotation qualifier;
+
+        private RankedList<Binding<T>> qualified;
+
+        private RankedList<Binding<T>>.Itr itr;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        Itr( final Annotation qualifier )
+        {
+            if ( !isHot )
+            {
+                isHot = true; // avoid repeated volatile writes
+            }
+            this.qualifier = qualifier;
+            if ( null == qualifier )
+            {
+                itr = bindings.iterator();
+            }
+        }
 
         // ----------------------------------------------------------------------
         // Public methods
@@ -228,26 +510,45 @@ final class RankedBindings<T>
 
         public boolean hasNext()
         {
-            if ( pendingPublishers.size() > 0 )
+            // cheap check without locking; most of the time nothing needs subscribing
+            if ( isBehind() || pendingPublishers.peekFirstRank() > peekNextRank() )
             {
                 synchronized ( pendingPublishers )
                 {
+                    catchUp();
+
                     // check whether the next publisher _might_ contain a higher ranked binding, and if so use it
-                    while ( pendingPublishers.size() > 0 && pendingPublishers.getRank( 0 ) > itr.peekNextRank() )
+                    while ( pendingPublishers.size() > 0 && pendingPublishers.getRank( 0 ) > peekNextRank() )
                     {
                         // be careful not to remove the pending publisher until after it's used
-                        // otherwise another iterator could skip past the initial size() check!
-                        pendingPublishers.get( 0 ).subscribe( type, RankedBindings.this );
+                        // otherwise another iterator could skip past the initial rank check!
+                        final BindingPublisher publisher = pendingPublishers.get( 0 );
+                        partitionFor( publisher ).subscribe( publisher );
                         pendingPublishers.remove( 0 );
                     }
                 }
             }
-            return itr.hasNext();
+            if ( null != lookupItr() && itr.hasNext() )
+            {
+                return true;
+            }
+            if ( null != qualified && qualified != qualifiedBindings.get( qualifier ) )
+            {
+                // our qualified list was pruned once empty, so carry on with any replacement
+                qualified = null;
+                itr = null;
+                return null != lookupItr() && itr.hasNext();
+            }
+            return false;
         }
 
         public Binding<T> next()
         {
-            return itr.next();
+            if ( null != lookupItr() )
+            {
+                return itr.next();
+            }
+            throw new NoSuchElementException();
         }
 
         public int rank()
@@ -259,5 +560,151 @@ final class RankedBindings<T>
         {
             throw new UnsupportedOperationException();
         }
+
+        // ----------------------------------------------------------------------
+        // Implementation methods
+        // ----------------------------------------------------------------------
+
+        /**
+         * @return Underlying ranked iterator; {@code null} if nothing has been indexed under the qualifier yet
+         */
+        private RankedList<Binding<T>>.Itr lookupItr()
+        {
+            if ( null == itr )
+            {
+                qualified = qualifiedBindings.get( qualifier );
+                if ( null != qualified )
+                {
+                    itr = qualified.iterator();
+                }
+            }
+            return itr;
+        }
+
+        private int peekNextRank()
+        {
+            return null != lookupItr() ? itr.peekNextRank() : Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * {@link BindingSubscriber} that tracks which {@link Binding}s came from a particular {@link BindingPublisher}, so
+     * they can be removed without asking the publisher about every binding.
+     */
+    final class Partition
+        implements BindingSubscriber
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        final Map<Binding<T>, Boolean> members = new IdentityHashMap<Binding<T>, Boolean>();
+
+        private RankedList<Binding<T>> batch;
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        @SuppressWarnings( { "rawtypes", "unchecked" } )
+        public void add( final Binding binding, final int rank )
+        {
+            synchronized ( bindings )
+            {
+                members.put( binding, Boolean.TRUE );
+                if ( null != batch )
+                {
+                    batch.insert( binding, rank );
+                }
+                else
+                {
+                    bindings.insert( binding, rank );
+                    index( binding, rank );
+                    version++;
+                }
+            }
+        }
+
+        @SuppressWarnings( { "rawtypes", "unchecked" } )
+        public void remove( final Binding binding )
+        {
+            synchronized ( bindings )
+            {
+                members.remove( binding );
+                if ( null != batch )
+                {
+                    final int index = batch.indexOfThis( binding );
+                    if ( index >= 0 )
+                    {
+                        batch.remove( index );
+                        return; // not merged yet
+                    }
+                }
+
+                // we only want to remove this _exact_ instance
+                final int index = bindings.indexOfThis( binding );
+                if ( index >= 0 )
+                {
+                    bindings.remove( index );
+                    unindex( binding );
+                    version++;
+                }
+            }
+        }
+
+        public void clear()
+        {
+            synchronized ( bindings )
+            {
+                final Map<Binding<T>, Boolean> staleBindings = new IdentityHashMap<Binding<T>, Boolean>( members );
+                members.clear();
+                if ( null != batch )
+                {
+                    batch.clear();
+                }
+                removeBindings( staleBindings.keySet() );
+                version++;
+            }
+        }
+
+        // ----------------------------------------------------------------------
+        // Local methods
+        // ----------------------------------------------------------------------
+
+        /**
+         * Subscribes to the given {@link BindingPublisher}, merging its initial {@link Binding}s in a single pass.
+         * 
+         * @param publisher The publisher
+         */
+        void subscribe( final BindingPublisher publisher )
+        {
+            final long start = Monitors.ENABLED ? System.nanoTime() : 0;
+            synchronized ( bindings )
+            {
+                batch = new RankedList<Binding<T>>();
+            }
+            try
+            {
+                publisher.subscribe( type, this );
+            }
+            finally
+            {
+                synchronized ( bindings )
+                {
+                    final RankedList<Binding<T>> published = batch;
+                    batch = null;
+
+                    bindings.insertAll( published );
+                    for ( int i = 0, size = published.size(); i < size; i++ )
+                    {
+                        index( published.get( i ), published.getRank( i ) );
+                    }
+                }
+                if ( Monitors.ENABLED )
+                {
+                    Monitors.MONITOR.subscribe( type, publisher, System.nanoTime() - start );
+                }
+            }
+        }
     }
 }
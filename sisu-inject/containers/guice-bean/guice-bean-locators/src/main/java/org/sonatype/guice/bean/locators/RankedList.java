@@ -21,7 +21,8 @@ import java.util.NoSuchElementException;
 import java.util.RandomAccess;
 
 /**
- * Sorted {@link List} that arranges elements by descending rank; supports concurrent iteration and modification.
+ * Sorted {@link List} that arranges elements by descending rank; supports concurrent iteration and modification.<br>
+ * Each change publishes new contents, so readers never lock; writers must still be serialized by the caller.
  */
 final class RankedList<T>
     extends AbstractCollection<T>
@@ -33,19 +34,13 @@ final class RankedList<T>
 
     private static final int INITIAL_CAPACITY = 10;
 
+    static final Contents EMPTY = new Contents( new Object[0], new long[0], 0, 0 );
+
     // ----------------------------------------------------------------------
     // Implementation fields
     // ----------------------------------------------------------------------
 
-    Object[] objs;
-
-    long[] uids;
-
-    volatile int size;
-
-    volatile int uniq;
-
-    boolean isCached;
+    volatile Contents contents = EMPTY;
 
     // ----------------------------------------------------------------------
     // Public methods
@@ -60,76 +55,145 @@ final class RankedList<T>
      */
     public void insert( final T element, final int rank )
     {
-        if ( null == objs )
-        {
-            objs = new Object[INITIAL_CAPACITY];
-            uids = new long[INITIAL_CAPACITY];
-        }
-        else if ( size >= objs.length )
+        final Contents c = contents;
+
+        final long uid = rank2uid( rank, c.uniq );
+        final int index = safeBinarySearch( c, uid );
+
+        Object[] objs = c.objs;
+        long[] uids = c.uids;
+
+        // appends can reuse spare capacity, as published contents never look past their own size
+        if ( index < c.size || c.size >= objs.length )
         {
-            final int capacity = size * 3 / 2 + 1;
+            final int capacity = c.size < objs.length ? objs.length : Math.max( c.size * 3 / 2 + 1, INITIAL_CAPACITY );
 
             final Object[] newObjs = new Object[capacity];
-            System.arraycopy( objs, 0, newObjs, 0, size );
+            System.arraycopy( objs, 0, newObjs, 0, index );
+            System.arraycopy( objs, index, newObjs, index + 1, c.size - index );
 
             final long[] newUIDs = new long[capacity];
-            System.arraycopy( uids, 0, newUIDs, 0, size );
+            System.arraycopy( uids, 0, newUIDs, 0, index );
+            System.arraycopy( uids, index, newUIDs, index + 1, c.size - index );
 
             objs = newObjs;
             uids = newUIDs;
-            isCached = false;
         }
-        else if ( isCached )
+
+        objs[index] = element;
+        uids[index] = uid;
+
+        contents = new Contents( objs, uids, c.size + 1, c.uniq + 1 );
+    }
+
+    /**
+     * Inserts all the elements from the given ranked batch in a single merge pass, instead of one at a time.<br>
+     * Elements keep their relative order, and come after any existing elements of the same rank.
+     * 
+     * @param batch The ranked elements to insert
+     */
+    public void insertAll( final RankedList<? extends T> batch )
+    {
+        final Contents b = batch.contents;
+        if ( b.size == 0 )
         {
-            // copy-on-write
-            objs = objs.clone();
-            uids = uids.clone();
-            isCached = false;
+            return;
         }
 
-        final long uid = rank2uid( rank, uniq++ );
-        final int index = safeBinarySearch( uid );
+        final Contents c = contents;
+        final int newSize = c.size + b.size;
+        final int capacity = Math.max( newSize, INITIAL_CAPACITY );
 
-        final int to = index + 1, len = size - index;
-        if ( len > 0 )
+        final Object[] newObjs = new Object[capacity];
+        final long[] newUIDs = new long[capacity];
+
+        int i = 0, j = 0, k = 0, uniq = c.uniq;
+        while ( j < b.size )
         {
-            System.arraycopy( objs, index, objs, to, len );
-            System.arraycopy( uids, index, uids, to, len );
+            final long uid = rank2uid( uid2rank( b.uids[j] ), uniq++ );
+            while ( i < c.size && c.uids[i] < uid )
+            {
+                newObjs[k] = c.objs[i];
+                newUIDs[k++] = c.uids[i++];
+            }
+            newObjs[k] = b.objs[j++];
+            newUIDs[k++] = uid;
+        }
+        if ( i < c.size )
+        {
+            System.arraycopy( c.objs, i, newObjs, k, c.size - i );
+            System.arraycopy( c.uids, i, newUIDs, k, c.size - i );
         }
-        size++;
 
-        objs[index] = element;
-        uids[index] = uid;
+        contents = new Contents( newObjs, newUIDs, newSize, uniq );
     }
 
     public T remove( final int index )
     {
-        final T element = get( index );
+        final Contents c = contents;
+        final T element = get( c, index );
+
+        final Object[] newObjs = new Object[c.objs.length];
+        System.arraycopy( c.objs, 0, newObjs, 0, index );
+        System.arraycopy( c.objs, index + 1, newObjs, index, c.size - index - 1 );
+
+        final long[] newUIDs = new long[c.uids.length];
+        System.arraycopy( c.uids, 0, newUIDs, 0, index );
+        System.arraycopy( c.uids, index + 1, newUIDs, index, c.size - index - 1 );
+
+        contents = new Contents( newObjs, newUIDs, c.size - 1, c.uniq );
+
+        return element;
+    }
 
-        if ( isCached )
+    /**
+     * Removes all elements contained in the given collection in a single pass, preserving the order of the rest.
+     * 
+     * @param c The elements to remove
+     * @return {@code true} if any elements were removed; otherwise {@code false}
+     */
+    @Override
+    public boolean removeAll( final Collection<?> c )
+    {
+        final Contents old = contents;
+
+        int i = 0;
+        while ( i < old.size && !c.contains( old.objs[i] ) )
         {
-            // copy-on-write
-            objs = objs.clone();
-            uids = uids.clone();
-            isCached = false;
+            i++;
         }
+        if ( i >= old.size )
+        {
+            return false;
+        }
+
+        final Object[] newObjs = new Object[old.objs.length];
+        final long[] newUIDs = new long[old.uids.length];
+        System.arraycopy( old.objs, 0, newObjs, 0, i );
+        System.arraycopy( old.uids, 0, newUIDs, 0, i );
 
-        final int from = index + 1, len = size - from;
-        if ( len > 0 )
+        int to = i;
+        for ( i++; i < old.size; i++ )
         {
-            System.arraycopy( objs, from, objs, index, len );
-            System.arraycopy( uids, from, uids, index, len );
+            if ( !c.contains( old.objs[i] ) )
+            {
+                newObjs[to] = old.objs[i];
+                newUIDs[to] = old.uids[i];
+                to++;
+            }
         }
-        objs[--size] = null; // remove dangling reference
 
-        return element;
+        contents = new Contents( newObjs, newUIDs, to, old.uniq );
+
+        return true;
     }
 
     public int indexOf( final Object o )
     {
-        for ( int i = 0; i < size; i++ )
+        final Contents c = contents;
+        for ( int i = 0; i < c.size; i++ )
         {
-            if ( o.equals( objs[i] ) )
+            if ( o.equals( c.objs[i] ) )
             {
                 return i;
             }
@@ -144,9 +208,10 @@ final class RankedList<T>
      */
     public int indexOfThis( final T element )
     {
-        for ( int i = 0; i < size; i++ )
+        final Contents c = contents;
+        for ( int i = 0; i < c.size; i++ )
         {
-            if ( element == objs[i] )
+            if ( element == c.objs[i] )
             {
                 return i;
             }
@@ -172,14 +237,9 @@ final class RankedList<T>
         return false;
     }
 
-    @SuppressWarnings( "unchecked" )
     public T get( final int index )
     {
-        if ( index < size )
-        {
-            return (T) objs[index];
-        }
-        throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + size );
+        return get( contents, index );
     }
 
     /**
@@ -190,11 +250,24 @@ final class RankedList<T>
      */
     public int getRank( final int index )
     {
-        if ( index < size )
+        final Contents c = contents;
+        if ( index < c.size )
         {
-            return uid2rank( uids[index] );
+            return uid2rank( c.uids[index] );
         }
-        throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + size );
+        throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + c.size );
+    }
+
+    /**
+     * Returns the rank assigned to the first element; unlike {@link #getRank(int)} this is safe to call while the
+     * list is being modified.
+     * 
+     * @return Rank assigned to the first element; returns {@link Integer#MIN_VALUE} if the list is empty
+     */
+    public int peekFirstRank()
+    {
+        final Contents c = contents;
+        return c.size > 0 ? uid2rank( c.uids[0] ) : Integer.MIN_VALUE;
     }
 
     /**
@@ -207,10 +280,11 @@ final class RankedList<T>
         {
             @SuppressWarnings( "unchecked" )
             final RankedList<T> clone = (RankedList<T>) super.clone();
-            if ( null != objs )
+            final Contents c = contents;
+            if ( c.objs.length > 0 )
             {
-                clone.objs = objs.clone();
-                clone.uids = uids.clone();
+                // each list must have its own arrays, because appends may write to spare capacity
+                clone.contents = new Contents( c.objs.clone(), c.uids.clone(), c.size, c.uniq );
             }
             return clone;
         }
@@ -223,25 +297,20 @@ final class RankedList<T>
     @Override
     public void clear()
     {
-        objs = null;
-        uids = null;
-
-        size = 0;
-        uniq = 0;
-
-        isCached = false;
+        // keep counting, so the number of inserts never goes backwards
+        contents = new Contents( EMPTY.objs, EMPTY.uids, 0, contents.uniq );
     }
 
     @Override
     public int size()
     {
-        return size;
+        return contents.size;
     }
 
     @Override
     public boolean isEmpty()
     {
-        return 0 == size;
+        return 0 == contents.size;
     }
 
     @Override
@@ -277,21 +346,43 @@ final class RankedList<T>
         return (int) ( ~uid >>> 32 );
     }
 
+    /**
+     * Extracts the insertion counter from the given unique id; later inserts have higher counters.
+     * 
+     * @param uid The unique id
+     * @return Insertion counter
+     */
+    static int uid2uniq( final long uid )
+    {
+        return (int) uid;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private static <T> T get( final Contents c, final int index )
+    {
+        if ( index < c.size )
+        {
+            return (T) c.objs[index];
+        }
+        throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + c.size );
+    }
+
     /**
      * Finds the insertion point with the nearest UID, regardless of whether the UID is in the list or not.<br>
      * Unlike {@link Arrays#binarySearch} this will always return a number from zero to {@link #size()} inclusive.
      * 
+     * @param c The list contents
      * @param uid The UID to find
      * @return Index with nearest UID
      */
-    int safeBinarySearch( final long uid )
+    static int safeBinarySearch( final Contents c, final long uid )
     {
         int min = 0;
-        int max = size - 1;
+        int max = c.size - 1;
         while ( min < max )
         {
             final int m = min + max >>> 1;
-            if ( uid <= uids[m] )
+            if ( uid <= c.uids[m] )
             {
                 max = m;
             }
@@ -300,9 +391,9 @@ final class RankedList<T>
                 min = m + 1;
             }
         }
-        if ( min == size - 1 && uids[min] < uid )
+        if ( min == c.size - 1 && c.uids[min] < uid )
         {
-            return size; // append
+            return c.size; // append
         }
         return min;
     }
@@ -311,6 +402,28 @@ final class RankedList<T>
     // Implementation types
     // ----------------------------------------------------------------------
 
+    /**
+     * Published list contents; never changed once published, apart from spare capacity beyond its size.
+     */
+    static final class Contents
+    {
+        final Object[] objs;
+
+        final long[] uids;
+
+        final int size;
+
+        final int uniq;
+
+        Contents( final Object[] objs, final long[] uids, final int size, final int uniq )
+        {
+            this.objs = objs;
+            this.uids = uids;
+            this.size = size;
+            this.uniq = uniq;
+        }
+    }
+
     /**
      * Custom {@link Iterator} that copes with modification by repositioning itself in the updated list.
      */
@@ -321,13 +434,7 @@ final class RankedList<T>
         // Implementation fields
         // ----------------------------------------------------------------------
 
-        private Object[] cachedObjs;
-
-        private long[] cachedUIDs;
-
-        private int expectedSize;
-
-        private int expectedUniq;
+        private Contents cached;
 
         private long nextUID = Long.MIN_VALUE;
 
@@ -348,8 +455,8 @@ final class RankedList<T>
             }
             if ( safeHasNext() )
             {
-                nextObj = (T) cachedObjs[index];
-                nextUID = cachedUIDs[index];
+                nextObj = (T) cached.objs[index];
+                nextUID = cached.uids[index];
                 return true;
             }
             return false;
@@ -366,7 +473,7 @@ final class RankedList<T>
             }
             if ( safeHasNext() )
             {
-                return uid2rank( cachedUIDs[index] );
+                return uid2rank( cached.uids[index] );
             }
             return Integer.MIN_VALUE;
         }
@@ -407,25 +514,14 @@ final class RankedList<T>
          */
         private boolean safeHasNext()
         {
-            if ( expectedSize != size || expectedUniq != uniq )
+            final Contents c = contents;
+            if ( c != cached )
             {
-                synchronized ( RankedList.this )
-                {
-                    // reposition ourselves in the list
-                    index = safeBinarySearch( nextUID );
-
-                    if ( index < size )
-                    {
-                        cachedObjs = objs;
-                        cachedUIDs = uids;
-                        isCached = true;
-                    }
-
-                    expectedSize = size;
-                    expectedUniq = uniq;
-                }
+                // reposition ourselves in the latest contents
+                index = safeBinarySearch( c, nextUID );
+                cached = c;
             }
-            return index < expectedSize;
+            return index < c.size;
         }
     }
 
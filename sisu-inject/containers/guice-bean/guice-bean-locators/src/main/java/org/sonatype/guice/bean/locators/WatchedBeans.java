@@ -13,15 +13,21 @@ package org.sonatype.guice.bean.locators;
 
 import java.lang.annotation.Annotation;
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.sonatype.guice.bean.locators.spi.BindingDistributor;
 import org.sonatype.guice.bean.locators.spi.BindingPublisher;
 import org.sonatype.guice.bean.locators.spi.BindingSubscriber;
 import org.sonatype.guice.bean.reflect.Logs;
+import org.sonatype.inject.BatchMediator;
 import org.sonatype.inject.BeanEntry;
 import org.sonatype.inject.Mediator;
 
@@ -36,6 +42,20 @@ import com.google.inject.Key;
 final class WatchedBeans<Q extends Annotation, T, W>
     implements BindingDistributor, BindingSubscriber
 {
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    /**
+     * Maximum number of undelivered events before {@link #throttle()} waits for the watcher to catch up.
+     */
+    static final int MAX_PENDING_EVENTS = 1024;
+
+    /**
+     * Set while the current thread is delivering queued events, so it never waits on a backlog.
+     */
+    private static final ThreadLocal<Boolean> DELIVERING = new ThreadLocal<Boolean>();
+
     // ----------------------------------------------------------------------
     // Implementation fields
     // ----------------------------------------------------------------------
@@ -44,23 +64,33 @@ final class WatchedBeans<Q extends Annotation, T, W>
 
     private final Key<T> key;
 
+    private final BeanCache sharedBeans;
+
     private final Mediator<Q, T, W> mediator;
 
     private final QualifyingStrategy strategy;
 
-    private final Reference<W> watcherRef;
+    final Reference<W> watcherRef;
+
+    private final MediatorQueue queue;
+
+    private MediatorBatch<Q, T> batch;
 
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
 
-    WatchedBeans( final Key<T> key, final Mediator<Q, T, W> mediator, final W watcher )
+    WatchedBeans( final Key<T> key, final Mediator<Q, T, W> mediator, final W watcher, final BeanCache sharedBeans,
+                  final Executor executor, final ReferenceQueue<Object> staleRefs )
     {
         this.key = key;
+        this.sharedBeans = sharedBeans;
         this.mediator = mediator;
 
         strategy = QualifyingStrategy.selectFor( key );
-        watcherRef = new WeakReference<W>( watcher );
+        watcherRef = new WatcherRef( watcher, staleRefs );
+
+        queue = null != executor ? new MediatorQueue( executor ) : null;
     }
 
     // ----------------------------------------------------------------------
@@ -69,20 +99,36 @@ final class WatchedBeans<Q extends Annotation, T, W>
 
     public synchronized void add( final BindingPublisher publisher, final int rank )
     {
-        publisher.subscribe( key.getTypeLiteral(), this );
+        final boolean batching = beginBatch();
+        try
+        {
+            publisher.subscribe( key.getTypeLiteral(), this );
+        }
+        finally
+        {
+            endBatch( batching );
+        }
     }
 
     public synchronized void remove( final BindingPublisher publisher )
     {
-        publisher.unsubscribe( key.getTypeLiteral(), this );
-
-        for ( final Binding<T> b : new ArrayList<Binding<T>>( beanCache.keySet() ) )
+        final boolean batching = beginBatch();
+        try
         {
-            if ( publisher.contains( b ) )
+            publisher.unsubscribe( key.getTypeLiteral(), this );
+
+            for ( final Binding<T> b : new ArrayList<Binding<T>>( beanCache.keySet() ) )
             {
-                notify( WatcherEvent.REMOVE, beanCache.remove( b ) );
+                if ( publisher.contains( b ) )
+                {
+                    notify( WatcherEvent.REMOVE, beanCache.remove( b ) );
+                }
             }
         }
+        finally
+        {
+            endBatch( batching );
+        }
     }
 
     @SuppressWarnings( { "rawtypes", "unchecked" } )
@@ -91,7 +137,8 @@ final class WatchedBeans<Q extends Annotation, T, W>
         final Q qualifier = (Q) strategy.qualifies( key, binding );
         if ( null != qualifier )
         {
-            final BeanEntry<Q, T> bean = new LazyBeanEntry<Q, T>( qualifier, binding, rank );
+            // share singletons, but give each watcher its own instance of anything else
+            final BeanEntry<Q, T> bean = sharedBeans.get( qualifier, binding, rank );
             beanCache.put( binding, bean );
             notify( WatcherEvent.ADD, bean );
         }
@@ -109,11 +156,19 @@ final class WatchedBeans<Q extends Annotation, T, W>
 
     public synchronized void clear()
     {
-        for ( final BeanEntry<Q, T> bean : beanCache.values() )
+        final boolean batching = beginBatch();
+        try
         {
-            notify( WatcherEvent.REMOVE, bean );
+            for ( final BeanEntry<Q, T> bean : beanCache.values() )
+            {
+                notify( WatcherEvent.REMOVE, bean );
+            }
+            beanCache.clear();
+        }
+        finally
+        {
+            endBatch( batching );
         }
-        beanCache.clear();
     }
 
     // ----------------------------------------------------------------------
@@ -128,21 +183,123 @@ final class WatchedBeans<Q extends Annotation, T, W>
         return null != watcherRef.get();
     }
 
+    /**
+     * Waits until all queued events have been delivered to the watching object; returns immediately when events are
+     * delivered inline.
+     */
+    void flush()
+    {
+        if ( null != queue )
+        {
+            queue.deliverDeferred();
+            queue.flush();
+        }
+    }
+
+    /**
+     * Delivers events the executor refused and waits while too many events are queued for the watching object; must
+     * be called without holding any locks that the watcher might need. Never waits when called while delivering.
+     */
+    void throttle()
+    {
+        if ( null != queue )
+        {
+            queue.deliverDeferred();
+            if ( null == DELIVERING.get() )
+            {
+                queue.awaitBacklog();
+            }
+        }
+    }
+
     // ----------------------------------------------------------------------
     // Implementation methods
     // ----------------------------------------------------------------------
 
     /**
-     * Notifies the watching object of the given watcher event; uses the {@link Mediator} pattern.
+     * Starts collecting watcher events into a single batch, if the {@link Mediator} accepts batches.
+     * 
+     * @return {@code true} if a new batch was started; otherwise {@code false}
+     */
+    private boolean beginBatch()
+    {
+        if ( null == batch && mediator instanceof BatchMediator<?, ?, ?> )
+        {
+            batch = new MediatorBatch<Q, T>();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stops collecting watcher events and sends the batch on to the watching object.
+     * 
+     * @param batching {@code true} if the batch was started by the matching {@link #beginBatch()}
+     */
+    private void endBatch( final boolean batching )
+    {
+        if ( batching )
+        {
+            final MediatorBatch<Q, T> currentBatch = batch;
+            batch = null;
+            if ( !currentBatch.isEmpty() )
+            {
+                dispatch( WatcherEvent.BATCH, null, currentBatch );
+            }
+        }
+    }
+
+    /**
+     * Notifies the watching object of the given watcher event, unless it is part of a batch.
      * 
      * @param event The watcher event
      * @param bean The bean entry
      */
     private void notify( final WatcherEvent event, final BeanEntry<Q, T> bean )
+    {
+        if ( null != batch )
+        {
+            batch.record( event, bean );
+        }
+        else
+        {
+            dispatch( event, bean, null );
+        }
+    }
+
+    /**
+     * Sends the given watcher event to the watching object, either inline or via the queue.
+     * 
+     * @param event The watcher event
+     * @param bean The bean entry
+     * @param changes The batch of changes
+     */
+    private void dispatch( final WatcherEvent event, final BeanEntry<Q, T> bean, final MediatorBatch<Q, T> changes )
+    {
+        if ( null != queue )
+        {
+            queue.offer( event, bean, changes );
+        }
+        else
+        {
+            mediate( event, bean, changes );
+        }
+    }
+
+    /**
+     * Delivers the given watcher event to the watching object; uses the {@link Mediator} pattern.
+     * 
+     * @param event The watcher event
+     * @param bean The bean entry
+     * @param changes The batch of changes
+     */
+    @SuppressWarnings( "unchecked" )
+    private void mediate( final WatcherEvent event, final BeanEntry<Q, T> bean, final MediatorBatch<Q, T> changes )
     {
         final W watcher = watcherRef.get();
         if ( null != watcher )
         {
+            final long start = Monitors.ENABLED ? System.nanoTime() : 0;
             try
             {
                 switch ( event )
@@ -153,11 +310,18 @@ final class WatchedBeans<Q extends Annotation, T, W>
                     case REMOVE:
                         mediator.remove( bean, watcher );
                         break;
+                    case BATCH:
+                        ( (BatchMediator<Q, T, W>) mediator ).update( changes.added, changes.removed, watcher );
+                        break;
                 }
             }
             catch ( final Throwable e )
             {
-                Logs.warn( "Problem mediating: {}", bean, e );
+                Logs.warn( "Problem mediating: {}", null != bean ? bean : key, e );
+            }
+            if ( Monitors.ENABLED )
+            {
+                Monitors.MONITOR.mediate( key, watcher, System.nanoTime() - start );
             }
         }
     }
@@ -168,6 +332,309 @@ final class WatchedBeans<Q extends Annotation, T, W>
 
     private static enum WatcherEvent
     {
-        ADD, REMOVE
+        ADD, REMOVE, BATCH
+    }
+
+    /**
+     * Weak reference to the watching object that remembers which {@link WatchedBeans} it belongs to.
+     */
+    final class WatcherRef
+        extends WeakReference<W>
+    {
+        WatcherRef( final W watcher, final ReferenceQueue<Object> staleRefs )
+        {
+            super( watcher, staleRefs );
+        }
+
+        WatchedBeans<Q, T, W> beans()
+        {
+            return WatchedBeans.this;
+        }
+    }
+
+    /**
+     * Bean entries added and removed by a single change; an entry added and then removed in the same batch is dropped.
+     */
+    private static final class MediatorBatch<Q extends Annotation, T>
+    {
+        final List<BeanEntry<Q, T>> added = new ArrayList<BeanEntry<Q, T>>();
+
+        final List<BeanEntry<Q, T>> removed = new ArrayList<BeanEntry<Q, T>>();
+
+        void record( final WatcherEvent event, final BeanEntry<Q, T> bean )
+        {
+            if ( WatcherEvent.ADD == event )
+            {
+                added.add( bean );
+            }
+            else if ( !removeThis( added, bean ) )
+            {
+                removed.add( bean );
+            }
+        }
+
+        boolean isEmpty()
+        {
+            return added.isEmpty() && removed.isEmpty();
+        }
+
+        private static boolean removeThis( final List<?> list, final Object element )
+        {
+            for ( int i = list.size() - 1; i >= 0; i-- )
+            {
+                if ( element == list.get( i ) )
+                {
+                    list.remove( i );
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Watcher event waiting to be delivered.
+     */
+    private static final class PendingEvent<Q extends Annotation, T>
+    {
+        final WatcherEvent event;
+
+        final BeanEntry<Q, T> bean;
+
+        final MediatorBatch<Q, T> changes;
+
+        boolean cancelled;
+
+        PendingEvent( final WatcherEvent event, final BeanEntry<Q, T> bean, final MediatorBatch<Q, T> changes )
+        {
+            this.event = event;
+            this.bean = bean;
+            this.changes = changes;
+        }
+    }
+
+    /**
+     * Queues watcher events and delivers them in order using an {@link Executor}; an add followed by a remove of the
+     * same entry cancels out when neither has been delivered yet. Offering an event never blocks; the backlog is only
+     * throttled by {@link #awaitBacklog()}, which callers invoke after releasing their locks. Events refused by the
+     * executor are kept until {@link #deliverDeferred()} is called, again after releasing any locks.
+     */
+    final class MediatorQueue
+        implements Runnable
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final Executor executor;
+
+        private final LinkedList<PendingEvent<Q, T>> events = new LinkedList<PendingEvent<Q, T>>();
+
+        private final Map<BeanEntry<Q, T>, PendingEvent<Q, T>> pendingAdds =
+            new IdentityHashMap<BeanEntry<Q, T>, PendingEvent<Q, T>>();
+
+        private int pendingCount;
+
+        private boolean scheduled;
+
+        private boolean deferred;
+
+        private Thread deliveryThread;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        MediatorQueue( final Executor executor )
+        {
+            this.executor = executor;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        public void run()
+        {
+            final boolean nested = null != DELIVERING.get();
+            DELIVERING.set( Boolean.TRUE );
+            try
+            {
+                while ( true )
+                {
+                    final PendingEvent<Q, T> pending;
+                    synchronized ( this )
+                    {
+                        pending = poll();
+                        if ( null == pending )
+                        {
+                            scheduled = false;
+                            deliveryThread = null;
+                            notifyAll();
+                            return;
+                        }
+                        deliveryThread = Thread.currentThread();
+                    }
+                    try
+                    {
+                        mediate( pending.event, pending.bean, pending.changes );
+                    }
+                    finally
+                    {
+                        synchronized ( this )
+                        {
+                            pendingCount--;
+                            notifyAll();
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                if ( !nested )
+                {
+                    DELIVERING.remove();
+                }
+            }
+        }
+
+        // ----------------------------------------------------------------------
+        // Local methods
+        // ----------------------------------------------------------------------
+
+        /**
+         * Queues the given watcher event for delivery; never waits for delivery to catch up.
+         * 
+         * @param event The watcher event
+         * @param bean The bean entry
+         * @param changes The batch of changes
+         */
+        void offer( final WatcherEvent event, final BeanEntry<Q, T> bean, final MediatorBatch<Q, T> changes )
+        {
+            synchronized ( this )
+            {
+                if ( WatcherEvent.REMOVE == event )
+                {
+                    final PendingEvent<Q, T> pendingAdd = pendingAdds.remove( bean );
+                    if ( null != pendingAdd )
+                    {
+                        pendingAdd.cancelled = true; // watcher never saw the add, so it doesn't need the remove
+                        pendingCount--;
+                        notifyAll();
+                        return;
+                    }
+                }
+                final PendingEvent<Q, T> pending = new PendingEvent<Q, T>( event, bean, changes );
+                if ( WatcherEvent.ADD == event )
+                {
+                    pendingAdds.put( bean, pending );
+                }
+                events.add( pending );
+                pendingCount++;
+                if ( scheduled )
+                {
+                    return; // delivery already underway
+                }
+                scheduled = true;
+            }
+            try
+            {
+                executor.execute( this );
+            }
+            catch ( final RejectedExecutionException e )
+            {
+                synchronized ( this )
+                {
+                    deferred = true; // caller may hold locks, so wait until it calls deliverDeferred
+                }
+            }
+        }
+
+        /**
+         * Delivers any events refused by the executor on the calling thread; must be called without holding locks.
+         */
+        void deliverDeferred()
+        {
+            synchronized ( this )
+            {
+                if ( !deferred )
+                {
+                    return;
+                }
+                deferred = false;
+            }
+            run();
+        }
+
+        /**
+         * Waits until fewer than {@link #MAX_PENDING_EVENTS} events are waiting to be delivered.
+         */
+        synchronized void awaitBacklog()
+        {
+            while ( pendingCount >= MAX_PENDING_EVENTS && scheduled && deliveryThread != Thread.currentThread() )
+            {
+                if ( !await() )
+                {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Waits until all queued events have been delivered.
+         */
+        synchronized void flush()
+        {
+            while ( scheduled && deliveryThread != Thread.currentThread() )
+            {
+                if ( !await() )
+                {
+                    return;
+                }
+            }
+        }
+
+        // ----------------------------------------------------------------------
+        // Implementation methods
+        // ----------------------------------------------------------------------
+
+        /**
+         * @return Next event that hasn't been cancelled; {@code null} if there are no more events
+         */
+        private PendingEvent<Q, T> poll()
+        {
+            while ( !events.isEmpty() )
+            {
+                final PendingEvent<Q, T> pending = events.removeFirst();
+                if ( !pending.cancelled )
+                {
+                    if ( pendingAdds.get( pending.bean ) == pending )
+                    {
+                        pendingAdds.remove( pending.bean ); // too late to cancel now
+                    }
+                    return pending;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Waits for a change in the queue; caller must hold the queue lock.
+         * 
+         * @return {@code true} if the wait completed; {@code false} if it was interrupted
+         */
+        private boolean await()
+        {
+            try
+            {
+                wait();
+                return true;
+            }
+            catch ( final InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
     }
 }
@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators.spi;
+
+import com.google.inject.Binding;
+import com.google.inject.TypeLiteral;
+
+/**
+ * Optional summary of the {@link Binding} types a {@link BindingPublisher} may publish; lets distributors skip
+ * publishers that cannot contribute to a given type.
+ */
+public interface BindingManifest
+{
+    /**
+     * Determines whether or not subscribing to the given type could ever receive {@link Binding}s. False positives
+     * are allowed, false negatives are not.
+     * 
+     * @param type The binding type
+     * @return {@code false} if there are definitely no bindings for the type; otherwise {@code true}
+     */
+    <T> boolean mayPublish( TypeLiteral<T> type );
+}
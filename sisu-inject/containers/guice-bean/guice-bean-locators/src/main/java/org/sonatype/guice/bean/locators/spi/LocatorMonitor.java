@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators.spi;
+
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+
+/**
+ * Receives counts and timings from the bean locator; set <b>-Dorg.sonatype.inject.monitor=true</b> to export them
+ * over JMX, or <b>-Dorg.sonatype.inject.monitor=&lt;classname&gt;</b> to install your own monitor.<br>
+ * Monitors are called from many threads, so implementations must be thread-safe and should return quickly.
+ */
+public interface LocatorMonitor
+{
+    /**
+     * Called once per iteration of a located bean sequence, after its first search for a bean entry; this includes any
+     * subscriptions to pending publishers and qualification of bindings along the way.
+     * 
+     * @param key The qualified key
+     * @param nanos The elapsed time
+     */
+    void locate( Key<?> key, long nanos );
+
+    /**
+     * Called after subscribing to a pending {@link BindingPublisher}.
+     * 
+     * @param type The binding type
+     * @param publisher The publisher
+     * @param nanos The elapsed time
+     */
+    void subscribe( TypeLiteral<?> type, BindingPublisher publisher, long nanos );
+
+    /**
+     * Called whenever a located bean sequence checks its cache for a bean entry.
+     * 
+     * @param key The qualified key
+     * @param hit {@code true} if the entry was already cached; otherwise {@code false}
+     */
+    void readCache( Key<?> key, boolean hit );
+
+    /**
+     * Called after falling back to search for an implicit binding.
+     * 
+     * @param type The binding type
+     * @param found {@code true} if an implicit binding was found; otherwise {@code false}
+     * @param nanos The elapsed time
+     */
+    void implicitBinding( TypeLiteral<?> type, boolean found, long nanos );
+
+    /**
+     * Called after notifying a watcher about a bean entry.
+     * 
+     * @param key The qualified key
+     * @param watcher The watching object
+     * @param nanos The elapsed time
+     */
+    void mediate( Key<?> key, Object watcher, long nanos );
+}
@@ -16,10 +16,14 @@
  * <dl>
  * <dt>{@link org.sonatype.guice.bean.locators.spi.BindingDistributor}
  * <dd>Distributor of {@link com.google.inject.Binding}s retrieved from a series of {@link org.sonatype.guice.bean.locators.spi.BindingPublisher}s.
+ * <dt>{@link org.sonatype.guice.bean.locators.spi.BindingManifest}
+ * <dd>Optional summary of the {@link com.google.inject.Binding} types a {@link org.sonatype.guice.bean.locators.spi.BindingPublisher} may publish.
  * <dt>{@link org.sonatype.guice.bean.locators.spi.BindingPublisher}
  * <dd>Publisher of {@link com.google.inject.Binding}s to interested {@link org.sonatype.guice.bean.locators.spi.BindingSubscriber}s.
  * <dt>{@link org.sonatype.guice.bean.locators.spi.BindingSubscriber}
  * <dd>Subscriber of {@link com.google.inject.Binding}s from one or more {@link org.sonatype.guice.bean.locators.spi.BindingPublisher}s.
+ * <dt>{@link org.sonatype.guice.bean.locators.spi.LocatorMonitor}
+ * <dd>Receives counts and timings from the {@link org.sonatype.guice.bean.locators.MutableBeanLocator}.
  * </dl>
  */
 package org.sonatype.guice.bean.locators.spi;
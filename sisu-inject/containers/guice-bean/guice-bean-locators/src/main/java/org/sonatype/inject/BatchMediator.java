@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.inject;
+
+import java.lang.annotation.Annotation;
+import java.util.List;
+
+/**
+ * {@link Mediator} that receives all the bean entries added or removed by a single change in one call.
+ */
+public interface BatchMediator<Q extends Annotation, T, W>
+    extends Mediator<Q, T, W>
+{
+    /**
+     * Processes the added and removed {@link BeanEntry}s from a single change and sends the necessary updates to the
+     * watcher. Entries that are both added and removed by the same change are not reported.
+     * 
+     * @param added The added bean entries, in the order they were added
+     * @param removed The removed bean entries, in the order they were removed
+     * @param watcher The watching object
+     */
+    void update( List<BeanEntry<Q, T>> added, List<BeanEntry<Q, T>> removed, W watcher )
+        throws Exception;
+}
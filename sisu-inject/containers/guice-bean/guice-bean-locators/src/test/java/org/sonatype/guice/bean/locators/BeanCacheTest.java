@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators;
+
+import java.lang.annotation.Annotation;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+
+import junit.framework.TestCase;
+
+import org.sonatype.guice.bean.locators.RankedBindingsTest.Bean;
+import org.sonatype.guice.bean.locators.RankedBindingsTest.BeanImpl;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Binding;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Scopes;
+import com.google.inject.name.Names;
+
+public class BeanCacheTest
+    extends TestCase
+{
+    public void testSharedEntries()
+    {
+        final Injector injector = Guice.createInjector( new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind( Bean.class ).annotatedWith( Names.named( "A" ) ).to( BeanImpl.class ).in( Scopes.SINGLETON );
+                bind( Bean.class ).annotatedWith( Names.named( "B" ) ).to( BeanImpl.class );
+            }
+        } );
+
+        final Binding<Bean> binding = injector.getBinding( Key.get( Bean.class, Names.named( "A" ) ) );
+        final Annotation qualifier = binding.getKey().getAnnotation();
+
+        final BeanCache cache = new BeanCache();
+
+        LazyBeanEntry<Annotation, Bean> bean = cache.get( qualifier, binding, 0 );
+
+        assertSame( bean, cache.get( Names.named( "A" ), binding, 0 ) );
+        assertNotSame( bean, cache.get( qualifier, binding, 1 ) );
+        assertNotSame( bean, cache.get( QualifyingStrategy.DEFAULT_QUALIFIER, binding, 0 ) );
+        assertNotSame( bean, cache.get( qualifier, injector.getBinding( BeanImpl.class ), 0 ) );
+
+        // other bindings supply a new instance per lookup, so their entries are never shared
+        final Binding<Bean> unscoped = injector.getBinding( Key.get( Bean.class, Names.named( "B" ) ) );
+        final Annotation qualifierB = unscoped.getKey().getAnnotation();
+        assertNotSame( cache.get( qualifierB, unscoped, 0 ), cache.get( qualifierB, unscoped, 0 ) );
+
+        bean = null;
+        for ( int i = 0; i < 20 && cache.size() > 1; i++ )
+        {
+            System.gc();
+            cache.get( qualifier, binding, 2 ); // prompts purge
+        }
+        assertTrue( cache.size() <= 1 );
+    }
+
+    public void testBindingsAreWeaklyHeld()
+    {
+        Injector injector = Guice.createInjector( new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind( Bean.class ).annotatedWith( Names.named( "A" ) ).to( BeanImpl.class ).in( Scopes.SINGLETON );
+            }
+        } );
+
+        final BeanCache cache = new BeanCache();
+
+        Binding<Bean> binding = injector.getBinding( Key.get( Bean.class, Names.named( "A" ) ) );
+        LazyBeanEntry<Annotation, Bean> bean = cache.get( binding.getKey().getAnnotation(), binding, 0 );
+        final Reference<Binding<Bean>> bindingRef = new WeakReference<Binding<Bean>>( binding );
+
+        // the registry must not keep the binding alive once nothing else refers to it
+        injector = null;
+        binding = null;
+        bean = null;
+        for ( int i = 0; i < 20 && null != bindingRef.get(); i++ )
+        {
+            System.gc();
+        }
+        assertNull( bindingRef.get() );
+    }
+}
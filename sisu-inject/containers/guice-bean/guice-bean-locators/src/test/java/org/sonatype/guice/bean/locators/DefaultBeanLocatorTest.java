@@ -11,9 +11,21 @@
  *******************************************************************************/
 package org.sonatype.guice.bean.locators;
 
+import java.lang.annotation.Annotation;
+import java.lang.ref.Reference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 
 import junit.framework.TestCase;
 
@@ -22,12 +34,15 @@ import org.sonatype.guice.bean.locators.RankedBindingsTest.BeanImpl;
 import org.sonatype.guice.bean.locators.RankedBindingsTest.BeanImpl2;
 import org.sonatype.guice.bean.locators.spi.BindingPublisher;
 import org.sonatype.guice.bean.locators.spi.BindingSubscriber;
+import org.sonatype.inject.BeanEntry;
+import org.sonatype.inject.Mediator;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Binding;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Key;
+import com.google.inject.Scopes;
 import com.google.inject.TypeLiteral;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
@@ -328,6 +343,79 @@ public class DefaultBeanLocatorTest
         assertFalse( i.hasNext() );
     }
 
+    public void testBatchedPublishers()
+    {
+        final MutableBeanLocator locator = new DefaultBeanLocator();
+
+        final Iterable<? extends Entry<Named, Bean>> roles =
+            locator.<Named, Bean> locate( Key.get( Bean.class, Named.class ) );
+
+        locator.add( new InjectorPublisher( child1, new DefaultRankingFunction( 1 ) ), 1 );
+
+        final Map<BindingPublisher, Integer> batch = new LinkedHashMap<BindingPublisher, Integer>();
+        batch.put( new InjectorPublisher( parent, new DefaultRankingFunction( 0 ) ), Integer.valueOf( 0 ) );
+        batch.put( new InjectorPublisher( child1, new DefaultRankingFunction( 5 ) ), Integer.valueOf( 5 ) );
+        batch.put( new InjectorPublisher( child2, new DefaultRankingFunction( 2 ) ), Integer.valueOf( 2 ) );
+        batch.put( new InjectorPublisher( child3, new DefaultRankingFunction( 3 ) ), Integer.valueOf( 3 ) );
+
+        BeanLocators.add( locator, batch );
+
+        final Iterator<? extends Entry<Named, Bean>> i = roles.iterator();
+        assertEquals( Names.named( "default" ), i.next().getKey() );
+        assertEquals( Names.named( "default" ), i.next().getKey() );
+        assertEquals( Names.named( "M3" ), i.next().getKey() );
+        assertEquals( Names.named( "N3" ), i.next().getKey() );
+        assertEquals( Names.named( "M1" ), i.next().getKey() );
+        assertEquals( Names.named( "N1" ), i.next().getKey() );
+        assertEquals( Names.named( "A" ), i.next().getKey() );
+        assertEquals( Names.named( "-" ), i.next().getKey() );
+        assertEquals( Names.named( "Z" ), i.next().getKey() );
+        assertFalse( i.hasNext() );
+
+        BeanLocators.add( locator, new HashMap<BindingPublisher, Integer>() );
+
+        // other locators get the publishers one at a time
+        final List<Object> added = new ArrayList<Object>();
+        final InvocationHandler recorder = new InvocationHandler()
+        {
+            public Object invoke( final Object proxy, final Method method, final Object[] args )
+            {
+                added.add( args[0] );
+                return null;
+            }
+        };
+        final MutableBeanLocator plainLocator =
+            (MutableBeanLocator) Proxy.newProxyInstance( getClass().getClassLoader(),
+                                                         new Class[] { MutableBeanLocator.class }, recorder );
+
+        BeanLocators.add( plainLocator, batch );
+        assertEquals( new ArrayList<Object>( batch.keySet() ), added );
+    }
+
+    @SuppressWarnings( "deprecation" )
+    public void testImplicitBindingCache()
+    {
+        final MutableBeanLocator locator = new DefaultBeanLocator();
+
+        final Iterable<? extends Entry<Annotation, Bean>> beans =
+            locator.<Annotation, Bean> locate( Key.get( Bean.class ) );
+        final Iterable<? extends Entry<Annotation, Runnable>> runnables =
+            locator.<Annotation, Runnable> locate( Key.get( Runnable.class ) );
+
+        assertFalse( beans.iterator().hasNext() );
+        assertFalse( runnables.iterator().hasNext() );
+
+        locator.add( child4, 0 );
+
+        assertFalse( runnables.iterator().hasNext() );
+        assertFalse( runnables.iterator().hasNext() );
+
+        final Iterator<? extends Entry<Annotation, Bean>> i = beans.iterator();
+        assertTrue( i.hasNext() );
+        assertTrue( i.next().getValue() instanceof BeanImpl2 );
+        assertFalse( i.hasNext() );
+    }
+
     @SuppressWarnings( "deprecation" )
     public void testExistingInjectors()
     {
@@ -362,4 +450,325 @@ public class DefaultBeanLocatorTest
 
         locator.clear();
     }
+
+    @SuppressWarnings( { "deprecation", "rawtypes" } )
+    public void testRepeatedLookups()
+    {
+        final MutableBeanLocator locator = new DefaultBeanLocator();
+
+        locator.add( Guice.createInjector( new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind( Bean.class ).annotatedWith( Names.named( "S" ) ).to( BeanImpl.class ).in( Scopes.SINGLETON );
+                bind( Bean.class ).annotatedWith( Names.named( "P" ) ).to( BeanImpl.class );
+            }
+        } ), 0 );
+
+        final Key<Bean> key = Key.get( Bean.class, Named.class );
+
+        final Iterable<? extends Entry<Named, Bean>> lookup1 = locator.<Named, Bean> locate( key );
+        final Iterable<? extends Entry<Named, Bean>> lookup2 = locator.<Named, Bean> locate( key );
+
+        final LocatedBeans<?, ?> beans = ( (LocatedBeans.View) lookup1 ).beans();
+        assertSame( beans, ( (LocatedBeans.View) lookup2 ).beans() );
+
+        Iterator<? extends Entry<Named, Bean>> i, j;
+
+        i = lookup1.iterator();
+        j = lookup2.iterator();
+
+        // singletons are shared, but other beans are only shared within the same lookup
+        final Entry<Named, Bean> singleton = i.next();
+        assertSame( singleton, j.next() );
+        final Entry<Named, Bean> prototype = i.next();
+        assertNotSame( prototype.getValue(), j.next().getValue() );
+
+        i = lookup1.iterator();
+        assertSame( singleton, i.next() );
+        assertSame( prototype.getValue(), i.next().getValue() );
+        assertFalse( i.hasNext() );
+
+        assertEquals( 2, beans.readCache.size() );
+    }
+
+    @SuppressWarnings( "deprecation" )
+    public void testConcurrentLookups()
+        throws InterruptedException
+    {
+        final MutableBeanLocator locator = new DefaultBeanLocator();
+        locator.add( parent, 0 );
+
+        final Iterable<?>[] lookups = new Iterable<?>[8];
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final Thread[] threads = new Thread[lookups.length];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final int index = i;
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        lookups[index] = locator.locate( Key.get( Bean.class, Named.class ) );
+                    }
+                    catch ( final InterruptedException e )
+                    {
+                        // leave this lookup empty
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        start.countDown();
+        for ( final Thread t : threads )
+        {
+            t.join();
+        }
+
+        // every racing lookup should end up with a view of the winning sequence
+        final LocatedBeans<?, ?> winner = ( (LocatedBeans.View) lookups[0] ).beans();
+        for ( final Iterable<?> beans : lookups )
+        {
+            assertSame( winner, ( (LocatedBeans.View) beans ).beans() );
+        }
+    }
+
+    @SuppressWarnings( "deprecation" )
+    public void testLocateFirst()
+    {
+        final MutableBeanLocator locator = new DefaultBeanLocator();
+        final Key<Bean> key = Key.get( Bean.class, Named.class );
+
+        assertNull( BeanLocators.locateFirst( locator, key ) );
+
+        locator.add( parent, 0 );
+        assertEquals( Names.named( "A" ), BeanLocators.<Named, Bean> locateFirst( locator, key ).getKey() );
+
+        locator.add( child1, 1 );
+        assertEquals( BeanImpl.class, implementationOfFirst( locator, key ) );
+
+        locator.add( child3, 3 );
+        assertEquals( BeanImpl2.class, implementationOfFirst( locator, key ) );
+
+        locator.add( child2, 2 );
+        assertEquals( BeanImpl2.class, implementationOfFirst( locator, key ) );
+
+        locator.remove( child3 );
+        assertEquals( BeanImpl.class, implementationOfFirst( locator, key ) );
+        assertSame( ( (LazyBeanEntry<?, ?>) locator.locate( key ).iterator().next() ).getBinding(),
+                    ( (LazyBeanEntry<?, ?>) BeanLocators.locateFirst( locator, key ) ).getBinding() );
+
+        // the answer is remembered, but each call still gets its own non-singleton instance
+        final BeanEntry<Named, Bean> first = BeanLocators.locateFirst( locator, key );
+        final BeanEntry<Named, Bean> again = BeanLocators.locateFirst( locator, key );
+        assertEquals( first.getKey(), again.getKey() );
+        assertSame( ( (LazyBeanEntry<?, ?>) first ).getBinding(), ( (LazyBeanEntry<?, ?>) again ).getBinding() );
+        assertNotSame( first.getValue(), again.getValue() );
+
+        final Key<Bean> keyA = Key.get( Bean.class, Names.named( "A" ) );
+        assertEquals( Names.named( "A" ), BeanLocators.<Named, Bean> locateFirst( locator, keyA ).getKey() );
+        assertNull( BeanLocators.locateFirst( locator, Key.get( Bean.class, Names.named( "X" ) ) ) );
+
+        // other locators fall back to the first located bean
+        final BeanLocator plainLocator = new BeanLocator()
+        {
+            public <Q extends Annotation, T> Iterable<BeanEntry<Q, T>> locate( final Key<T> k )
+            {
+                return locator.locate( k );
+            }
+
+            public <Q extends Annotation, T, W> void watch( final Key<T> k, final Mediator<Q, T, W> m, final W w )
+            {
+                locator.watch( k, m, w );
+            }
+        };
+
+        assertSame( ( (LazyBeanEntry<?, ?>) first ).getBinding(),
+                    ( (LazyBeanEntry<?, ?>) BeanLocators.locateFirst( plainLocator, key ) ).getBinding() );
+
+        locator.clear();
+        assertNull( BeanLocators.locateFirst( locator, key ) );
+        assertNull( BeanLocators.locateFirst( plainLocator, key ) );
+    }
+
+    private static Class<?> implementationOfFirst( final BeanLocator locator, final Key<Bean> key )
+    {
+        return BeanLocators.<Named, Bean> locateFirst( locator, key ).getImplementationClass();
+    }
+
+    @SuppressWarnings( "deprecation" )
+    public void testStaleEntryCleanup()
+    {
+        final DefaultBeanLocator locator = new DefaultBeanLocator();
+
+        assertFalse( locator.locate( Key.get( Bean.class, Named.class ) ).iterator().hasNext() );
+
+        final int cachedTypes = locator.cachedTypes();
+        assertTrue( locator.liveBeans() > 0 );
+
+        final int[] calls = new int[1];
+        locator.watch( Key.get( Bean.class, Named.class ), new Mediator<Named, Bean, Object>()
+        {
+            public void add( final BeanEntry<Named, Bean> entry, final Object watcher )
+            {
+                calls[0]++;
+            }
+
+            public void remove( final BeanEntry<Named, Bean> entry, final Object watcher )
+            {
+                calls[0]++;
+            }
+        }, new Object() );
+
+        // simulate collection of the located beans and the watcher
+        simulateCollection( locator );
+        assertEquals( 0, locator.liveBeans() );
+        assertEquals( cachedTypes, locator.cachedTypes() );
+
+        // lookups drop stale located beans straight away
+        final Key<Bean> staleKey = Key.get( Bean.class, Named.class );
+        assertTrue( locator.beansCache.containsKey( staleKey ) );
+        locator.locate( Key.get( Bean.class, Names.named( "X" ) ) );
+        assertFalse( locator.beansCache.containsKey( staleKey ) );
+        simulateCollection( locator );
+
+        // stale entries are expunged on the next change
+        locator.add( parent, 0 );
+        assertEquals( 0, locator.cachedTypes() );
+        assertEquals( 0, calls[0] );
+    }
+
+    private static void simulateCollection( final DefaultBeanLocator locator )
+    {
+        synchronized ( locator )
+        {
+            for ( final Reference<?> ref : locator.beansCache.values() )
+            {
+                clearAndEnqueue( ref );
+            }
+            for ( final RankedBindings<?> bindings : locator.bindingsCache.values() )
+            {
+                synchronized ( bindings.locatedBeanRefs )
+                {
+                    for ( final Reference<?> ref : bindings.locatedBeanRefs )
+                    {
+                        clearAndEnqueue( ref );
+                    }
+                }
+            }
+            for ( final WatchedBeans<?, ?, ?> beans : locator.watchedBeans )
+            {
+                clearAndEnqueue( beans.watcherRef );
+            }
+        }
+    }
+
+    private static void clearAndEnqueue( final Reference<?> ref )
+    {
+        ref.clear();
+        ref.enqueue();
+    }
+
+    @SuppressWarnings( { "deprecation", "rawtypes" } )
+    public void testWarmUpHotTypes()
+    {
+        final MutableBeanLocator locator = new DefaultBeanLocator();
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        ( (DefaultBeanLocator) locator ).setWarmUpExecutor( new Executor()
+        {
+            public void execute( final Runnable task )
+            {
+                tasks.add( task );
+            }
+        } );
+
+        final Iterable<BeanEntry<Named, Bean>> hot = locator.locate( Key.get( Bean.class, Named.class ) );
+        final Iterable<BeanEntry<Named, Bean>> cold = locator.locate( Key.get( Bean.class, Names.named( "A" ) ) );
+
+        final RankedBindings<?> bindings = ( (LocatedBeans.View) hot ).beans().explicitBindings;
+        assertSame( bindings, ( (LocatedBeans.View) cold ).beans().explicitBindings );
+
+        locator.add( parent, 0 );
+        assertTrue( tasks.isEmpty() ); // nothing iterated yet
+
+        hot.iterator().hasNext();
+        locator.add( child1, 1 );
+        assertEquals( 1, tasks.size() );
+        assertEquals( 1, bindings.partitions.size() );
+
+        tasks.remove( 0 ).run();
+        assertEquals( 2, bindings.partitions.size() );
+        assertEquals( 0, bindings.pendingPublishers.size() );
+
+        // same ordering as a lazy subscription
+        final Iterator<BeanEntry<Named, Bean>> itr = hot.iterator();
+        assertEquals( Names.named( "default" ), itr.next().getKey() );
+        assertEquals( Names.named( "M1" ), itr.next().getKey() );
+        assertEquals( Names.named( "N1" ), itr.next().getKey() );
+        assertEquals( Names.named( "A" ), itr.next().getKey() );
+
+        locator.add( child3, 3 );
+        assertEquals( 1, tasks.size() );
+        assertEquals( 2, bindings.partitions.size() );
+        tasks.clear();
+
+        // not iterated since the last warm-up
+        locator.add( child2, 2 );
+        assertTrue( tasks.isEmpty() );
+    }
+
+    public void testSharedBeanEntries()
+    {
+        final MutableBeanLocator locator = new DefaultBeanLocator();
+
+        locator.add( Guice.createInjector( new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind( Bean.class ).annotatedWith( Names.named( "S" ) ).to( BeanImpl.class ).in( Scopes.SINGLETON );
+                bind( Bean.class ).annotatedWith( Names.named( "P" ) ).to( BeanImpl.class );
+            }
+        } ), 0 );
+
+        final Map<Named, BeanEntry<Named, Bean>> watched = new HashMap<Named, BeanEntry<Named, Bean>>();
+        locator.watch( Key.get( Bean.class, Named.class ), new Mediator<Named, Bean, Object>()
+        {
+            public void add( final BeanEntry<Named, Bean> entry, final Object watcher )
+            {
+                watched.put( entry.getKey(), entry );
+            }
+
+            public void remove( final BeanEntry<Named, Bean> entry, final Object watcher )
+            {
+                watched.remove( entry.getKey() );
+            }
+        }, this );
+
+        final Iterator<? extends Entry<Named, Bean>> i =
+            locator.<Named, Bean> locate( Key.get( Bean.class, Named.class ) ).iterator();
+        final Iterator<? extends Entry<Named, Bean>> s =
+            locator.<Named, Bean> locate( Key.get( Bean.class, Names.named( "S" ) ) ).iterator();
+        final Iterator<? extends Entry<Named, Bean>> p =
+            locator.<Named, Bean> locate( Key.get( Bean.class, Names.named( "P" ) ) ).iterator();
+
+        // singletons share one entry whichever way they're found
+        final Entry<Named, Bean> singleton = i.next();
+        assertSame( singleton, s.next() );
+        assertSame( singleton, watched.get( Names.named( "S" ) ) );
+
+        // other beans share the binding, but each lookup and watcher still gets its own instance
+        final Entry<Named, Bean> prototype = i.next();
+        final Entry<Named, Bean> watchedPrototype = watched.get( Names.named( "P" ) );
+        assertNotSame( prototype.getValue(), p.next().getValue() );
+        assertNotSame( prototype.getValue(), watchedPrototype.getValue() );
+        assertSame( watchedPrototype.getValue(), watchedPrototype.getValue() );
+        assertEquals( prototype.getKey(), watchedPrototype.getKey() );
+    }
 }
@@ -11,7 +11,9 @@
  *******************************************************************************/
 package org.sonatype.guice.bean.locators;
 
+import java.lang.annotation.Annotation;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -21,9 +23,15 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 
 import junit.framework.TestCase;
 
+import org.sonatype.guice.bean.locators.RankedBindingsTest.Bean;
+
+import com.google.inject.Injector;
+import com.google.inject.Key;
+
 public class EntryListAdapterTest
     extends TestCase
 {
@@ -357,4 +365,61 @@ public class EntryListAdapterTest
             };
         }
     }
+
+    @SuppressWarnings( "deprecation" )
+    public void testSnapshotList()
+    {
+        final MutableBeanLocator locator = new DefaultBeanLocator();
+        final List<Bean> list =
+            EntryListAdapter.<Annotation, Bean> snapshot( locator.<Annotation, Bean> locate( Key.get( Bean.class ) ) );
+
+        assertTrue( list instanceof RandomAccess );
+        assertTrue( list.isEmpty() );
+
+        final Injector injector = RankedBindingsTest.hintedInjector( "A" );
+        locator.add( injector, 0 );
+        assertEquals( 1, list.size() );
+        assertSame( list.get( 0 ), list.iterator().next() );
+
+        locator.add( RankedBindingsTest.hintedInjector( "B" ), 1 );
+        assertEquals( 2, list.size() );
+
+        locator.remove( injector );
+        assertEquals( 1, list.size() );
+
+        final EntrySnapshot<Annotation, Bean> snapshot =
+            new EntrySnapshot<Annotation, Bean>( locator.<Annotation, Bean> locate( Key.get( Bean.class ) ) );
+
+        final EntrySnapshot.Capture<Annotation, Bean> capture = snapshot.get();
+        assertSame( capture, snapshot.get() );
+        locator.add( injector, 2 );
+        assertNotSame( capture, snapshot.get() );
+        assertEquals( 2, snapshot.get().entries.length );
+
+        try
+        {
+            list.get( 2 );
+            fail( "Expected IndexOutOfBoundsException" );
+        }
+        catch ( final IndexOutOfBoundsException e )
+        {
+        }
+    }
+
+    @SuppressWarnings( "boxing" )
+    public void testFixedSnapshotList()
+    {
+        final Map<Integer, String> map = new LinkedHashMap<Integer, String>();
+
+        map.put( 3, "C" );
+        map.put( 1, "A" );
+
+        final List<String> list = EntryListAdapter.snapshot( map.entrySet() );
+        assertEquals( 2, list.size() );
+
+        map.put( 2, "B" );
+
+        assertEquals( Arrays.asList( "C", "A" ), list );
+        assertEquals( "A", list.get( 1 ) );
+    }
 }
@@ -12,10 +12,17 @@
 package org.sonatype.guice.bean.locators;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import junit.framework.TestCase;
 
+import org.sonatype.guice.bean.locators.RankedBindingsTest.Bean;
+
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Named;
+
 public class EntryMapAdapterTest
     extends TestCase
 {
@@ -54,4 +61,45 @@ public class EntryMapAdapterTest
         original.clear();
         assertEquals( original, adapter );
     }
+
+    @SuppressWarnings( { "deprecation", "rawtypes", "unchecked" } )
+    public void testSnapshotMap()
+    {
+        final MutableBeanLocator locator = new DefaultBeanLocator();
+        final Map<String, Bean> map =
+            EntryMapAdapter.snapshot( new NamedIterableAdapter( locator.locate( Key.get( Bean.class, Named.class ) ) ) );
+        assertTrue( map.isEmpty() );
+
+        final Injector injector = RankedBindingsTest.hintedInjector( "A" );
+        locator.add( injector, 0 );
+        locator.add( RankedBindingsTest.hintedInjector( "B" ), 1 );
+
+        assertEquals( 2, map.size() );
+        assertTrue( map.containsKey( "A" ) );
+        assertNotNull( map.get( "B" ) );
+        assertSame( map.get( "A" ), map.get( "A" ) );
+        assertNull( map.get( "C" ) );
+
+        locator.remove( injector );
+        assertFalse( map.containsKey( "A" ) );
+        assertEquals( 1, map.entrySet().size() );
+    }
+
+    @SuppressWarnings( "boxing" )
+    public void testFixedSnapshotMap()
+    {
+        final Map<String, Integer> original = new LinkedHashMap<String, Integer>();
+        original.put( "A", 1 );
+        original.put( "B", 2 );
+
+        final Map<String, Integer> snapshot = EntryMapAdapter.snapshot( original.entrySet() );
+        final Map<String, Integer> expected = new HashMap<String, Integer>( original );
+        assertEquals( 2, snapshot.size() );
+
+        original.put( "C", 3 );
+
+        assertEquals( expected, snapshot );
+        assertEquals( Integer.valueOf( 2 ), snapshot.get( "B" ) );
+        assertFalse( snapshot.containsKey( "C" ) );
+    }
 }
@@ -89,7 +89,7 @@ public class LocatedBeansTest
         final Iterator<BeanEntry<Annotation, Bean>> itr1 = beans.iterator();
         final Iterator<BeanEntry<Annotation, Bean>> itr2 = beans.iterator();
 
-        beans.retainAll( new RankedList<Binding<Bean>>() );
+        beans.evict( null );
 
         Bean a, b;
 
@@ -101,7 +101,7 @@ public class LocatedBeansTest
         assertSame( a, itr2.next().getValue() );
 
         a = itr1.next().getValue();
-        beans.retainAll( new RankedList<Binding<Bean>>() );
+        beans.evict( null );
         b = itr2.next().getValue();
 
         assertFalse( a == b );
@@ -192,6 +192,6 @@ public class LocatedBeansTest
         {
             bindings.add( b, 0 );
         }
-        return new LocatedBeans<Q, T>( key, bindings, null );
+        return new LocatedBeans<Q, T>( key, bindings, null, new BeanCache() );
     }
 }
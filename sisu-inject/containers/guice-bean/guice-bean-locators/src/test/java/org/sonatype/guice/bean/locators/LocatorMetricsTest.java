@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.locators;
+
+import java.lang.management.ManagementFactory;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.sonatype.guice.bean.locators.RankedBindingsTest.Bean;
+import org.sonatype.guice.bean.locators.spi.BindingPublisher;
+import org.sonatype.guice.bean.locators.spi.LocatorMonitor;
+import org.sonatype.inject.BeanEntry;
+import org.sonatype.inject.Mediator;
+
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Named;
+import com.google.inject.util.Types;
+
+public class LocatorMetricsTest
+    extends TestCase
+{
+    public void testCounters()
+    {
+        final LocatorMetrics metrics = new LocatorMetrics();
+        final Key<Bean> key = Key.get( Bean.class );
+
+        metrics.locate( key, 3000000 );
+        metrics.locate( key, 2000000 );
+        metrics.subscribe( TypeLiteral.get( String.class ), null, 1000000 );
+        metrics.readCache( key, true );
+        metrics.readCache( key, true );
+        metrics.readCache( key, false );
+        metrics.implicitBinding( key.getTypeLiteral(), false, 0 );
+        metrics.mediate( key, this, 0 );
+
+        assertEquals( 2, metrics.getLocateCount() );
+        assertEquals( 5, metrics.getLocateMillis() );
+        assertEquals( 1, metrics.getSubscribeCount() );
+        assertEquals( 1, metrics.getSubscribeMillis() );
+        assertEquals( 2, metrics.getReadCacheHits() );
+        assertEquals( 1, metrics.getReadCacheMisses() );
+        assertEquals( 1, metrics.getImplicitCount() );
+        assertEquals( 1, metrics.getImplicitMisses() );
+        assertEquals( 1, metrics.getMediateCount() );
+
+        final String[] topTypes = metrics.getTopTypes();
+        assertEquals( 2, topTypes.length );
+        assertTrue( topTypes[0], topTypes[0].startsWith( Bean.class.getName() + ": 3 calls, 5 ms" ) );
+        assertTrue( topTypes[1], topTypes[1].startsWith( String.class.getName() ) );
+
+        metrics.reset();
+
+        assertEquals( 0, metrics.getLocateCount() );
+        assertEquals( 0, metrics.getReadCacheHits() );
+        assertEquals( 0, metrics.getTopTypes().length );
+    }
+
+    public void testTypeMetricsAreBounded()
+    {
+        final LocatorMetrics metrics = new LocatorMetrics();
+
+        TypeLiteral<?> type = TypeLiteral.get( Bean.class );
+        metrics.locate( Key.get( type ), Long.MAX_VALUE / 2 );
+        for ( int i = 0; i < 2 * LocatorMetrics.MAX_TYPES; i++ )
+        {
+            type = TypeLiteral.get( Types.listOf( type.getType() ) );
+            metrics.subscribe( type, null, i );
+            assertTrue( metrics.trackedTypes() <= LocatorMetrics.MAX_TYPES );
+        }
+
+        // the slowest types survive trimming
+        assertTrue( metrics.getTopTypes()[0].startsWith( Bean.class.getName() + ": 1 calls" ) );
+    }
+
+    @SuppressWarnings( "deprecation" )
+    public void testGauges()
+    {
+        final LocatorMetrics metrics = new LocatorMetrics();
+        final MutableBeanLocator locator = new DefaultBeanLocator();
+
+        metrics.register( (DefaultBeanLocator) locator );
+
+        locator.add( RankedBindingsTest.hintedInjector( "A" ), 0 );
+        final Iterable<?> beans = locator.locate( Key.get( Bean.class ) );
+        beans.iterator().hasNext();
+
+        assertEquals( 1, metrics.getPublishers() );
+        assertTrue( metrics.getCachedTypes() >= 1 );
+        assertTrue( metrics.getLiveBeans() >= 1 );
+    }
+
+    public void testMonitorHooks()
+        throws Exception
+    {
+        System.setProperty( "org.sonatype.inject.monitor", RecordingMonitor.class.getName() );
+        try
+        {
+            // monitoring is fixed when the locator classes load, so run the scenario in a fresh class loader
+            final ClassLoader monitoredLoader =
+                new URLClassLoader( ( (URLClassLoader) getClass().getClassLoader() ).getURLs(), null );
+
+            ( (Runnable) monitoredLoader.loadClass( MonitoredScenario.class.getName() ).newInstance() ).run();
+        }
+        finally
+        {
+            System.clearProperty( "org.sonatype.inject.monitor" );
+        }
+    }
+
+    public static final class RecordingMonitor
+        implements LocatorMonitor
+    {
+        final Set<String> hooks = Collections.synchronizedSet( new HashSet<String>() );
+
+        final AtomicInteger locateCount = new AtomicInteger();
+
+        public void locate( final Key<?> key, final long nanos )
+        {
+            hooks.add( "locate" );
+            locateCount.incrementAndGet();
+        }
+
+        public void subscribe( final TypeLiteral<?> type, final BindingPublisher publisher, final long nanos )
+        {
+            hooks.add( "subscribe" );
+        }
+
+        public void readCache( final Key<?> key, final boolean hit )
+        {
+            hooks.add( hit ? "hit" : "miss" );
+        }
+
+        public void implicitBinding( final TypeLiteral<?> type, final boolean found, final long nanos )
+        {
+            hooks.add( "implicit" );
+        }
+
+        public void mediate( final Key<?> key, final Object watcher, final long nanos )
+        {
+            hooks.add( "mediate" );
+        }
+    }
+
+    public static final class MonitoredScenario
+        implements Runnable
+    {
+        @SuppressWarnings( "deprecation" )
+        public void run()
+        {
+            assertTrue( Monitors.ENABLED );
+            final Set<String> hooks = ( (RecordingMonitor) Monitors.MONITOR ).hooks;
+
+            final MutableBeanLocator locator = new DefaultBeanLocator();
+            final Key<Bean> key = Key.get( Bean.class, Named.class );
+
+            final Iterable<? extends BeanEntry<Named, Bean>> beans = locator.locate( key );
+            locator.watch( key, new Mediator<Named, Bean, Object>()
+            {
+                public void add( final BeanEntry<Named, Bean> entry, final Object watcher )
+                {
+                }
+
+                public void remove( final BeanEntry<Named, Bean> entry, final Object watcher )
+                {
+                }
+            }, this );
+
+            locator.add( RankedBindingsTest.hintedInjector( "A" ), 0 );
+            assertTrue( hooks.toString(), hooks.contains( "mediate" ) );
+
+            assertTrue( beans.iterator().hasNext() );
+            assertTrue( beans.iterator().hasNext() );
+            assertTrue( hooks.toString(), hooks.containsAll( Arrays.asList( "locate", "subscribe", "miss", "hit" ) ) );
+
+            // each iteration is only timed once, however many beans it visits
+            locator.add( RankedBindingsTest.hintedInjector( "B" ), 1 );
+            final AtomicInteger locateCount = ( (RecordingMonitor) Monitors.MONITOR ).locateCount;
+            locateCount.set( 0 );
+            int beanCount = 0;
+            for ( final Iterator<?> itr = beans.iterator(); itr.hasNext(); itr.next() )
+            {
+                beanCount++;
+            }
+            assertEquals( 2, beanCount );
+            assertEquals( 1, locateCount.get() );
+        }
+    }
+
+    public void testExport()
+        throws Exception
+    {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName( LocatorMetrics.OBJECT_NAME );
+        if ( server.isRegistered( name ) )
+        {
+            server.unregisterMBean( name );
+        }
+
+        final LocatorMetrics metrics = new LocatorMetrics().export();
+        try
+        {
+            metrics.locate( Key.get( Bean.class ), 0 );
+            assertEquals( Long.valueOf( 1 ), server.getAttribute( name, "LocateCount" ) );
+        }
+        finally
+        {
+            server.unregisterMBean( name );
+        }
+    }
+}
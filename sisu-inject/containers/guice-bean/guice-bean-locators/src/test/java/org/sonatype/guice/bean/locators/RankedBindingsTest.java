@@ -82,6 +82,18 @@ public class RankedBindingsTest
         }
     } );
 
+    static Injector hintedInjector( final String hint )
+    {
+        return Guice.createInjector( new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind( Bean.class ).annotatedWith( Names.named( hint ) ).to( BeanImpl.class );
+            }
+        } );
+    }
+
     public void testExistingExporters()
     {
         final RankedList<BindingPublisher> exporters = new RankedList<BindingPublisher>();
@@ -132,6 +144,49 @@ public class RankedBindingsTest
         assertFalse( itr.hasNext() );
     }
 
+    public void testSharedExporters()
+    {
+        final RankedList<BindingPublisher> exporters = new RankedList<BindingPublisher>();
+        final RankedBindings<Bean> bindings = new RankedBindings<Bean>( TypeLiteral.get( Bean.class ), exporters );
+
+        final BindingPublisher exporter1 = new InjectorPublisher( injector1, new DefaultRankingFunction( 1 ) );
+        final BindingPublisher exporter2 = new InjectorPublisher( injector2, new DefaultRankingFunction( 2 ) );
+        final BindingPublisher exporter3 = new InjectorPublisher( injector3, new DefaultRankingFunction( 3 ) );
+
+        final int version = bindings.version();
+
+        exporters.insert( exporter1, 1 );
+        exporters.insert( exporter3, 3 );
+        exporters.insert( exporter2, 2 );
+
+        // nothing is queued until the type is used, but the version still changes
+        assertEquals( 0, bindings.pendingPublishers.size() );
+        assertTrue( version != bindings.version() );
+
+        exporters.remove( exporter2 );
+
+        Iterator<Binding<Bean>> itr = bindings.iterator();
+        assertTrue( itr.hasNext() );
+        assertEquals( Names.named( "3" ), itr.next().getKey().getAnnotation() );
+        assertEquals( 0, bindings.pendingPublishers.size() );
+        assertEquals( 2, bindings.partitions.size() );
+
+        exporters.insert( exporter2, 2 );
+
+        // newly shared exporters are merged in rank order, even mid-iteration
+        assertTrue( itr.hasNext() );
+        assertEquals( Names.named( "2" ), itr.next().getKey().getAnnotation() );
+        assertEquals( Names.named( "1" ), itr.next().getKey().getAnnotation() );
+        assertFalse( itr.hasNext() );
+
+        itr = bindings.iterator();
+        assertNull( itr.next().getKey().getAnnotation() );
+        assertEquals( Names.named( "3" ), itr.next().getKey().getAnnotation() );
+        assertEquals( Names.named( "2" ), itr.next().getKey().getAnnotation() );
+        assertEquals( Names.named( "1" ), itr.next().getKey().getAnnotation() );
+        assertFalse( itr.hasNext() );
+    }
+
     public void testPendingExporters()
     {
         final RankedBindings<Bean> bindings = new RankedBindings<Bean>( TypeLiteral.get( Bean.class ), null );
@@ -220,13 +275,15 @@ public class RankedBindingsTest
     {
         final Key<Bean> key = Key.get( TypeLiteral.get( Bean.class ) );
         final RankedBindings<Bean> bindings = new RankedBindings<Bean>( key.getTypeLiteral(), null );
+        final BeanCache beanCache = new BeanCache();
 
         assertFalse( bindings.isActive() );
-        LocatedBeans<Named, Bean> namedBeans1 = new LocatedBeans<Named, Bean>( key, bindings, null );
+
+        LocatedBeans<Named, Bean> namedBeans1 = new LocatedBeans<Named, Bean>( key, bindings, null, beanCache );
         assertTrue( bindings.isActive() );
-        LocatedBeans<Named, Bean> namedBeans2 = new LocatedBeans<Named, Bean>( key, bindings, null );
+        LocatedBeans<Named, Bean> namedBeans2 = new LocatedBeans<Named, Bean>( key, bindings, null, beanCache );
         assertTrue( bindings.isActive() );
-        LocatedBeans<Named, Bean> namedBeans3 = new LocatedBeans<Named, Bean>( key, bindings, null );
+        LocatedBeans<Named, Bean> namedBeans3 = new LocatedBeans<Named, Bean>( key, bindings, null, beanCache );
         assertTrue( bindings.isActive() );
 
         assertFalse( namedBeans1.iterator().hasNext() );
@@ -313,4 +370,131 @@ public class RankedBindingsTest
         assertFalse( itr.hasNext() );
         assertFalse( itr.hasNext() );
     }
+
+    public void testQualifiedIterator()
+    {
+        final BindingPublisher exporter1 = new InjectorPublisher( injector1, new DefaultRankingFunction( 1 ) );
+        final BindingPublisher exporter2 = new InjectorPublisher( injector2, new DefaultRankingFunction( 2 ) );
+        final BindingPublisher exporter3 = new InjectorPublisher( injector3, new DefaultRankingFunction( 3 ) );
+
+        final RankedBindings<Bean> bindings = new RankedBindings<Bean>( TypeLiteral.get( Bean.class ), null );
+
+        bindings.add( exporter1, 1 );
+        bindings.add( exporter2, 2 );
+        bindings.add( exporter3, 3 );
+
+        Iterator<Binding<Bean>> itr = bindings.iterator( Names.named( "2" ) );
+
+        assertTrue( itr.hasNext() );
+        assertEquals( Names.named( "2" ), itr.next().getKey().getAnnotation() );
+        assertFalse( itr.hasNext() );
+
+        itr = bindings.iterator( QualifyingStrategy.DEFAULT_QUALIFIER );
+
+        assertTrue( itr.hasNext() );
+        assertNull( itr.next().getKey().getAnnotation() );
+        assertFalse( itr.hasNext() );
+
+        itr = bindings.iterator( Names.named( "4" ) );
+
+        assertFalse( itr.hasNext() );
+
+        bindings.remove( exporter2 );
+
+        assertFalse( bindings.iterator( Names.named( "2" ) ).hasNext() );
+        assertFalse( bindings.iterator( QualifyingStrategy.DEFAULT_QUALIFIER ).hasNext() );
+        assertTrue( bindings.iterator( Names.named( "1" ) ).hasNext() );
+
+        itr = bindings.iterator( Names.named( "2" ) );
+
+        assertFalse( itr.hasNext() );
+
+        bindings.add( exporter2, 2 );
+
+        assertTrue( itr.hasNext() );
+        assertEquals( Names.named( "2" ), itr.next().getKey().getAnnotation() );
+        assertFalse( itr.hasNext() );
+
+        // empty qualified lists are dropped, but earlier iterators still see replacements
+        itr = bindings.iterator( Names.named( "2" ) );
+        assertTrue( itr.hasNext() );
+        itr.next();
+        assertFalse( itr.hasNext() );
+
+        bindings.remove( exporter2 );
+        assertFalse( bindings.qualifiedBindings.containsKey( Names.named( "2" ) ) );
+        assertFalse( bindings.qualifiedBindings.containsKey( QualifyingStrategy.DEFAULT_QUALIFIER ) );
+
+        bindings.add( exporter2, 2 );
+        assertTrue( itr.hasNext() );
+        assertEquals( Names.named( "2" ), itr.next().getKey().getAnnotation() );
+
+        bindings.clear();
+
+        assertTrue( bindings.qualifiedBindings.isEmpty() );
+        assertFalse( bindings.iterator( Names.named( "1" ) ).hasNext() );
+        assertFalse( bindings.iterator( Names.named( "3" ) ).hasNext() );
+    }
+
+    public void testPublisherManifest()
+    {
+        final InjectorPublisher exporter0 = new InjectorPublisher( injector0, new DefaultRankingFunction( 0 ) );
+        final InjectorPublisher exporter1 = new InjectorPublisher( injector1, new DefaultRankingFunction( 1 ) );
+        final InjectorPublisher wildcardExporter = new InjectorPublisher( Guice.createInjector( new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind( Object.class ).annotatedWith( Names.named( "W" ) ).to( BeanImpl.class );
+            }
+        } ), new DefaultRankingFunction( 2 ) );
+
+        assertFalse( exporter0.mayPublish( TypeLiteral.get( Bean.class ) ) );
+        assertTrue( exporter1.mayPublish( TypeLiteral.get( Bean.class ) ) );
+        assertFalse( exporter1.mayPublish( TypeLiteral.get( AbstractBean.class ) ) );
+        assertTrue( wildcardExporter.mayPublish( TypeLiteral.get( Bean.class ) ) );
+        assertTrue( wildcardExporter.mayPublish( TypeLiteral.get( AbstractBean.class ) ) );
+        assertFalse( wildcardExporter.mayPublish( TypeLiteral.get( String.class ) ) );
+
+        final RankedBindings<Bean> bindings = new RankedBindings<Bean>( TypeLiteral.get( Bean.class ), null );
+
+        bindings.add( exporter0, 0 );
+        bindings.add( exporter1, 1 );
+        bindings.add( wildcardExporter, 2 );
+
+        assertEquals( 2, bindings.pendingPublishers.size() );
+        assertFalse( bindings.pendingPublishers.contains( exporter0 ) );
+
+        final Iterator<Binding<Bean>> itr = bindings.iterator();
+        assertTrue( itr.hasNext() );
+        assertEquals( Names.named( "W" ), itr.next().getKey().getAnnotation() );
+        assertTrue( itr.hasNext() );
+        assertEquals( Names.named( "1" ), itr.next().getKey().getAnnotation() );
+        assertFalse( itr.hasNext() );
+
+        bindings.remove( exporter0 );
+        bindings.remove( wildcardExporter );
+
+        assertEquals( 1, bindings.bindings.size() );
+
+        final RankedBindings<AbstractBean> abstractBindings =
+            new RankedBindings<AbstractBean>( TypeLiteral.get( AbstractBean.class ), null );
+
+        abstractBindings.add( exporter1, 1 );
+        abstractBindings.add( wildcardExporter, 2 );
+
+        final Iterator<Binding<AbstractBean>> abstractItr = abstractBindings.iterator();
+        assertTrue( abstractItr.hasNext() );
+        assertEquals( Names.named( "W" ), abstractItr.next().getKey().getAnnotation() );
+        assertFalse( abstractItr.hasNext() );
+
+        final RankedBindings<Comparable<String>> genericBindings =
+            new RankedBindings<Comparable<String>>( new TypeLiteral<Comparable<String>>()
+            {
+            }, null );
+
+        genericBindings.add( wildcardExporter, 2 );
+
+        assertFalse( genericBindings.iterator().hasNext() );
+    }
 }
@@ -12,6 +12,7 @@
 package org.sonatype.guice.bean.locators;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -203,6 +204,83 @@ public class RankedListTest
         assertEquals( 1, list.indexOfThis( markerString ) );
     }
 
+    public void testRemoveAll()
+    {
+        final RankedList<String> list = new RankedList<String>();
+
+        list.insert( "A", 4 );
+        list.insert( "B", 3 );
+        list.insert( "C", 2 );
+        list.insert( "D", 1 );
+        list.insert( "E", 0 );
+
+        final Iterator<String> itr = list.iterator();
+        assertEquals( "A", itr.next() );
+
+        assertFalse( list.removeAll( Arrays.asList( "X", "Y" ) ) );
+        assertEquals( 5, list.size() );
+
+        final RankedList<String> clone = list.clone();
+
+        assertTrue( list.removeAll( Arrays.asList( "B", "D", "E" ) ) );
+        assertEquals( 2, list.size() );
+        assertEquals( "A", list.get( 0 ) );
+        assertEquals( "C", list.get( 1 ) );
+        assertEquals( 2, list.getRank( 1 ) );
+
+        assertTrue( itr.hasNext() );
+        assertEquals( "C", itr.next() );
+        assertFalse( itr.hasNext() );
+
+        assertEquals( 5, clone.size() );
+    }
+
+    public void testInsertAll()
+    {
+        final RankedList<String> list = new RankedList<String>();
+
+        list.insert( "B1", 3 );
+        list.insert( "D1", 1 );
+
+        final Iterator<String> itr = list.iterator();
+        assertEquals( "B1", itr.next() );
+
+        final RankedList<String> batch = new RankedList<String>();
+        list.insertAll( batch );
+        assertEquals( 2, list.size() );
+
+        batch.insert( "E", 0 );
+        batch.insert( "B2", 3 );
+        batch.insert( "A", 4 );
+        batch.insert( "D2", 1 );
+        batch.insert( "C", 2 );
+        batch.insert( "B3", 3 );
+
+        list.insertAll( batch );
+
+        assertEquals( 8, list.size() );
+        assertEquals( 6, batch.size() );
+
+        assertEquals( Arrays.asList( "A", "B1", "B2", "B3", "C", "D1", "D2", "E" ), new ArrayList<String>( list ) );
+        assertEquals( 4, list.getRank( 0 ) );
+        assertEquals( 3, list.getRank( 3 ) );
+        assertEquals( 0, list.getRank( 7 ) );
+
+        assertEquals( "B2", itr.next() );
+        assertEquals( "B3", itr.next() );
+        assertEquals( "C", itr.next() );
+
+        list.insert( "B4", 3 );
+        list.insert( "D3", 1 );
+
+        assertEquals( 4, list.indexOf( "B4" ) );
+        assertEquals( "D1", itr.next() );
+        assertEquals( "D2", itr.next() );
+        assertEquals( "D3", itr.next() );
+        assertEquals( "E", itr.next() );
+        assertFalse( itr.hasNext() );
+    }
+
     public void testEmptyList()
     {
         final Iterator<Object> itr = new RankedList<Object>().iterator();
@@ -356,6 +434,32 @@ public class RankedListTest
         assertTrue( clone.isEmpty() );
     }
 
+    public void testPublishedContents()
+    {
+        final RankedList<String> list = new RankedList<String>();
+
+        list.insert( "A", 2 );
+        list.insert( "C", 0 );
+
+        final RankedList.Contents contents = list.contents;
+
+        list.insert( "D", -1 ); // append
+        list.insert( "B", 1 ); // insert
+        list.remove( 0 );
+        list.insert( "E", -2 ); // append
+
+        // published contents never change
+        assertEquals( 2, contents.size );
+        assertEquals( "A", contents.objs[0] );
+        assertEquals( "C", contents.objs[1] );
+
+        assertEquals( Arrays.asList( "B", "C", "D", "E" ), new ArrayList<String>( list ) );
+
+        list.clear();
+        assertEquals( 0, list.contents.size );
+        assertEquals( 5, list.contents.uniq );
+    }
+
     @SuppressWarnings( "deprecation" )
     public void testUnsupportedMethods()
     {
@@ -11,7 +11,13 @@
  *******************************************************************************/
 package org.sonatype.guice.bean.locators;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.inject.Named;
 
@@ -22,6 +28,7 @@ import org.sonatype.guice.bean.locators.RankedBindingsTest.Bean;
 import org.sonatype.guice.bean.locators.RankedBindingsTest.BeanImpl;
 import org.sonatype.guice.bean.locators.spi.BindingPublisher;
 import org.sonatype.guice.bean.locators.spi.BindingSubscriber;
+import org.sonatype.inject.BatchMediator;
 import org.sonatype.inject.BeanEntry;
 import org.sonatype.inject.Mediator;
 
@@ -249,4 +256,257 @@ public class WatchedBeansTest
         subscriberHolder[0].remove( child2.getBinding( Key.get( Bean.class, Names.named( "Y" ) ) ) );
         subscriberHolder[0].remove( child2.getBinding( Key.get( Bean.class, Marked.class ) ) );
     }
+
+    static class BatchRankingMediator
+        extends RankingMediator
+        implements BatchMediator<Named, Bean, RankedList<String>>
+    {
+        final List<String> updates = new ArrayList<String>();
+
+        public void update( final List<BeanEntry<Named, Bean>> added, final List<BeanEntry<Named, Bean>> removed,
+                            final RankedList<String> names )
+        {
+            for ( final BeanEntry<Named, Bean> entry : removed )
+            {
+                remove( entry, names );
+            }
+            for ( final BeanEntry<Named, Bean> entry : added )
+            {
+                add( entry, names );
+            }
+            updates.add( "+" + added.size() + "-" + removed.size() );
+        }
+    }
+
+    @SuppressWarnings( "deprecation" )
+    public void testBatchMediation()
+    {
+        final MutableBeanLocator locator = new DefaultBeanLocator();
+        final RankedList<String> names = new RankedList<String>();
+        final BatchRankingMediator mediator = new BatchRankingMediator();
+
+        locator.watch( Key.get( Bean.class, Named.class ), mediator, names );
+
+        locator.add( parent, 0 );
+        locator.add( child1, 1 );
+
+        assertTrue( Arrays.equals( new Object[] { "X", "A", "B", "C" }, names.toArray() ) );
+        assertEquals( Arrays.asList( "+3-0", "+1-0" ), mediator.updates );
+
+        locator.remove( parent );
+
+        assertTrue( Arrays.equals( new Object[] { "X" }, names.toArray() ) );
+        assertEquals( "+0-3", mediator.updates.get( 2 ) );
+
+        locator.clear();
+
+        assertTrue( names.isEmpty() );
+        assertEquals( 4, mediator.updates.size() );
+
+        locator.clear();
+
+        // nothing changed, so no update
+        assertEquals( 4, mediator.updates.size() );
+
+        final ManualExecutor executor = new ManualExecutor();
+        ( (DefaultBeanLocator) locator ).setMediatorExecutor( executor );
+
+        final RankedList<String> queuedNames = new RankedList<String>();
+        final BatchRankingMediator queuedMediator = new BatchRankingMediator();
+        locator.watch( Key.get( Bean.class, Named.class ), queuedMediator, queuedNames );
+
+        locator.add( child2, 2 );
+        locator.add( parent, 0 );
+
+        assertEquals( Collections.emptyList(), queuedMediator.updates );
+
+        executor.runAll();
+
+        assertTrue( Arrays.equals( new Object[] { "Y", "A", "B", "C" }, queuedNames.toArray() ) );
+        assertEquals( Arrays.asList( "+1-0", "+3-0" ), queuedMediator.updates );
+    }
+
+    static class ManualExecutor
+        implements Executor
+    {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        public void execute( final Runnable task )
+        {
+            tasks.add( task );
+        }
+
+        void runAll()
+        {
+            while ( !tasks.isEmpty() )
+            {
+                tasks.remove( 0 ).run();
+            }
+        }
+    }
+
+    @SuppressWarnings( "deprecation" )
+    public void testQueuedMediation()
+    {
+        final DefaultBeanLocator locator = new DefaultBeanLocator();
+        final RankedList<String> names = new RankedList<String>();
+        final ManualExecutor executor = new ManualExecutor();
+
+        locator.setMediatorExecutor( executor );
+        locator.watch( Key.get( Bean.class, Named.class ), new RankingMediator(), names );
+
+        locator.add( parent, 0 );
+        locator.add( child1, 1 );
+
+        assertTrue( names.isEmpty() );
+        assertEquals( 1, executor.tasks.size() );
+
+        executor.runAll();
+
+        assertTrue( Arrays.equals( new Object[] { "X", "A", "B", "C" }, names.toArray() ) );
+
+        // add followed by remove before delivery should cancel out
+        locator.add( child3, 3 );
+        locator.remove( child3 );
+        locator.remove( child1 );
+
+        executor.runAll();
+
+        assertTrue( Arrays.equals( new Object[] { "A", "B", "C" }, names.toArray() ) );
+
+        locator.flush();
+    }
+
+    @SuppressWarnings( "deprecation" )
+    public void testAsyncMediation()
+    {
+        final DefaultBeanLocator locator = new DefaultBeanLocator();
+        final RankedList<String> names = new RankedList<String>();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        locator.setMediatorExecutor( executor );
+        locator.watch( Key.get( Bean.class, Named.class ), new RankingMediator(), names );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            locator.add( parent, 0 );
+            locator.add( child1, 1 );
+            locator.remove( parent );
+            locator.add( child2, 2 );
+            locator.remove( child1 );
+            locator.remove( child2 );
+        }
+        locator.add( child3, 3 );
+        locator.add( parent, 0 );
+
+        locator.flush();
+
+        assertTrue( Arrays.equals( new Object[] { "Z", "A", "B", "C" }, names.toArray() ) );
+
+        executor.shutdown();
+
+        // executor has gone, so we should fall back to delivery on the calling thread
+        locator.remove( child3 );
+
+        assertTrue( Arrays.equals( new Object[] { "A", "B", "C" }, names.toArray() ) );
+    }
+
+    @SuppressWarnings( "deprecation" )
+    public void testRejectedMediationWaitsForLockRelease()
+    {
+        final DefaultBeanLocator locator = new DefaultBeanLocator();
+        final List<String> names = new ArrayList<String>();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        executor.shutdown();
+
+        locator.setMediatorExecutor( executor );
+        locator.watch( Key.get( Bean.class, Named.class ), new Mediator<Named, Bean, Object>()
+        {
+            public void add( final BeanEntry<Named, Bean> entry, final Object watcher )
+            {
+                assertFalse( "Delivered while holding the locator lock", Thread.holdsLock( locator ) );
+                names.add( entry.getKey().value() );
+            }
+
+            public void remove( final BeanEntry<Named, Bean> entry, final Object watcher )
+            {
+                assertFalse( "Delivered while holding the locator lock", Thread.holdsLock( locator ) );
+                names.remove( entry.getKey().value() );
+            }
+        }, names );
+
+        locator.add( parent, 0 );
+
+        assertEquals( Arrays.asList( "A", "B", "C" ), names );
+
+        locator.remove( parent );
+
+        assertTrue( names.isEmpty() );
+    }
+
+    @SuppressWarnings( "deprecation" )
+    public void testMediatorCallsBackWhileQueueIsFull()
+        throws Exception
+    {
+        final DefaultBeanLocator locator = new DefaultBeanLocator();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final int beanCount = 2 * WatchedBeans.MAX_PENDING_EVENTS;
+
+        locator.setMediatorExecutor( executor );
+
+        final Injector injector = Guice.createInjector( new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                for ( int i = 0; i < beanCount; i++ )
+                {
+                    bind( Bean.class ).annotatedWith( Names.named( "B" + i ) ).to( BeanImpl.class );
+                }
+            }
+        } );
+
+        final List<String> names = Collections.synchronizedList( new ArrayList<String>() );
+        locator.watch( Key.get( Bean.class, Named.class ), new Mediator<Named, Bean, Object>()
+        {
+            public void add( final BeanEntry<Named, Bean> entry, final Object watcher )
+                throws InterruptedException
+            {
+                if ( names.isEmpty() )
+                {
+                    Thread.sleep( 100 ); // let the backlog fill up
+
+                    // both calls need the locator lock
+                    locator.locate( Key.get( Runnable.class ) ).iterator().hasNext();
+                    locator.watch( Key.get( Bean.class, Names.named( "B0" ) ), new RankingMediator(),
+                                   new RankedList<String>() );
+                }
+                names.add( entry.getKey().value() );
+            }
+
+            public void remove( final BeanEntry<Named, Bean> entry, final Object watcher )
+            {
+                names.remove( entry.getKey().value() );
+            }
+        }, names );
+
+        final Thread producer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                locator.add( injector, 0 );
+            }
+        };
+
+        producer.start();
+        producer.join( 10000 );
+        assertFalse( "Deadlock between producer and mediator", producer.isAlive() );
+
+        locator.flush();
+        assertEquals( beanCount, names.size() );
+
+        executor.shutdown();
+    }
 }
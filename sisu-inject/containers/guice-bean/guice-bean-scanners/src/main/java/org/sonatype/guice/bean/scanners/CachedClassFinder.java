@@ -0,0 +1,633 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.scanners;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.sonatype.guice.bean.reflect.ClassSpace;
+import org.sonatype.guice.bean.reflect.Logs;
+import org.sonatype.guice.bean.reflect.URLClassSpace;
+import org.sonatype.guice.bean.scanners.asm.AnnotationVisitor;
+import org.sonatype.guice.bean.scanners.asm.Attribute;
+import org.sonatype.guice.bean.scanners.asm.ClassVisitor;
+import org.sonatype.guice.bean.scanners.asm.FieldVisitor;
+import org.sonatype.guice.bean.scanners.asm.MethodVisitor;
+import org.sonatype.guice.bean.scanners.asm.Opcodes;
+
+/**
+ * {@link ClassFinder} that remembers which classes in each jar or directory are worth scanning, using a persistent
+ * cache directory. Unchanged class path entries are not parsed again; anything that isn't a local jar or directory is
+ * always scanned. Results are recorded while the {@link ClassSpaceScanner} visits the classes, so each class is only
+ * parsed once; they are saved when the scan ends.
+ */
+public final class CachedClassFinder
+    implements ClassFinder
+{
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    private static final String CLASS_GLOB = "*.class";
+
+    private static final String CACHE_SUFFIX = ".idx";
+
+    private static final String UTF_8 = "UTF-8";
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    final File cacheDir;
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    public CachedClassFinder( final File cacheDir )
+    {
+        this.cacheDir = cacheDir;
+    }
+
+    // ----------------------------------------------------------------------
+    // Public methods
+    // ----------------------------------------------------------------------
+
+    public Enumeration<URL> findClasses( final ClassSpace space )
+    {
+        if ( !( space instanceof URLClassSpace ) )
+        {
+            return space.findEntries( null, CLASS_GLOB, true );
+        }
+
+        final URL[] path = ( (URLClassSpace) space ).getURLs();
+        final CacheEntry[] entries = new CacheEntry[path.length];
+        for ( int i = 0; i < path.length; i++ )
+        {
+            entries[i] = new CacheEntry( path[i] );
+        }
+
+        boolean allCached = true;
+        for ( int i = 0; i < entries.length; i++ )
+        {
+            for ( int j = 0; j < entries.length; j++ )
+            {
+                if ( i != j && entries[i].contains( entries[j] ) )
+                {
+                    // can't reliably tell overlapping entries apart
+                    entries[i].isCacheable = entries[j].isCacheable = false;
+                }
+            }
+        }
+        for ( final CacheEntry e : entries )
+        {
+            allCached &= e.load();
+        }
+
+        final List<URL> classes = new ArrayList<URL>();
+        boolean allMatched = true;
+        int i = 0;
+        if ( !allCached )
+        {
+            // resources are listed one class path entry at a time, in order
+            final Enumeration<URL> result = space.findEntries( null, CLASS_GLOB, true );
+            while ( result.hasMoreElements() )
+            {
+                final URL url = result.nextElement();
+                final String spec = url.toString();
+                final int j = indexOf( entries, i, spec );
+                if ( j < 0 )
+                {
+                    // can't tell which entry this came from, so scan it without caching
+                    classes.add( url );
+                    allMatched = false;
+                    continue;
+                }
+                while ( i < j )
+                {
+                    entries[i++].flush( classes );
+                }
+                entries[i].scan( url, classes );
+            }
+        }
+        while ( i < entries.length )
+        {
+            entries[i++].flush( classes );
+        }
+
+        return new ScanResults( classes, entries, allMatched );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Returns a stamp that changes whenever a class file is added, removed, or updated under the given directory.
+     * 
+     * @param dir The directory
+     * @return Directory stamp
+     */
+    static String stampDirectory( final File dir )
+    {
+        final List<File> pending = new ArrayList<File>();
+        pending.add( dir );
+
+        long count = 0, hash = 0;
+        for ( int i = 0; i < pending.size(); i++ )
+        {
+            final File[] listing = pending.get( i ).listFiles();
+            if ( null != listing )
+            {
+                for ( final File f : listing )
+                {
+                    if ( f.isDirectory() )
+                    {
+                        pending.add( f );
+                    }
+                    else if ( f.getName().endsWith( ".class" ) )
+                    {
+                        // order independent, as listings are not sorted
+                        hash += 31L * f.getPath().hashCode() + 17L * f.length() + f.lastModified();
+                        count++;
+                    }
+                }
+            }
+        }
+        return count + ":" + Long.toHexString( hash );
+    }
+
+    /**
+     * Finds the first cache entry, starting from the given index, that contains the given class resource.
+     * 
+     * @param entries The cache entries
+     * @param from The starting index
+     * @param spec The class resource
+     * @return Index of the matching entry; {@code -1} if there is no match
+     */
+    private static int indexOf( final CacheEntry[] entries, final int from, final String spec )
+    {
+        for ( int i = from; i < entries.length; i++ )
+        {
+            if ( entries[i].contains( spec ) )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the name of the cache file used for the given class path entry.
+     * 
+     * @param spec The class path entry
+     * @return Cache file name
+     */
+    static String cacheName( final String spec )
+    {
+        try
+        {
+            final StringBuilder buf = new StringBuilder();
+            for ( final byte b : MessageDigest.getInstance( "SHA-1" ).digest( spec.getBytes( UTF_8 ) ) )
+            {
+                buf.append( Character.forDigit( b >> 4 & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+            }
+            return buf.append( CACHE_SUFFIX ).toString();
+        }
+        catch ( final Exception e )
+        {
+            return Integer.toHexString( spec.hashCode() ) + CACHE_SUFFIX;
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Class resources found for a single scan, along with the cache entries that still need results.
+     */
+    static final class ScanResults
+        implements Enumeration<URL>
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final Enumeration<URL> classes;
+
+        private final CacheEntry[] entries;
+
+        private final boolean allMatched;
+
+        private int cursor;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        ScanResults( final List<URL> classes, final CacheEntry[] entries, final boolean allMatched )
+        {
+            this.classes = Collections.enumeration( classes );
+            this.entries = entries;
+            this.allMatched = allMatched;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        public boolean hasMoreElements()
+        {
+            return classes.hasMoreElements();
+        }
+
+        public URL nextElement()
+        {
+            return classes.nextElement();
+        }
+
+        // ----------------------------------------------------------------------
+        // Local methods
+        // ----------------------------------------------------------------------
+
+        /**
+         * Wraps the given {@link ClassSpaceVisitor} so it records which of the visited classes are worth scanning.
+         * 
+         * @param visitor The class space visitor
+         * @return Recording class space visitor
+         */
+        ClassSpaceVisitor record( final ClassSpaceVisitor visitor )
+        {
+            return new ClassSpaceVisitor()
+            {
+                public void visit( final ClassSpace space )
+                {
+                    visitor.visit( space );
+                }
+
+                public ClassVisitor visitClass( final URL url )
+                {
+                    final ClassVisitor cv = visitor.visitClass( url );
+
+                    // classes are visited in the order they were found, so carry on from the last matching entry
+                    final String spec = url.toString();
+                    final int i = indexOf( entries, cursor, spec );
+                    if ( i < 0 || !entries[i].isScanned() )
+                    {
+                        return cv;
+                    }
+                    cursor = i;
+                    return new CandidateVisitor( cv, entries[i], spec.substring( entries[i].prefix.length() ) );
+                }
+
+                public void visitEnd()
+                {
+                    save();
+                    visitor.visitEnd();
+                }
+            };
+        }
+
+        // ----------------------------------------------------------------------
+        // Implementation methods
+        // ----------------------------------------------------------------------
+
+        private void save()
+        {
+            for ( final CacheEntry e : entries )
+            {
+                // entries that saw no resources are only known to be empty when every resource was matched
+                if ( e.isScanned() || allMatched && e.isCacheable )
+                {
+                    e.save();
+                }
+            }
+        }
+    }
+
+    /**
+     * Cached scanning results for a single jar or directory.
+     */
+    final class CacheEntry
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        final String prefix;
+
+        boolean isCacheable;
+
+        private String stamp;
+
+        private List<String> names;
+
+        final List<String> scanned = new ArrayList<String>();
+
+        private boolean isScanned;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        CacheEntry( final URL url )
+        {
+            final boolean isFolder = url.getPath().endsWith( "/" );
+
+            // must match the resource URLs returned from URLClassSpace
+            if ( isFolder )
+            {
+                prefix = url.toString();
+            }
+            else if ( "jar".equals( url.getProtocol() ) )
+            {
+                prefix = url + "#";
+            }
+            else
+            {
+                prefix = "jar:" + url + "!/";
+            }
+
+            if ( "file".equals( url.getProtocol() ) )
+            {
+                try
+                {
+                    final File file = new File( url.toURI() );
+                    if ( isFolder )
+                    {
+                        stamp = stampDirectory( file );
+                        isCacheable = true;
+                    }
+                    else if ( file.isFile() )
+                    {
+                        stamp = file.length() + ":" + Long.toHexString( file.lastModified() );
+                        isCacheable = true;
+                    }
+                }
+                catch ( final Exception e ) // NOPMD
+                {
+                    // not a local file, so don't cache it
+                }
+            }
+        }
+
+        // ----------------------------------------------------------------------
+        // Local methods
+        // ----------------------------------------------------------------------
+
+        boolean contains( final CacheEntry entry )
+        {
+            return entry.prefix.startsWith( prefix );
+        }
+
+        boolean contains( final String spec )
+        {
+            return spec.startsWith( prefix );
+        }
+
+        /**
+         * Loads previous results for this entry, as long as they are still valid.
+         * 
+         * @return {@code true} if the previous results are valid; otherwise {@code false}
+         */
+        boolean load()
+        {
+            if ( !isCacheable )
+            {
+                return false;
+            }
+            final File cacheFile = new File( cacheDir, cacheName( prefix ) );
+            if ( !cacheFile.isFile() )
+            {
+                return false;
+            }
+            try
+            {
+                final BufferedReader reader =
+                    new BufferedReader( new InputStreamReader( new FileInputStream( cacheFile ), UTF_8 ) );
+                try
+                {
+                    if ( prefix.equals( reader.readLine() ) && stamp.equals( reader.readLine() ) )
+                    {
+                        final List<String> cachedNames = new ArrayList<String>();
+                        for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+                        {
+                            cachedNames.add( line );
+                        }
+                        names = cachedNames;
+                    }
+                }
+                finally
+                {
+                    reader.close();
+                }
+            }
+            catch ( final IOException e )
+            {
+                Logs.debug( "Problem reading: {}", cacheFile, e );
+            }
+            return null != names;
+        }
+
+        /**
+         * Adds the given class resource for scanning, unless this entry already has valid results.
+         */
+        void scan( final URL clazzURL, final List<URL> classes )
+        {
+            if ( !isCacheable )
+            {
+                classes.add( clazzURL );
+            }
+            else if ( null == names )
+            {
+                isScanned = true; // results are recorded while the class is visited
+                classes.add( clazzURL );
+            }
+        }
+
+        /**
+         * Adds any previous results for this entry.
+         */
+        void flush( final List<URL> classes )
+        {
+            if ( null != names )
+            {
+                for ( final String name : names )
+                {
+                    try
+                    {
+                        classes.add( new URL( prefix + name ) );
+                    }
+                    catch ( final MalformedURLException e )
+                    {
+                        Logs.debug( "Problem reading: {}", prefix + name, e );
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return {@code true} if class resources from this entry are being scanned; otherwise {@code false}
+         */
+        boolean isScanned()
+        {
+            return isScanned;
+        }
+
+        /**
+         * Saves the results of the latest scan, unless this entry already has valid results.
+         */
+        void save()
+        {
+            if ( null != names )
+            {
+                return;
+            }
+            final File cacheFile = new File( cacheDir, cacheName( prefix ) );
+            try
+            {
+                cacheDir.mkdirs();
+                final File tempFile = File.createTempFile( "sisu", ".tmp", cacheDir );
+                final Writer writer =
+                    new BufferedWriter( new OutputStreamWriter( new FileOutputStream( tempFile ), UTF_8 ) );
+                try
+                {
+                    writer.write( prefix + '\n' + stamp + '\n' );
+                    for ( final String name : scanned )
+                    {
+                        writer.write( name + '\n' );
+                    }
+                }
+                finally
+                {
+                    writer.close();
+                }
+                // replace atomically where possible
+                if ( !tempFile.renameTo( cacheFile ) && ( !cacheFile.delete() || !tempFile.renameTo( cacheFile ) ) )
+                {
+                    tempFile.delete();
+                }
+            }
+            catch ( final IOException e )
+            {
+                Logs.debug( "Problem caching: {}", cacheFile, e );
+            }
+        }
+    }
+
+    /**
+     * Forwards class events to the scanning visitor, while detecting concrete classes with class-level annotations;
+     * these are the only ones bean scanners care about.
+     */
+    static final class CandidateVisitor
+        implements ClassVisitor
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        private final ClassVisitor cv;
+
+        private final CacheEntry entry;
+
+        private final String name;
+
+        private boolean isConcrete;
+
+        private boolean isCandidate;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        CandidateVisitor( final ClassVisitor cv, final CacheEntry entry, final String name )
+        {
+            this.cv = null != cv ? cv : new EmptyClassVisitor();
+            this.entry = entry;
+            this.name = name;
+        }
+
+        // ----------------------------------------------------------------------
+        // Public methods
+        // ----------------------------------------------------------------------
+
+        public void visit( final int version, final int access, final String clazzName, final String signature,
+                           final String superName, final String[] interfaces )
+        {
+            isConcrete = ( access & ( Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT | Opcodes.ACC_SYNTHETIC ) ) == 0;
+            cv.visit( version, access, clazzName, signature, superName, interfaces );
+        }
+
+        public void visitSource( final String source, final String debug )
+        {
+            cv.visitSource( source, debug );
+        }
+
+        public void visitOuterClass( final String owner, final String outerName, final String desc )
+        {
+            cv.visitOuterClass( owner, outerName, desc );
+        }
+
+        public AnnotationVisitor visitAnnotation( final String desc, final boolean visible )
+        {
+            isCandidate |= isConcrete;
+            return cv.visitAnnotation( desc, visible );
+        }
+
+        public void visitAttribute( final Attribute attr )
+        {
+            cv.visitAttribute( attr );
+        }
+
+        public void visitInnerClass( final String innerName, final String outerName, final String simpleName,
+                                     final int access )
+        {
+            cv.visitInnerClass( innerName, outerName, simpleName, access );
+        }
+
+        public FieldVisitor visitField( final int access, final String fieldName, final String desc,
+                                        final String signature, final Object value )
+        {
+            return cv.visitField( access, fieldName, desc, signature, value );
+        }
+
+        public MethodVisitor visitMethod( final int access, final String methodName, final String desc,
+                                          final String signature, final String[] exceptions )
+        {
+            return cv.visitMethod( access, methodName, desc, signature, exceptions );
+        }
+
+        public void visitEnd()
+        {
+            if ( isCandidate )
+            {
+                entry.scanned.add( name );
+            }
+            cv.visitEnd();
+        }
+    }
+}
@@ -11,9 +11,18 @@
  *******************************************************************************/
 package org.sonatype.guice.bean.scanners;
 
-import java.io.InputStream;
 import java.net.URL;
 import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.sonatype.guice.bean.reflect.ClassSpace;
 import org.sonatype.guice.bean.reflect.Logs;
@@ -21,7 +30,9 @@ import org.sonatype.guice.bean.scanners.asm.ClassReader;
 import org.sonatype.guice.bean.scanners.asm.ClassVisitor;
 
 /**
- * ASM-style scanner that makes a {@link ClassSpaceVisitor} visit an existing {@link ClassSpace}.
+ * ASM-style scanner that makes a {@link ClassSpaceVisitor} visit an existing {@link ClassSpace}. Classes can be read
+ * and parsed in parallel, but visitors are always called from the scanning thread in class space order. Each archive
+ * is opened once per scan and its classes are read through it.
  */
 public final class ClassSpaceScanner
 {
@@ -31,6 +42,10 @@ public final class ClassSpaceScanner
 
     private static final int ASM_FLAGS = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
 
+    private static final int SCAN_THREADS = Integer.getInteger( "org.sonatype.inject.scan.threads", 1 ).intValue();
+
+    private static final int READ_AHEAD = 256;
+
     // ----------------------------------------------------------------------
     // Implementation fields
     // ----------------------------------------------------------------------
@@ -39,6 +54,8 @@ public final class ClassSpaceScanner
 
     private final ClassSpace space;
 
+    private final Executor executor;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
@@ -49,9 +66,23 @@ public final class ClassSpaceScanner
     }
 
     public ClassSpaceScanner( final ClassFinder finder, final ClassSpace space )
+    {
+        this( finder, space, null );
+    }
+
+    /**
+     * Creates a scanner that reads classes using the given {@link Executor}; visitors are still called from the
+     * scanning thread, in the same order as a serial scan.
+     * 
+     * @param finder The optional class finder
+     * @param space The class space
+     * @param executor The executor used to read classes; {@code null} means use the default
+     */
+    public ClassSpaceScanner( final ClassFinder finder, final ClassSpace space, final Executor executor )
     {
         this.finder = finder;
         this.space = space;
+        this.executor = executor;
     }
 
     // ----------------------------------------------------------------------
@@ -70,17 +101,45 @@ public final class ClassSpaceScanner
         final Enumeration<URL> result =
             null != finder ? finder.findClasses( space ) : space.findEntries( null, "*.class", true );
 
-        while ( result.hasMoreElements() )
+        // cached results are recorded while visiting, so each class is only parsed once
+        ClassSpaceVisitor classVisitor = visitor;
+        if ( result instanceof CachedClassFinder.ScanResults )
         {
-            final URL url = result.nextElement();
-            final ClassVisitor cv = visitor.visitClass( url );
-            if ( null != cv )
+            classVisitor = ( (CachedClassFinder.ScanResults) result ).record( visitor );
+        }
+
+        final ScanningSession session = new ScanningSession();
+        try
+        {
+            if ( null != executor )
             {
-                accept( cv, url );
+                accept( classVisitor, result, session, executor );
+            }
+            else if ( SCAN_THREADS > 1 )
+            {
+                accept( classVisitor, result, session, SharedExecutor.INSTANCE );
+            }
+            else
+            {
+                while ( result.hasMoreElements() )
+                {
+                    final URL url = result.nextElement();
+                    final ScanningSession.Archive archive = session.archive( url );
+                    session.visiting( archive );
+                    final ClassVisitor cv = classVisitor.visitClass( url );
+                    if ( null != cv )
+                    {
+                        accept( cv, url, archive );
+                    }
+                }
             }
         }
+        finally
+        {
+            session.close();
+        }
 
-        visitor.visitEnd();
+        classVisitor.visitEnd();
     }
 
     /**
@@ -91,22 +150,50 @@ public final class ClassSpaceScanner
      */
     public static void accept( final ClassVisitor visitor, final URL url )
     {
-        if ( null == url )
+        if ( null != url )
         {
-            return; // nothing to visit
+            accept( visitor, url, null );
         }
-        try
+    }
+
+    public static boolean verify( final ClassSpace space, final Class<?>... specification )
+    {
+        for ( final Class<?> expectedClazz : specification )
         {
-            final InputStream in = url.openStream();
             try
             {
-                new ClassReader( in ).accept( visitor, ASM_FLAGS );
+                final Class<?> spaceClazz = space.loadClass( expectedClazz.getName() );
+                if ( spaceClazz != expectedClazz )
+                {
+                    Logs.warn( "Inconsistent ClassLoader for: {} in: {}", expectedClazz, space );
+                    Logs.warn( "Expected: {} saw: {}", expectedClazz.getClassLoader(), spaceClazz.getClassLoader() );
+                }
             }
-            finally
+            catch ( final Throwable e )
             {
-                in.close();
+                Logs.debug( "Potential problem: {} is not visible from: {}", expectedClazz, space );
             }
         }
+        return true;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Makes the given {@link ClassVisitor} visit the class contained in the resource {@link URL}.
+     * 
+     * @param visitor The class visitor
+     * @param url The class resource URL
+     * @param archive The archive containing the class; {@code null} if it should be opened separately
+     */
+    static void accept( final ClassVisitor visitor, final URL url, final ScanningSession.Archive archive )
+    {
+        try
+        {
+            ScanningSession.read( url, archive ).accept( visitor, ASM_FLAGS );
+        }
         catch ( final ArrayIndexOutOfBoundsException e ) // NOPMD
         {
             // ignore broken class constant pool in icu4j
@@ -117,24 +204,133 @@ public final class ClassSpaceScanner
         }
     }
 
-    public static boolean verify( final ClassSpace space, final Class<?>... specification )
+    /**
+     * Reads and parses classes ahead of time using the given {@link Executor}, while visiting them in their original
+     * order; classes that end up rejected by the visitor are cancelled if their task hasn't started yet.
+     * 
+     * @param visitor The class space visitor
+     * @param result The class resource URLs
+     * @param session The scanning session
+     * @param executor The executor
+     */
+    private static void accept( final ClassSpaceVisitor visitor, final Enumeration<URL> result,
+                                final ScanningSession session, final Executor executor )
     {
-        for ( final Class<?> expectedClazz : specification )
+        final LinkedList<ClassReaderTask> window = new LinkedList<ClassReaderTask>();
+        while ( result.hasMoreElements() || !window.isEmpty() )
         {
-            try
+            while ( window.size() < READ_AHEAD && result.hasMoreElements() )
             {
-                final Class<?> spaceClazz = space.loadClass( expectedClazz.getName() );
-                if ( spaceClazz != expectedClazz )
+                final URL url = result.nextElement();
+                final ClassReaderTask task = new ClassReaderTask( url, session.archive( url ) );
+                try
                 {
-                    Logs.warn( "Inconsistent ClassLoader for: {} in: {}", expectedClazz, space );
-                    Logs.warn( "Expected: {} saw: {}", expectedClazz.getClassLoader(), spaceClazz.getClassLoader() );
+                    executor.execute( task );
+                }
+                catch ( final RejectedExecutionException e )
+                {
+                    task.run(); // read it ourselves
+                }
+                window.add( task );
+            }
+
+            final ClassReaderTask task = window.removeFirst();
+            session.visiting( task.archive );
+            final ClassVisitor cv = visitor.visitClass( task.url );
+            if ( null != cv )
+            {
+                task.accept( cv );
+            }
+            else
+            {
+                task.cancel( false );
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Reads and parses a class resource, recording the events so they can be replayed on the scanning thread.
+     */
+    private static final class ClassReaderTask
+        extends FutureTask<RecordingClassVisitor>
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        final URL url;
+
+        final ScanningSession.Archive archive;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        ClassReaderTask( final URL url, final ScanningSession.Archive archive )
+        {
+            super( new Callable<RecordingClassVisitor>()
+            {
+                public RecordingClassVisitor call()
+                {
+                    final RecordingClassVisitor recording = new RecordingClassVisitor();
+                    ClassSpaceScanner.accept( recording, url, archive );
+                    return recording;
                 }
+            } );
+            this.url = url;
+            this.archive = archive;
+        }
+
+        // ----------------------------------------------------------------------
+        // Local methods
+        // ----------------------------------------------------------------------
+
+        /**
+         * Makes the given {@link ClassVisitor} visit the class, waiting for it to be parsed if necessary.
+         * 
+         * @param visitor The class visitor
+         */
+        void accept( final ClassVisitor visitor )
+        {
+            try
+            {
+                get().replay( visitor );
+            }
+            catch ( final InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                Logs.debug( "Problem scanning: {}", url, e );
+            }
+            catch ( final ExecutionException e )
+            {
+                Logs.debug( "Problem scanning: {}", url, e.getCause() );
             }
             catch ( final Throwable e )
             {
-                Logs.debug( "Potential problem: {} is not visible from: {}", expectedClazz, space );
+                Logs.debug( "Problem scanning: {}", url, e );
             }
         }
-        return true;
+    }
+
+    /**
+     * Scanning threads shared by every scan; idle threads expire, so nothing lingers between scans.
+     */
+    private static final class SharedExecutor
+        implements ThreadFactory
+    {
+        static final Executor INSTANCE = new ThreadPoolExecutor( 0, SCAN_THREADS, 30, TimeUnit.SECONDS,
+                                                                 new SynchronousQueue<Runnable>(),
+                                                                 new SharedExecutor() );
+
+        public Thread newThread( final Runnable task )
+        {
+            final Thread thread = new Thread( task, "Sisu-Scanner" );
+            thread.setDaemon( true );
+            return thread;
+        }
     }
 }
@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.scanners;
+
+import org.sonatype.guice.bean.reflect.ClassSpace;
+import org.sonatype.guice.bean.scanners.index.IndexedType;
+
+/**
+ * {@link QualifiedTypeListener} that can also bind qualified types directly from their binary index metadata.
+ */
+public interface IndexedTypeListener
+    extends QualifiedTypeListener
+{
+    /**
+     * Invoked when the {@link QualifiedTypeVisitor} finds a qualified type in the binary index.
+     * 
+     * @param indexedType The indexed type
+     * @param space The class space
+     * @param source The source of this type
+     */
+    void hear( IndexedType indexedType, ClassSpace space, Object source );
+}
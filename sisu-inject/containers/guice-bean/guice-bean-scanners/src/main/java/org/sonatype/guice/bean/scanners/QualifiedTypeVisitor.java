@@ -23,6 +23,7 @@ import org.sonatype.guice.bean.reflect.Logs;
 import org.sonatype.guice.bean.scanners.asm.AnnotationVisitor;
 import org.sonatype.guice.bean.scanners.asm.ClassVisitor;
 import org.sonatype.guice.bean.scanners.asm.Opcodes;
+import org.sonatype.guice.bean.scanners.index.IndexedType;
 
 import com.google.inject.Module;
 
@@ -83,6 +84,31 @@ public final class QualifiedTypeVisitor
         return this;
     }
 
+    /**
+     * Reports a qualified type listed in the binary index, without parsing its class resource.
+     * 
+     * @param indexedType The indexed type
+     * @param indexSource The source of the index
+     */
+    public void visitIndexedType( final IndexedType indexedType, final Object indexSource )
+    {
+        if ( listener instanceof IndexedTypeListener )
+        {
+            ( (IndexedTypeListener) listener ).hear( indexedType, space, indexSource );
+        }
+        else
+        {
+            final Class<?> clazz = space.loadClass( indexedType.getName() );
+            for ( final Annotation qualifier : clazz.getDeclaredAnnotations() )
+            {
+                if ( qualifier.annotationType().isAnnotationPresent( Qualifier.class ) )
+                {
+                    listener.hear( qualifier, clazz, indexSource );
+                }
+            }
+        }
+    }
+
     @Override
     public void visit( final int version, final int access, final String name, final String signature,
                        final String superName, final String[] interfaces )
@@ -0,0 +1,409 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.scanners;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sonatype.guice.bean.scanners.asm.AnnotationVisitor;
+import org.sonatype.guice.bean.scanners.asm.Attribute;
+import org.sonatype.guice.bean.scanners.asm.ClassVisitor;
+import org.sonatype.guice.bean.scanners.asm.FieldVisitor;
+import org.sonatype.guice.bean.scanners.asm.Label;
+import org.sonatype.guice.bean.scanners.asm.MethodVisitor;
+
+/**
+ * Records the class, field, method, and annotation events of a class parsed without code, so they can be replayed
+ * later to another visitor on a different thread.
+ */
+final class RecordingClassVisitor
+    implements ClassVisitor, FieldVisitor, MethodVisitor, AnnotationVisitor
+{
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    private static final int CLASS = 0;
+
+    private static final int FIELD = 1;
+
+    private static final int METHOD = 2;
+
+    private static final int ANNOTATION = 3;
+
+    private static final int VISIT = 0;
+
+    private static final int SOURCE = 1;
+
+    private static final int OUTER_CLASS = 2;
+
+    private static final int VISIT_ANNOTATION = 3;
+
+    private static final int VISIT_ATTRIBUTE = 4;
+
+    private static final int INNER_CLASS = 5;
+
+    private static final int VISIT_FIELD = 6;
+
+    private static final int VISIT_METHOD = 7;
+
+    private static final int ANNOTATION_DEFAULT = 8;
+
+    private static final int PARAMETER_ANNOTATION = 9;
+
+    private static final int VALUE = 10;
+
+    private static final int ENUM = 11;
+
+    private static final int ARRAY = 12;
+
+    private static final int END = 13;
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private final int kind;
+
+    private final List<Object[]> events = new ArrayList<Object[]>();
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    RecordingClassVisitor()
+    {
+        this( CLASS );
+    }
+
+    private RecordingClassVisitor( final int kind )
+    {
+        this.kind = kind;
+    }
+
+    // ----------------------------------------------------------------------
+    // Public methods
+    // ----------------------------------------------------------------------
+
+    public void visit( final int version, final int access, final String name, final String signature,
+                       final String superName, final String[] interfaces )
+    {
+        record( VISIT, null, Integer.valueOf( version ), Integer.valueOf( access ), name, signature, superName,
+                interfaces );
+    }
+
+    public void visitSource( final String source, final String debug )
+    {
+        record( SOURCE, null, source, debug );
+    }
+
+    public void visitOuterClass( final String owner, final String name, final String desc )
+    {
+        record( OUTER_CLASS, null, owner, name, desc );
+    }
+
+    public AnnotationVisitor visitAnnotation( final String desc, final boolean visible )
+    {
+        return record( VISIT_ANNOTATION, new RecordingClassVisitor( ANNOTATION ), desc, Boolean.valueOf( visible ) );
+    }
+
+    public void visitAttribute( final Attribute attr )
+    {
+        record( VISIT_ATTRIBUTE, null, attr );
+    }
+
+    public void visitInnerClass( final String name, final String outerName, final String innerName, final int access )
+    {
+        record( INNER_CLASS, null, name, outerName, innerName, Integer.valueOf( access ) );
+    }
+
+    public FieldVisitor visitField( final int access, final String name, final String desc, final String signature,
+                                    final Object value )
+    {
+        return record( VISIT_FIELD, new RecordingClassVisitor( FIELD ), Integer.valueOf( access ), name, desc,
+                       signature, value );
+    }
+
+    public MethodVisitor visitMethod( final int access, final String name, final String desc, final String signature,
+                                      final String[] exceptions )
+    {
+        return record( VISIT_METHOD, new RecordingClassVisitor( METHOD ), Integer.valueOf( access ), name, desc,
+                       signature, exceptions );
+    }
+
+    public AnnotationVisitor visitAnnotationDefault()
+    {
+        return record( ANNOTATION_DEFAULT, new RecordingClassVisitor( ANNOTATION ) );
+    }
+
+    public AnnotationVisitor visitParameterAnnotation( final int parameter, final String desc, final boolean visible )
+    {
+        return record( PARAMETER_ANNOTATION, new RecordingClassVisitor( ANNOTATION ), Integer.valueOf( parameter ),
+                       desc, Boolean.valueOf( visible ) );
+    }
+
+    public void visit( final String name, final Object value )
+    {
+        record( VALUE, null, name, value );
+    }
+
+    public void visitEnum( final String name, final String desc, final String value )
+    {
+        record( ENUM, null, name, desc, value );
+    }
+
+    public AnnotationVisitor visitAnnotation( final String name, final String desc )
+    {
+        return record( VISIT_ANNOTATION, new RecordingClassVisitor( ANNOTATION ), name, desc );
+    }
+
+    public AnnotationVisitor visitArray( final String name )
+    {
+        return record( ARRAY, new RecordingClassVisitor( ANNOTATION ), name );
+    }
+
+    public void visitEnd()
+    {
+        record( END, null );
+    }
+
+    // method code is skipped when scanning, so there's nothing to record
+
+    public void visitCode()
+    {
+    }
+
+    public void visitFrame( final int type, final int nLocal, final Object[] local, final int nStack,
+                            final Object[] stack )
+    {
+    }
+
+    public void visitInsn( final int opcode )
+    {
+    }
+
+    public void visitIntInsn( final int opcode, final int operand )
+    {
+    }
+
+    public void visitVarInsn( final int opcode, final int var )
+    {
+    }
+
+    public void visitTypeInsn( final int opcode, final String type )
+    {
+    }
+
+    public void visitFieldInsn( final int opcode, final String owner, final String name, final String desc )
+    {
+    }
+
+    public void visitMethodInsn( final int opcode, final String owner, final String name, final String desc )
+    {
+    }
+
+    public void visitJumpInsn( final int opcode, final Label label )
+    {
+    }
+
+    public void visitLabel( final Label label )
+    {
+    }
+
+    public void visitLdcInsn( final Object cst )
+    {
+    }
+
+    public void visitIincInsn( final int var, final int increment )
+    {
+    }
+
+    public void visitTableSwitchInsn( final int min, final int max, final Label dflt, final Label[] labels )
+    {
+    }
+
+    public void visitLookupSwitchInsn( final Label dflt, final int[] keys, final Label[] labels )
+    {
+    }
+
+    public void visitMultiANewArrayInsn( final String desc, final int dims )
+    {
+    }
+
+    public void visitTryCatchBlock( final Label start, final Label end, final Label handler, final String type )
+    {
+    }
+
+    public void visitLocalVariable( final String name, final String desc, final String signature, final Label start,
+                                    final Label end, final int index )
+    {
+    }
+
+    public void visitLineNumber( final int line, final Label start )
+    {
+    }
+
+    public void visitMaxs( final int maxStack, final int maxLocals )
+    {
+    }
+
+    // ----------------------------------------------------------------------
+    // Local methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Replays the recorded class events to the given {@link ClassVisitor}.
+     * 
+     * @param visitor The class visitor
+     */
+    void replay( final ClassVisitor visitor )
+    {
+        replayTo( visitor );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    private RecordingClassVisitor record( final int event, final RecordingClassVisitor nested, final Object... args )
+    {
+        final Object[] entry = new Object[args.length + 2];
+        entry[0] = Integer.valueOf( event );
+        entry[1] = nested;
+        System.arraycopy( args, 0, entry, 2, args.length );
+        events.add( entry );
+        return nested;
+    }
+
+    /**
+     * Replays the recorded events to the given visitor, which matches the kind of events recorded.
+     * 
+     * @param visitor The class, field, method, or annotation visitor
+     */
+    private void replayTo( final Object visitor )
+    {
+        for ( final Object[] e : events )
+        {
+            final Object nestedVisitor = replayEvent( visitor, ( (Integer) e[0] ).intValue(), e );
+            if ( null != nestedVisitor )
+            {
+                ( (RecordingClassVisitor) e[1] ).replayTo( nestedVisitor );
+            }
+        }
+    }
+
+    /**
+     * Replays a single recorded event to the given visitor.
+     * 
+     * @return Visitor for any nested events; {@code null} if there are none or they're not wanted
+     */
+    private Object replayEvent( final Object visitor, final int event, final Object[] e )
+    {
+        switch ( event )
+        {
+            case VISIT:
+                ( (ClassVisitor) visitor ).visit( intArg( e[2] ), intArg( e[3] ), (String) e[4], (String) e[5],
+                                                  (String) e[6], (String[]) e[7] );
+                return null;
+            case SOURCE:
+                ( (ClassVisitor) visitor ).visitSource( (String) e[2], (String) e[3] );
+                return null;
+            case OUTER_CLASS:
+                ( (ClassVisitor) visitor ).visitOuterClass( (String) e[2], (String) e[3], (String) e[4] );
+                return null;
+            case VISIT_ANNOTATION:
+                return replayAnnotation( visitor, e );
+            case VISIT_ATTRIBUTE:
+                if ( CLASS == kind )
+                {
+                    ( (ClassVisitor) visitor ).visitAttribute( (Attribute) e[2] );
+                }
+                else if ( FIELD == kind )
+                {
+                    ( (FieldVisitor) visitor ).visitAttribute( (Attribute) e[2] );
+                }
+                else
+                {
+                    ( (MethodVisitor) visitor ).visitAttribute( (Attribute) e[2] );
+                }
+                return null;
+            case INNER_CLASS:
+                ( (ClassVisitor) visitor ).visitInnerClass( (String) e[2], (String) e[3], (String) e[4],
+                                                            intArg( e[5] ) );
+                return null;
+            case VISIT_FIELD:
+                return ( (ClassVisitor) visitor ).visitField( intArg( e[2] ), (String) e[3], (String) e[4],
+                                                              (String) e[5], e[6] );
+            case VISIT_METHOD:
+                return ( (ClassVisitor) visitor ).visitMethod( intArg( e[2] ), (String) e[3], (String) e[4],
+                                                               (String) e[5], (String[]) e[6] );
+            case ANNOTATION_DEFAULT:
+                return ( (MethodVisitor) visitor ).visitAnnotationDefault();
+            case PARAMETER_ANNOTATION:
+                return ( (MethodVisitor) visitor ).visitParameterAnnotation( intArg( e[2] ), (String) e[3],
+                                                                             ( (Boolean) e[4] ).booleanValue() );
+            case VALUE:
+                ( (AnnotationVisitor) visitor ).visit( (String) e[2], e[3] );
+                return null;
+            case ENUM:
+                ( (AnnotationVisitor) visitor ).visitEnum( (String) e[2], (String) e[3], (String) e[4] );
+                return null;
+            case ARRAY:
+                return ( (AnnotationVisitor) visitor ).visitArray( (String) e[2] );
+            default:
+                replayEnd( visitor );
+                return null;
+        }
+    }
+
+    private Object replayAnnotation( final Object visitor, final Object[] e )
+    {
+        if ( ANNOTATION == kind )
+        {
+            return ( (AnnotationVisitor) visitor ).visitAnnotation( (String) e[2], (String) e[3] );
+        }
+        final boolean visible = ( (Boolean) e[3] ).booleanValue();
+        if ( CLASS == kind )
+        {
+            return ( (ClassVisitor) visitor ).visitAnnotation( (String) e[2], visible );
+        }
+        if ( FIELD == kind )
+        {
+            return ( (FieldVisitor) visitor ).visitAnnotation( (String) e[2], visible );
+        }
+        return ( (MethodVisitor) visitor ).visitAnnotation( (String) e[2], visible );
+    }
+
+    private void replayEnd( final Object visitor )
+    {
+        switch ( kind )
+        {
+            case CLASS:
+                ( (ClassVisitor) visitor ).visitEnd();
+                break;
+            case FIELD:
+                ( (FieldVisitor) visitor ).visitEnd();
+                break;
+            case METHOD:
+                ( (MethodVisitor) visitor ).visitEnd();
+                break;
+            default:
+                ( (AnnotationVisitor) visitor ).visitEnd();
+                break;
+        }
+    }
+
+    private static int intArg( final Object arg )
+    {
+        return ( (Integer) arg ).intValue();
+    }
+}
@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright (c) 2010-2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.scanners;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.LinkedList;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.sonatype.guice.bean.reflect.Streams;
+import org.sonatype.guice.bean.scanners.asm.ClassReader;
+
+/**
+ * Reads class resources for a single scan, opening each archive once rather than once per class.
+ */
+final class ScanningSession
+{
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>()
+    {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[8192];
+        }
+    };
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private final LinkedList<Archive> archives = new LinkedList<Archive>();
+
+    // ----------------------------------------------------------------------
+    // Local methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Returns the archive containing the given class resource; consecutive resources from the same archive share it.
+     * 
+     * @param url The class resource URL
+     * @return Containing archive; {@code null} if the resource isn't inside an archive
+     */
+    Archive archive( final URL url )
+    {
+        if ( !"jar".equals( url.getProtocol() ) )
+        {
+            return null;
+        }
+        final String file = url.getFile();
+        final String key;
+        if ( null != url.getRef() )
+        {
+            key = "jar:" + file; // nested archive, see ResourceEnumeration
+        }
+        else
+        {
+            final int i = file.indexOf( "!/" );
+            if ( i < 0 )
+            {
+                return null;
+            }
+            key = file.substring( 0, i );
+        }
+        if ( !archives.isEmpty() && key.equals( archives.getLast().key ) )
+        {
+            return archives.getLast();
+        }
+        final Archive archive = new Archive( key );
+        archives.add( archive );
+        return archive;
+    }
+
+    /**
+     * Notes that the scan has moved on to a resource in the given archive; any earlier archives are closed.
+     * 
+     * @param archive The current archive
+     */
+    void visiting( final Archive archive )
+    {
+        if ( null != archive )
+        {
+            while ( archives.getFirst() != archive )
+            {
+                archives.removeFirst().close();
+            }
+        }
+    }
+
+    /**
+     * Closes all archives opened during this session.
+     */
+    void close()
+    {
+        while ( !archives.isEmpty() )
+        {
+            archives.removeFirst().close();
+        }
+    }
+
+    /**
+     * Reads the class resource, using the containing archive when there is one.
+     * 
+     * @param url The class resource URL
+     * @param archive The containing archive
+     * @return Class reader
+     */
+    static ClassReader read( final URL url, final Archive archive )
+        throws IOException
+    {
+        if ( null != archive )
+        {
+            final ClassReader reader = archive.read( url );
+            if ( null != reader )
+            {
+                return reader;
+            }
+        }
+        final InputStream in = url.openStream();
+        try
+        {
+            return read( in, -1 );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Reads the rest of the given stream into a {@link ClassReader}; the per-thread buffer is only used as scratch
+     * space when the size is unknown, because visitors may scan other classes while the reader is still in use.
+     */
+    private static ClassReader read( final InputStream in, final int size )
+        throws IOException
+    {
+        if ( size >= 0 )
+        {
+            final byte[] b = new byte[size];
+            for ( int len = 0, n; len < size; len += n )
+            {
+                if ( ( n = in.read( b, len, size - len ) ) < 0 )
+                {
+                    throw new EOFException();
+                }
+            }
+            return new ClassReader( b );
+        }
+        byte[] buf = BUFFERS.get();
+        int len = 0;
+        for ( int n; ( n = in.read( buf, len, buf.length - len ) ) >= 0; )
+        {
+            if ( ( len += n ) == buf.length )
+            {
+                final byte[] newBuf = new byte[len * 2];
+                System.arraycopy( buf, 0, newBuf, 0, len );
+                BUFFERS.set( buf = newBuf );
+            }
+        }
+        final byte[] b = new byte[len];
+        System.arraycopy( buf, 0, b, 0, len );
+        return new ClassReader( b );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * Archive that stays open while its classes are scanned; local JARs use {@link ZipFile}, anything else is
+     * streamed in entry order.
+     */
+    static final class Archive
+    {
+        // ----------------------------------------------------------------------
+        // Implementation fields
+        // ----------------------------------------------------------------------
+
+        final String key;
+
+        private ZipFile zipFile;
+
+        private ZipInputStream zipStream;
+
+        private boolean closed;
+
+        // ----------------------------------------------------------------------
+        // Constructors
+        // ----------------------------------------------------------------------
+
+        Archive( final String key )
+        {
+            this.key = key;
+        }
+
+        // ----------------------------------------------------------------------
+        // Local methods
+        // ----------------------------------------------------------------------
+
+        /**
+         * Reads the class resource from this archive.
+         * 
+         * @return Class reader; {@code null} if the resource couldn't be found in this archive
+         */
+        ClassReader read( final URL url )
+            throws IOException
+        {
+            if ( key.startsWith( "file:" ) )
+            {
+                final ZipFile zip = openZipFile();
+                if ( null != zip )
+                {
+                    final String file = url.getFile();
+                    final ZipEntry entry = zip.getEntry( file.substring( file.indexOf( "!/" ) + 2 ) );
+                    if ( null != entry )
+                    {
+                        final InputStream in = zip.getInputStream( entry );
+                        try
+                        {
+                            return ScanningSession.read( in, (int) entry.getSize() );
+                        }
+                        finally
+                        {
+                            in.close();
+                        }
+                    }
+                }
+                return null;
+            }
+            if ( null != url.getRef() )
+            {
+                return stream( new URL( "jar", null, -1, url.getFile() ), url.getRef() );
+            }
+            final String file = url.getFile();
+            return stream( new URL( key ), file.substring( file.indexOf( "!/" ) + 2 ) );
+        }
+
+        synchronized void close()
+        {
+            closed = true;
+            try
+            {
+                if ( null != zipFile )
+                {
+                    zipFile.close();
+                }
+                if ( null != zipStream )
+                {
+                    zipStream.close();
+                }
+            }
+            catch ( final IOException e ) // NOPMD
+            {
+                // ignore
+            }
+            zipFile = null;
+            zipStream = null;
+        }
+
+        // ----------------------------------------------------------------------
+        // Implementation methods
+        // ----------------------------------------------------------------------
+
+        private synchronized ZipFile openZipFile()
+        {
+            if ( null == zipFile && !closed )
+            {
+                try
+                {
+                    zipFile = new ZipFile( new File( new URL( key ).toURI() ) );
+                }
+                catch ( final Exception e )
+                {
+                    closed = true; // fall back to per-class URLs
+                }
+            }
+            return zipFile;
+        }
+
+        /**
+         * Streams forwards to the named entry, starting again from the top if it's not found before the end.
+         */
+        private synchronized ClassReader stream( final URL archiveURL, final String name )
+            throws IOException
+        {
+            for ( int pass = 0; pass < 2 && !closed; pass++ )
+            {
+                if ( null == zipStream )
+                {
+                    zipStream = new ZipInputStream( Streams.open( archiveURL ) );
+                }
+                for ( ZipEntry entry = zipStream.getNextEntry(); entry != null; entry = zipStream.getNextEntry() )
+                {
+                    if ( name.equals( entry.getName() ) )
+                    {
+                        return ScanningSession.read( zipStream, (int) entry.getSize() );
+                    }
+                }
+                zipStream.close();
+                zipStream = null;
+            }
+            return null;
+        }
+    }
+}
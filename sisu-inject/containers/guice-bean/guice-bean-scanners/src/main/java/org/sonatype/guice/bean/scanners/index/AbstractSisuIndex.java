@@ -14,9 +14,12 @@ package org.sonatype.guice.bean.scanners.index;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -33,6 +36,8 @@ public abstract class AbstractSisuIndex
 
     private final Map<Object, Set<String>> index = new HashMap<Object, Set<String>>();
 
+    private Map<String, IndexedType> indexedTypes;
+
     // ----------------------------------------------------------------------
     // Common methods
     // ----------------------------------------------------------------------
@@ -54,6 +59,20 @@ public abstract class AbstractSisuIndex
         table.add( String.valueOf( clazz ) );
     }
 
+    /**
+     * Adds binding metadata for an annotated class to the binary index.
+     * 
+     * @param type The indexed type
+     */
+    protected synchronized final void addTypeToIndex( final IndexedType type )
+    {
+        if ( null == indexedTypes )
+        {
+            indexedTypes = readIndexedTypes();
+        }
+        indexedTypes.put( type.getName(), type );
+    }
+
     /**
      * Writes the current index as a series of tables.
      */
@@ -63,6 +82,10 @@ public abstract class AbstractSisuIndex
         {
             writeTable( entry.getKey(), entry.getValue() );
         }
+        if ( null != indexedTypes )
+        {
+            writeIndexedTypes( indexedTypes );
+        }
     }
 
     // ----------------------------------------------------------------------
@@ -101,6 +124,30 @@ public abstract class AbstractSisuIndex
     protected abstract Writer getWriter( final String path )
         throws IOException;
 
+    /**
+     * Creates a new binary input stream for the given input path.
+     * 
+     * @param path The input path
+     * @return The relevant input stream; {@code null} if binary indexes are not supported
+     */
+    protected InputStream getInputStream( final String path )
+        throws IOException
+    {
+        return null;
+    }
+
+    /**
+     * Creates a new binary output stream for the given output path.
+     * 
+     * @param path The output path
+     * @return The relevant output stream; {@code null} if binary indexes are not supported
+     */
+    protected OutputStream getOutputStream( final String path )
+        throws IOException
+    {
+        return null;
+    }
+
     // ----------------------------------------------------------------------
     // Implementation methods
     // ----------------------------------------------------------------------
@@ -165,4 +212,65 @@ public abstract class AbstractSisuIndex
             warn( e.toString() );
         }
     }
+
+    /**
+     * Reads the binary index from disk to memory.
+     * 
+     * @return Indexed types
+     */
+    private final Map<String, IndexedType> readIndexedTypes()
+    {
+        final Map<String, IndexedType> types = new LinkedHashMap<String, IndexedType>();
+        try
+        {
+            final InputStream in = getInputStream( "META-INF/sisu/" + SisuIndex.BINARY );
+            if ( null != in )
+            {
+                try
+                {
+                    for ( final IndexedType type : IndexedType.read( in ) )
+                    {
+                        types.put( type.getName(), type );
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+        }
+        catch ( final Throwable e ) // NOPMD
+        {
+            // ignore missing or outdated files
+        }
+        return types;
+    }
+
+    /**
+     * Writes the binary index from memory to disk.
+     * 
+     * @param types The indexed types
+     */
+    private final void writeIndexedTypes( final Map<String, IndexedType> types )
+    {
+        try
+        {
+            final OutputStream out = getOutputStream( "META-INF/sisu/" + SisuIndex.BINARY );
+            if ( null != out )
+            {
+                try
+                {
+                    IndexedType.write( out, types.values() );
+                }
+                finally
+                {
+                    out.close();
+                }
+            }
+        }
+        catch ( final Throwable e )
+        {
+            warn( e.toString() );
+        }
+    }
 }
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.scanners.index;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Generates source for a Guice module containing the same bindings the qualified type binder would have made; the
+ * module lists the types it binds in {@value SisuIndex#BOUND_TYPES}, so they can be skipped at runtime.
+ */
+final class GeneratedModule
+{
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    static final String SUFFIX = "_SisuModule";
+
+    private static final String KEY = "com.google.inject.Key";
+
+    private static final String WILDCARD_KEY = "org.sonatype.guice.bean.locators.WildcardKey";
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private final Map<String, String> bindings = new LinkedHashMap<String, String>();
+
+    private final String packageName;
+
+    private final String simpleName;
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    /**
+     * @param packageName The package name; empty for the default package
+     * @param topLevelName The simple name of the top-level type whose classes are being bound
+     */
+    GeneratedModule( final String packageName, final String topLevelName )
+    {
+        this.packageName = packageName;
+        simpleName = topLevelName + SUFFIX;
+    }
+
+    // ----------------------------------------------------------------------
+    // Local methods
+    // ----------------------------------------------------------------------
+
+    String getName()
+    {
+        return packageName.length() > 0 ? packageName + '.' + simpleName : simpleName;
+    }
+
+    /**
+     * Adds bindings for the given indexed type; all names must be canonical and visible from the generated module.
+     * 
+     * @param type The indexed type
+     * @param clazz The canonical type name
+     * @param bindingTypes The canonical binding type names; {@code null} if not restricted
+     * @param typeArguments The canonical type argument names
+     */
+    void add( final IndexedType type, final String clazz, final String[] bindingTypes, final String[] typeArguments )
+    {
+        final StringBuilder buf = new StringBuilder();
+        final String qualifier = qualifier( type.getBindingName() );
+        switch ( type.getKind() )
+        {
+            case BEAN:
+                buf.append( "        bind( " ).append( clazz ).append( ".class )" );
+                buf.append( type.isEagerSingleton() ? ".asEagerSingleton();\n" : ";\n" );
+                if ( null != bindingTypes )
+                {
+                    for ( final String t : bindingTypes )
+                    {
+                        buf.append( "        bind( (" + KEY + ") " + key( t, qualifier ) + " ).to( (Class) " );
+                        buf.append( clazz ).append( ".class );\n" );
+                    }
+                }
+                else
+                {
+                    buf.append( "        bind( new " + WILDCARD_KEY + "( " ).append( clazz ).append( ".class, " );
+                    buf.append( qualifier ).append( " ) ).to( (Class) " ).append( clazz ).append( ".class );\n" );
+                }
+                break;
+            case PROVIDER:
+                final String key = key( typeArguments[0], qualifier );
+                buf.append( "        bind( (" + KEY + ") " + key + " ).toProvider( (Class) " + clazz + ".class )" );
+                if ( type.isEagerSingleton() )
+                {
+                    buf.append( ".asEagerSingleton()" );
+                }
+                else if ( type.isSingleton() )
+                {
+                    buf.append( ".in( com.google.inject.Scopes.SINGLETON )" );
+                }
+                buf.append( ";\n" );
+                if ( null != bindingTypes )
+                {
+                    for ( final String t : bindingTypes )
+                    {
+                        buf.append( "        bind( (" + KEY + ") " + key + ".ofType( " + t + ".class ) ).to( (" + KEY );
+                        buf.append( ") " ).append( key ).append( " );\n" );
+                    }
+                }
+                break;
+            case MODULE:
+                buf.append( "        install( new " ).append( clazz ).append( "() );\n" );
+                break;
+            default:
+                throw new IllegalArgumentException( "Cannot generate bindings for: " + type );
+        }
+        bindings.put( type.getName(), buf.toString() );
+    }
+
+    /**
+     * Writes the generated module source.
+     * 
+     * @param writer The source writer
+     */
+    void write( final Writer writer )
+        throws IOException
+    {
+        if ( packageName.length() > 0 )
+        {
+            writer.write( "package " + packageName + ";\n\n" );
+        }
+        writer.write( "/**\n * Generated by " + SisuIndexAPT6.class.getName() + "; do not edit.\n */\n" );
+        writer.write( "public final class " + simpleName + "\n    extends com.google.inject.AbstractModule\n{\n" );
+        writer.write( "    public static final String[] " + SisuIndex.BOUND_TYPES + " = {\n" );
+        for ( final String name : bindings.keySet() )
+        {
+            writer.write( "        \"" + name + "\",\n" );
+        }
+        writer.write( "    };\n\n" );
+        writer.write( "    @Override\n    @SuppressWarnings( { \"unchecked\", \"rawtypes\" } )\n" );
+        writer.write( "    protected void configure()\n    {\n" );
+        for ( final String binding : bindings.values() )
+        {
+            writer.write( binding );
+        }
+        writer.write( "    }\n}\n" );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    private static String qualifier( final String bindingName )
+    {
+        if ( null == bindingName )
+        {
+            return "null";
+        }
+        final StringBuilder buf = new StringBuilder( "com.google.inject.name.Names.named( \"" );
+        for ( int i = 0; i < bindingName.length(); i++ )
+        {
+            final char c = bindingName.charAt( i );
+            if ( c == '"' || c == '\\' )
+            {
+                buf.append( '\\' ).append( c );
+            }
+            else if ( c < 0x20 )
+            {
+                buf.append( String.format( "\\%03o", Integer.valueOf( c ) ) ); // unicode escapes would break lines
+            }
+            else if ( c > 0x7E )
+            {
+                buf.append( String.format( "\\u%04x", Integer.valueOf( c ) ) );
+            }
+            else
+            {
+                buf.append( c );
+            }
+        }
+        return buf.append( "\" )" ).toString();
+    }
+
+    private static String key( final String type, final String qualifier )
+    {
+        if ( "null".equals( qualifier ) )
+        {
+            return KEY + ".get( " + type + ".class )";
+        }
+        return KEY + ".get( " + type + ".class, " + qualifier + " )";
+    }
+}
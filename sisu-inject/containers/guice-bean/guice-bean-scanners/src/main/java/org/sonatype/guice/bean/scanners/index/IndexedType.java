@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution.
+ * The Eclipse Public License is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ * The Apache License v2.0 is available at
+ *   http://www.apache.org/licenses/LICENSE-2.0.html
+ * You may elect to redistribute this code under either of these licenses.
+ *******************************************************************************/
+package org.sonatype.guice.bean.scanners.index;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Binding metadata for a qualified type, as recorded in the binary index.
+ */
+public final class IndexedType
+{
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    static final String MODULE = "com.google.inject.Module";
+
+    static final String MEDIATOR = "org.sonatype.inject.Mediator";
+
+    static final String BATCH_MEDIATOR = "org.sonatype.inject.BatchMediator";
+
+    static final String PROVIDER = "javax.inject.Provider";
+
+    static final String TYPED = "javax.enterprise.inject.Typed";
+
+    static final String EAGER_SINGLETON = "org.sonatype.inject.EagerSingleton";
+
+    static final String[] NO_NAMES = {};
+
+    private static final int MAGIC = 0x53495355; // "SISU"
+
+    private static final int VERSION = 1;
+
+    private static final int EAGER_FLAG = 0x01;
+
+    private static final int SINGLETON_FLAG = 0x02;
+
+    // ----------------------------------------------------------------------
+    // Implementation types
+    // ----------------------------------------------------------------------
+
+    /**
+     * How the qualified type should be bound; {@link #UNRESOLVED} types must be bound using reflection.
+     */
+    public enum Kind
+    {
+        BEAN, PROVIDER, MODULE, MEDIATOR, UNRESOLVED
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation fields
+    // ----------------------------------------------------------------------
+
+    private final String name;
+
+    private final Kind kind;
+
+    private final int flags;
+
+    private final String bindingName;
+
+    private final String[] bindingTypes;
+
+    private final String[] typeArguments;
+
+    // ----------------------------------------------------------------------
+    // Constructors
+    // ----------------------------------------------------------------------
+
+    /**
+     * @param name The qualified type name
+     * @param kind The kind of binding
+     * @param eager {@code true} if the type is an eager singleton; otherwise {@code false}
+     * @param singleton {@code true} if the type is a singleton; otherwise {@code false}
+     * @param bindingName The binding name; {@code null} for the default binding
+     * @param bindingTypes The {@code @Typed} binding types; {@code null} if the type is not restricted
+     * @param typeArguments The raw type arguments of the provider or mediator API
+     */
+    public IndexedType( final String name, final Kind kind, final boolean eager, final boolean singleton,
+                        final String bindingName, final String[] bindingTypes, final String[] typeArguments )
+    {
+        this.name = name;
+        this.kind = kind;
+        flags = ( eager ? EAGER_FLAG : 0 ) | ( singleton ? SINGLETON_FLAG : 0 );
+        this.bindingName = bindingName;
+        this.bindingTypes = bindingTypes;
+        this.typeArguments = null != typeArguments ? typeArguments : NO_NAMES;
+    }
+
+    // ----------------------------------------------------------------------
+    // Public methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Records a qualified type that must be bound using reflection.
+     * 
+     * @param name The qualified type name
+     * @return Unresolved type
+     */
+    public static IndexedType unresolved( final String name )
+    {
+        return new IndexedType( name, Kind.UNRESOLVED, false, false, null, null, null );
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public Kind getKind()
+    {
+        return kind;
+    }
+
+    public boolean isEagerSingleton()
+    {
+        return ( flags & EAGER_FLAG ) != 0;
+    }
+
+    public boolean isSingleton()
+    {
+        return ( flags & SINGLETON_FLAG ) != 0;
+    }
+
+    public String getBindingName()
+    {
+        return bindingName;
+    }
+
+    public String[] getBindingTypes()
+    {
+        return null != bindingTypes ? bindingTypes.clone() : null;
+    }
+
+    public String[] getTypeArguments()
+    {
+        return typeArguments.clone();
+    }
+
+    /**
+     * Reads indexed types from the given binary stream.
+     * 
+     * @param in The input stream
+     * @return List of indexed types
+     */
+    public static List<IndexedType> read( final InputStream in )
+        throws IOException
+    {
+        final DataInputStream data = new DataInputStream( in );
+        if ( data.readInt() != MAGIC || data.readInt() != VERSION )
+        {
+            throw new IOException( "Unsupported index format" );
+        }
+        final int size = data.readInt();
+        final List<IndexedType> types = new ArrayList<IndexedType>( size );
+        for ( int i = 0; i < size; i++ )
+        {
+            final String name = data.readUTF();
+            final Kind kind = Kind.values()[data.readByte()];
+            final int flags = data.readByte();
+            final String bindingName = data.readBoolean() ? data.readUTF() : null;
+            final String[] bindingTypes = readNames( data );
+            final String[] typeArguments = readNames( data );
+
+            types.add( new IndexedType( name, kind, ( flags & EAGER_FLAG ) != 0, ( flags & SINGLETON_FLAG ) != 0,
+                                        bindingName, bindingTypes, typeArguments ) );
+        }
+        return types;
+    }
+
+    /**
+     * Writes the given indexed types to a binary stream.
+     * 
+     * @param out The output stream
+     * @param types The indexed types
+     */
+    public static void write( final OutputStream out, final Collection<IndexedType> types )
+        throws IOException
+    {
+        final DataOutputStream data = new DataOutputStream( out );
+        data.writeInt( MAGIC );
+        data.writeInt( VERSION );
+        data.writeInt( types.size() );
+        for ( final IndexedType type : types )
+        {
+            data.writeUTF( type.name );
+            data.writeByte( type.kind.ordinal() );
+            data.writeByte( type.flags );
+            data.writeBoolean( null != type.bindingName );
+            if ( null != type.bindingName )
+            {
+                data.writeUTF( type.bindingName );
+            }
+            writeNames( data, type.bindingTypes );
+            writeNames( data, type.typeArguments );
+        }
+        data.flush();
+    }
+
+    @Override
+    public String toString()
+    {
+        return kind + ":" + name;
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    private static String[] readNames( final DataInputStream data )
+        throws IOException
+    {
+        final int length = data.readShort();
+        if ( length < 0 )
+        {
+            return null;
+        }
+        final String[] names = new String[length];
+        for ( int i = 0; i < length; i++ )
+        {
+            names[i] = data.readUTF();
+        }
+        return names;
+    }
+
+    private static void writeNames( final DataOutputStream data, final String[] names )
+        throws IOException
+    {
+        if ( null == names )
+        {
+            data.writeShort( -1 );
+        }
+        else
+        {
+            data.writeShort( names.length );
+            for ( final String n : names )
+            {
+                data.writeUTF( n );
+            }
+        }
+    }
+}
@@ -12,12 +12,17 @@
 package org.sonatype.guice.bean.scanners.index;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.lang.annotation.Annotation;
+import java.lang.annotation.IncompleteAnnotationException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -28,11 +33,14 @@ import javax.inject.Named;
 
 import org.sonatype.guice.bean.reflect.ClassSpace;
 import org.sonatype.guice.bean.reflect.Logs;
+import org.sonatype.guice.bean.reflect.TypeParameters;
 import org.sonatype.guice.bean.reflect.URLClassSpace;
 import org.sonatype.guice.bean.scanners.ClassSpaceScanner;
 import org.sonatype.guice.bean.scanners.QualifiedTypeListener;
 import org.sonatype.guice.bean.scanners.QualifiedTypeVisitor;
 
+import com.google.inject.TypeLiteral;
+
 /**
  * Command-line utility that generates a qualified class index for a space-separated list of JARs.
  */
@@ -46,6 +54,15 @@ public final class SisuIndex
 
     public static final String NAMED = Named.class.getName();
 
+    public static final String BINARY = NAMED + ".bin";
+
+    public static final String MODULE = "com.google.inject.Module";
+
+    /**
+     * Name of the constant listing the types bound by a generated module.
+     */
+    public static final String BOUND_TYPES = "BOUND_TYPES";
+
     // ----------------------------------------------------------------------
     // Implementation fields
     // ----------------------------------------------------------------------
@@ -106,6 +123,7 @@ public final class SisuIndex
     public void hear( final Annotation qualifier, final Class<?> qualifiedType, final Object source )
     {
         addClassToIndex( SisuIndex.NAMED, qualifiedType.getName() );
+        addTypeToIndex( describe( qualifiedType ) );
     }
 
     // ----------------------------------------------------------------------
@@ -134,12 +152,214 @@ public final class SisuIndex
     @Override
     protected Writer getWriter( final String path )
         throws IOException
+    {
+        return new FileWriter( createIndexFile( path ) );
+    }
+
+    @Override
+    protected InputStream getInputStream( final String path )
+        throws IOException
+    {
+        return new FileInputStream( new File( targetDirectory, path ) );
+    }
+
+    @Override
+    protected OutputStream getOutputStream( final String path )
+        throws IOException
+    {
+        return new FileOutputStream( createIndexFile( path ) );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Uses reflection to determine the binding metadata for the given qualified type.
+     * 
+     * @param clazz The qualified type
+     * @return Indexed type
+     */
+    private static IndexedType describe( final Class<?> clazz )
+    {
+        final String name = clazz.getName();
+        if ( !TypeParameters.isConcrete( clazz ) )
+        {
+            return IndexedType.unresolved( name );
+        }
+
+        final IndexedType.Kind kind;
+        String[] typeArguments = null;
+        Class<?> api;
+        if ( null != findSuperType( clazz, IndexedType.MODULE ) )
+        {
+            kind = IndexedType.Kind.MODULE;
+            typeArguments = IndexedType.NO_NAMES;
+        }
+        else if ( null != ( api = findSuperType( clazz, IndexedType.BATCH_MEDIATOR ) )
+            || null != ( api = findSuperType( clazz, IndexedType.MEDIATOR ) ) )
+        {
+            kind = IndexedType.Kind.MEDIATOR;
+            typeArguments = getRawTypeArguments( clazz, api, 3 );
+        }
+        else if ( null != ( api = findSuperType( clazz, IndexedType.PROVIDER ) ) )
+        {
+            kind = IndexedType.Kind.PROVIDER;
+            typeArguments = getRawTypeArguments( clazz, api, 1 );
+        }
+        else
+        {
+            kind = IndexedType.Kind.BEAN;
+            typeArguments = IndexedType.NO_NAMES;
+        }
+
+        if ( null == typeArguments )
+        {
+            return IndexedType.unresolved( name ); // generic or malformed arguments
+        }
+
+        final boolean eager = null != findAnnotation( clazz, IndexedType.EAGER_SINGLETON );
+        final boolean singleton =
+            clazz.isAnnotationPresent( javax.inject.Singleton.class )
+                || clazz.isAnnotationPresent( com.google.inject.Singleton.class );
+
+        return new IndexedType( name, kind, eager, singleton, getBindingName( clazz ), getBindingTypes( clazz ),
+                                typeArguments );
+    }
+
+    /**
+     * Searches the type hierarchy for the named super type; uses names as the API may not be visible from here.
+     */
+    private static Class<?> findSuperType( final Class<?> clazz, final String superName )
+    {
+        if ( null == clazz )
+        {
+            return null;
+        }
+        if ( superName.equals( clazz.getName() ) )
+        {
+            return clazz;
+        }
+        for ( final Class<?> iface : clazz.getInterfaces() )
+        {
+            final Class<?> superType = findSuperType( iface, superName );
+            if ( null != superType )
+            {
+                return superType;
+            }
+        }
+        return findSuperType( clazz.getSuperclass(), superName );
+    }
+
+    private static Annotation findAnnotation( final Class<?> clazz, final String annotationName )
+    {
+        for ( final Annotation a : clazz.getAnnotations() )
+        {
+            if ( annotationName.equals( a.annotationType().getName() ) )
+            {
+                return a;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Raw type argument names; {@code null} if any of them are generic
+     */
+    private static String[] getRawTypeArguments( final Class<?> clazz, final Class<?> api, final int count )
+    {
+        final TypeLiteral<?>[] params = TypeParameters.get( TypeLiteral.get( clazz ).getSupertype( api ) );
+        if ( params.length != count )
+        {
+            return null;
+        }
+        final String[] names = new String[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            if ( !( params[i].getType() instanceof Class<?> ) )
+            {
+                return null;
+            }
+            names[i] = params[i].getRawType().getName();
+        }
+        return names;
+    }
+
+    /**
+     * Same heuristics as the qualified type binder: explicit names win, then default types, then the class name.
+     */
+    private static String getBindingName( final Class<?> clazz )
+    {
+        final javax.inject.Named jsr330 = clazz.getAnnotation( javax.inject.Named.class );
+        if ( null != jsr330 )
+        {
+            try
+            {
+                final String value = jsr330.value();
+                if ( value.length() > 0 )
+                {
+                    return "default".equals( value ) ? null : value;
+                }
+            }
+            catch ( final IncompleteAnnotationException e ) // NOPMD
+            {
+                // early prototypes of JSR330 @Named declared no default value
+            }
+        }
+        else
+        {
+            final com.google.inject.name.Named guice = clazz.getAnnotation( com.google.inject.name.Named.class );
+            if ( null != guice )
+            {
+                final String value = guice.value();
+                if ( value.length() > 0 )
+                {
+                    return "default".equals( value ) ? null : value;
+                }
+            }
+        }
+        return clazz.getSimpleName().startsWith( "Default" ) ? null : clazz.getName();
+    }
+
+    private static String[] getBindingTypes( final Class<?> clazz )
+    {
+        for ( Class<?> c = clazz; c != Object.class; c = c.getSuperclass() )
+        {
+            final Annotation typed = findAnnotation( c, IndexedType.TYPED );
+            if ( null != typed )
+            {
+                Class<?>[] types;
+                try
+                {
+                    types = (Class<?>[]) typed.annotationType().getMethod( "value" ).invoke( typed );
+                }
+                catch ( final Exception e )
+                {
+                    types = new Class<?>[0];
+                }
+                if ( types.length == 0 )
+                {
+                    types = c.getInterfaces();
+                }
+                final String[] names = new String[types.length];
+                for ( int i = 0; i < names.length; i++ )
+                {
+                    names[i] = types[i].getName();
+                }
+                return names;
+            }
+        }
+        return null;
+    }
+
+    private File createIndexFile( final String path )
+        throws IOException
     {
         final File index = new File( targetDirectory, path );
         final File parent = index.getParentFile();
         if ( parent.isDirectory() || parent.mkdirs() )
         {
-            return new FileWriter( index );
+            return index;
         }
         throw new IOException( "Error creating: " + parent );
     }
@@ -12,10 +12,15 @@
 package org.sonatype.guice.bean.scanners.index;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.processing.Completion;
@@ -26,27 +31,49 @@ import javax.inject.Named;
 import javax.inject.Qualifier;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
 import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
 import javax.tools.FileObject;
 import javax.tools.StandardLocation;
 
 /**
- * Java 6 Annotation {@link Processor} that generates a qualified class index for the current build.
+ * Java 6 Annotation {@link Processor} that generates a qualified class index for the current build; it can also
+ * generate binding modules for each compilation unit when the {@value #GENERATE_MODULES} option is set. Types bound by
+ * generated modules are still indexed, so older runtimes can find them.
  */
 public final class SisuIndexAPT6
     extends AbstractSisuIndex
     implements Processor
 {
+    // ----------------------------------------------------------------------
+    // Constants
+    // ----------------------------------------------------------------------
+
+    /**
+     * Processor option that generates binding modules for indexed types, so they can be bound without reflection.
+     */
+    public static final String GENERATE_MODULES = "sisu.generateModules";
+
     // ----------------------------------------------------------------------
     // Implementation fields
     // ----------------------------------------------------------------------
 
     private ProcessingEnvironment environment;
 
+    private boolean generateModules;
+
     // ----------------------------------------------------------------------
     // Public methods
     // ----------------------------------------------------------------------
@@ -54,11 +81,12 @@ public final class SisuIndexAPT6
     public void init( final ProcessingEnvironment _environment )
     {
         environment = _environment;
+        generateModules = Boolean.parseBoolean( _environment.getOptions().get( GENERATE_MODULES ) );
     }
 
     public boolean process( final Set<? extends TypeElement> annotations, final RoundEnvironment round )
     {
-        final Elements elementUtils = environment.getElementUtils();
+        final Map<String, GeneratedModule> modules = new LinkedHashMap<String, GeneratedModule>();
         for ( final TypeElement anno : annotations )
         {
             if ( null != anno.getAnnotation( Qualifier.class ) )
@@ -67,12 +95,23 @@ public final class SisuIndexAPT6
                 {
                     if ( elem.getKind().isClass() )
                     {
-                        addClassToIndex( SisuIndex.NAMED, elementUtils.getBinaryName( (TypeElement) elem ) );
+                        final IndexedType type = describe( (TypeElement) elem );
+                        addClassToIndex( SisuIndex.NAMED, type.getName() );
+                        addTypeToIndex( type );
+                        if ( generateModules )
+                        {
+                            addToModule( modules, (TypeElement) elem, type );
+                        }
                     }
                 }
             }
         }
 
+        for ( final GeneratedModule module : modules.values() )
+        {
+            writeModule( module );
+        }
+
         if ( round.processingOver() )
         {
             flushIndex();
@@ -94,7 +133,7 @@ public final class SisuIndexAPT6
 
     public Set<String> getSupportedOptions()
     {
-        return Collections.emptySet();
+        return Collections.singleton( GENERATE_MODULES );
     }
 
     public SourceVersion getSupportedSourceVersion()
@@ -132,4 +171,356 @@ public final class SisuIndexAPT6
     {
         return environment.getFiler().createResource( StandardLocation.CLASS_OUTPUT, "", path ).openWriter();
     }
+
+    @Override
+    protected InputStream getInputStream( final String path )
+        throws IOException
+    {
+        return environment.getFiler().getResource( StandardLocation.CLASS_OUTPUT, "", path ).openInputStream();
+    }
+
+    @Override
+    protected OutputStream getOutputStream( final String path )
+        throws IOException
+    {
+        return environment.getFiler().createResource( StandardLocation.CLASS_OUTPUT, "", path ).openOutputStream();
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Adds bindings for the given type to the module generated for its compilation unit.
+     * 
+     * @param modules The modules generated in this round
+     * @param clazz The qualified type
+     * @param type The indexed type
+     */
+    private void addToModule( final Map<String, GeneratedModule> modules, final TypeElement clazz,
+                              final IndexedType type )
+    {
+        final IndexedType.Kind kind = type.getKind();
+        if ( kind != IndexedType.Kind.BEAN && kind != IndexedType.Kind.PROVIDER && kind != IndexedType.Kind.MODULE )
+        {
+            return; // mediators need internal APIs, unresolved types need reflection
+        }
+
+        final String pkg = environment.getElementUtils().getPackageOf( clazz ).getQualifiedName().toString();
+        if ( !isVisible( clazz, pkg ) || kind == IndexedType.Kind.MODULE && !isInstantiable( clazz ) )
+        {
+            return;
+        }
+
+        final String[] bindingTypes = getCanonicalNames( type.getBindingTypes(), pkg );
+        final String[] typeArguments = getCanonicalNames( type.getTypeArguments(), pkg );
+        if ( null != type.getBindingTypes() && null == bindingTypes || null == typeArguments )
+        {
+            return;
+        }
+
+        TypeElement topLevel = clazz;
+        while ( topLevel.getEnclosingElement() instanceof TypeElement )
+        {
+            topLevel = (TypeElement) topLevel.getEnclosingElement();
+        }
+
+        final String key = pkg + ':' + topLevel.getSimpleName();
+        GeneratedModule module = modules.get( key );
+        if ( null == module )
+        {
+            module = new GeneratedModule( pkg, topLevel.getSimpleName().toString() );
+            modules.put( key, module );
+        }
+        module.add( type, clazz.getQualifiedName().toString(), bindingTypes, typeArguments );
+    }
+
+    private void writeModule( final GeneratedModule module )
+    {
+        try
+        {
+            final Writer writer = environment.getFiler().createSourceFile( module.getName() ).openWriter();
+            try
+            {
+                module.write( writer );
+            }
+            finally
+            {
+                writer.close();
+            }
+            addClassToIndex( SisuIndex.MODULE, module.getName() );
+        }
+        catch ( final IOException e )
+        {
+            warn( e.toString() ); // types are still indexed, so they will be bound at runtime
+        }
+    }
+
+    /**
+     * @return Canonical names of the given types; {@code null} if any of them are not visible from the package
+     */
+    private String[] getCanonicalNames( final String[] binaryNames, final String pkg )
+    {
+        if ( null == binaryNames )
+        {
+            return null;
+        }
+        final String[] names = new String[binaryNames.length];
+        for ( int i = 0; i < names.length; i++ )
+        {
+            final TypeElement type = environment.getElementUtils().getTypeElement( binaryNames[i].replace( '$', '.' ) );
+            if ( null == type || !isVisible( type, pkg ) )
+            {
+                return null;
+            }
+            names[i] = type.getQualifiedName().toString();
+        }
+        return names;
+    }
+
+    /**
+     * @return {@code true} if the type can be referenced from the given package; otherwise {@code false}
+     */
+    private boolean isVisible( final TypeElement type, final String pkg )
+    {
+        final boolean samePackage =
+            pkg.equals( environment.getElementUtils().getPackageOf( type ).getQualifiedName().toString() );
+
+        for ( Element e = type; e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement() )
+        {
+            if ( !( e instanceof TypeElement ) || e.getModifiers().contains( Modifier.PRIVATE ) )
+            {
+                return false; // local or private types
+            }
+            if ( !samePackage && !e.getModifiers().contains( Modifier.PUBLIC ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if the type has a visible no-argument constructor; otherwise {@code false}
+     */
+    private static boolean isInstantiable( final TypeElement type )
+    {
+        if ( type.getNestingKind() != NestingKind.TOP_LEVEL && !type.getModifiers().contains( Modifier.STATIC ) )
+        {
+            return false; // inner class
+        }
+        for ( final ExecutableElement ctor : ElementFilter.constructorsIn( type.getEnclosedElements() ) )
+        {
+            if ( ctor.getParameters().isEmpty() && !ctor.getModifiers().contains( Modifier.PRIVATE ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines the binding metadata for the given qualified type from its source model.
+     * 
+     * @param clazz The qualified type
+     * @return Indexed type
+     */
+    private IndexedType describe( final TypeElement clazz )
+    {
+        final String name = binaryName( clazz.asType() );
+        if ( clazz.getKind() != ElementKind.CLASS || clazz.getModifiers().contains( Modifier.ABSTRACT ) )
+        {
+            return IndexedType.unresolved( name );
+        }
+
+        final IndexedType.Kind kind;
+        String[] typeArguments = null;
+        DeclaredType api;
+        if ( null != findSuperType( clazz.asType(), IndexedType.MODULE ) )
+        {
+            kind = IndexedType.Kind.MODULE;
+            typeArguments = IndexedType.NO_NAMES;
+        }
+        else if ( null != ( api = findSuperType( clazz.asType(), IndexedType.BATCH_MEDIATOR ) )
+            || null != ( api = findSuperType( clazz.asType(), IndexedType.MEDIATOR ) ) )
+        {
+            kind = IndexedType.Kind.MEDIATOR;
+            typeArguments = getRawTypeArguments( api, 3 );
+        }
+        else if ( null != ( api = findSuperType( clazz.asType(), IndexedType.PROVIDER ) ) )
+        {
+            kind = IndexedType.Kind.PROVIDER;
+            typeArguments = getRawTypeArguments( api, 1 );
+        }
+        else
+        {
+            kind = IndexedType.Kind.BEAN;
+            typeArguments = IndexedType.NO_NAMES;
+        }
+
+        if ( null == typeArguments )
+        {
+            return IndexedType.unresolved( name ); // generic or malformed arguments
+        }
+
+        final Elements elementUtils = environment.getElementUtils();
+        boolean eager = false, singleton = false;
+        for ( final AnnotationMirror mirror : elementUtils.getAllAnnotationMirrors( clazz ) )
+        {
+            final String annotationName = binaryName( mirror.getAnnotationType() );
+            eager |= IndexedType.EAGER_SINGLETON.equals( annotationName );
+            singleton |= "javax.inject.Singleton".equals( annotationName )
+                || "com.google.inject.Singleton".equals( annotationName );
+        }
+
+        return new IndexedType( name, kind, eager, singleton, getBindingName( clazz ), getBindingTypes( clazz ),
+                                typeArguments );
+    }
+
+    private String binaryName( final TypeMirror type )
+    {
+        final Types typeUtils = environment.getTypeUtils();
+        return environment.getElementUtils().getBinaryName( (TypeElement) typeUtils.asElement( type ) ).toString();
+    }
+
+    private DeclaredType findSuperType( final TypeMirror type, final String superName )
+    {
+        if ( type.getKind() != TypeKind.DECLARED )
+        {
+            return null;
+        }
+        if ( superName.equals( binaryName( type ) ) )
+        {
+            return (DeclaredType) type;
+        }
+        for ( final TypeMirror superType : environment.getTypeUtils().directSupertypes( type ) )
+        {
+            final DeclaredType result = findSuperType( superType, superName );
+            if ( null != result )
+            {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Raw type argument names; {@code null} if any of them are generic
+     */
+    private String[] getRawTypeArguments( final DeclaredType api, final int count )
+    {
+        final List<? extends TypeMirror> args = api.getTypeArguments();
+        if ( args.size() != count )
+        {
+            return null;
+        }
+        final String[] names = new String[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            final TypeMirror arg = args.get( i );
+            if ( arg.getKind() != TypeKind.DECLARED || !( (DeclaredType) arg ).getTypeArguments().isEmpty() )
+            {
+                return null;
+            }
+            names[i] = binaryName( arg );
+        }
+        return names;
+    }
+
+    /**
+     * Same heuristics as the qualified type binder: explicit names win, then default types, then the class name.
+     */
+    private String getBindingName( final TypeElement clazz )
+    {
+        AnnotationValue jsr330 = null, guice = null;
+        for ( final AnnotationMirror mirror : clazz.getAnnotationMirrors() )
+        {
+            final String annotationName = binaryName( mirror.getAnnotationType() );
+            if ( SisuIndex.NAMED.equals( annotationName ) )
+            {
+                jsr330 = getValue( mirror );
+            }
+            else if ( "com.google.inject.name.Named".equals( annotationName ) )
+            {
+                guice = getValue( mirror );
+            }
+        }
+        final AnnotationValue named = null != jsr330 ? jsr330 : guice;
+        final String value = null != named ? String.valueOf( named.getValue() ) : "";
+        if ( value.length() > 0 )
+        {
+            return "default".equals( value ) ? null : value;
+        }
+        return clazz.getSimpleName().toString().startsWith( "Default" ) ? null : binaryName( clazz.asType() );
+    }
+
+    private String[] getBindingTypes( final TypeElement clazz )
+    {
+        for ( TypeElement c = clazz; null != c; c = superClass( c ) )
+        {
+            for ( final AnnotationMirror mirror : c.getAnnotationMirrors() )
+            {
+                if ( IndexedType.TYPED.equals( binaryName( mirror.getAnnotationType() ) ) )
+                {
+                    List<?> types = Collections.emptyList();
+                    final AnnotationValue value = getValue( mirror );
+                    if ( null != value )
+                    {
+                        types = (List<?>) value.getValue();
+                    }
+                    final String[] names;
+                    if ( types.isEmpty() )
+                    {
+                        final List<? extends TypeMirror> interfaces = c.getInterfaces();
+                        names = new String[interfaces.size()];
+                        for ( int i = 0; i < names.length; i++ )
+                        {
+                            names[i] = binaryName( environment.getTypeUtils().erasure( interfaces.get( i ) ) );
+                        }
+                    }
+                    else
+                    {
+                        names = new String[types.size()];
+                        for ( int i = 0; i < names.length; i++ )
+                        {
+                            names[i] = binaryName( (TypeMirror) ( (AnnotationValue) types.get( i ) ).getValue() );
+                        }
+                    }
+                    return names;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The annotation value, including any default; {@code null} if there is no value
+     */
+    private AnnotationValue getValue( final AnnotationMirror mirror )
+    {
+        final Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+            environment.getElementUtils().getElementValuesWithDefaults( mirror );
+        for ( final ExecutableElement key : values.keySet() )
+        {
+            if ( "value".equals( key.getSimpleName().toString() ) )
+            {
+                return values.get( key );
+            }
+        }
+        return null;
+    }
+
+    private static TypeElement superClass( final TypeElement clazz )
+    {
+        final TypeMirror superType = clazz.getSuperclass();
+        if ( superType.getKind() == TypeKind.DECLARED )
+        {
+            final TypeElement superClazz = (TypeElement) ( (DeclaredType) superType ).asElement();
+            if ( !"java.lang.Object".equals( superClazz.getQualifiedName().toString() ) )
+            {
+                return superClazz;
+            }
+        }
+        return null;
+    }
 }
@@ -17,7 +17,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -38,13 +38,25 @@ public final class SisuIndexFinder
 
     private final boolean globalIndex;
 
+    private final Set<String> excludedTypes;
+
     // ----------------------------------------------------------------------
     // Constructors
     // ----------------------------------------------------------------------
 
     public SisuIndexFinder( final boolean globalIndex )
+    {
+        this( globalIndex, Collections.<String> emptySet() );
+    }
+
+    /**
+     * @param globalIndex When {@code true} use the global index; otherwise use the local index
+     * @param excludedTypes Names of indexed types that should not be scanned
+     */
+    public SisuIndexFinder( final boolean globalIndex, final Set<String> excludedTypes )
     {
         this.globalIndex = globalIndex;
+        this.excludedTypes = excludedTypes;
     }
 
     // ----------------------------------------------------------------------
@@ -54,16 +66,55 @@ public final class SisuIndexFinder
     public Enumeration<URL> findClasses( final ClassSpace space )
     {
         final List<URL> components = new ArrayList<URL>();
-        final Set<String> visited = new HashSet<String>();
+        for ( final String line : readIndex( space, SisuIndex.NAMED ) )
+        {
+            if ( excludedTypes.contains( line ) )
+            {
+                continue;
+            }
+            final URL clazz = space.getResource( line.replace( '.', '/' ) + ".class" );
+            if ( null != clazz )
+            {
+                components.add( clazz );
+            }
+        }
+        return Collections.enumeration( components );
+    }
+
+    /**
+     * Lists the binding modules generated alongside the qualified class index.
+     * 
+     * @param space The space to search
+     * @return Generated module names
+     */
+    public List<String> findModules( final ClassSpace space )
+    {
+        return new ArrayList<String>( readIndex( space, SisuIndex.MODULE ) );
+    }
+
+    // ----------------------------------------------------------------------
+    // Implementation methods
+    // ----------------------------------------------------------------------
+
+    /**
+     * Reads the named index table from each selected index location.
+     * 
+     * @param space The space to search
+     * @param name The table name
+     * @return Distinct lines from the index tables
+     */
+    private Set<String> readIndex( final ClassSpace space, final String name )
+    {
+        final Set<String> lines = new LinkedHashSet<String>();
         final Enumeration<URL> indices;
 
         if ( globalIndex )
         {
-            indices = space.getResources( "META-INF/sisu/" + SisuIndex.NAMED );
+            indices = space.getResources( "META-INF/sisu/" + name );
         }
         else
         {
-            indices = space.findEntries( "META-INF/sisu/", SisuIndex.NAMED, false );
+            indices = space.findEntries( "META-INF/sisu/", name, false );
         }
 
         while ( indices.hasMoreElements() )
@@ -77,14 +128,7 @@ public final class SisuIndexFinder
                     // each index file contains a list of classes with that qualifier, one per line
                     for ( String line = reader.readLine(); line != null; line = reader.readLine() )
                     {
-                        if ( visited.add( line ) )
-                        {
-                            final URL clazz = space.getResource( line.replace( '.', '/' ) + ".class" );
-                            if ( null != clazz )
-                            {
-                                components.add( clazz );
-                            }
-                        }
+                        lines.add( line );
                     }
                 }
                 finally
@@ -97,6 +141,6 @@ public final class SisuIndexFinder
                 Logs.warn( "Problem reading: {}", url, e );
             }
         }
-        return Collections.enumeration( components );
+        return lines;
     }
 }
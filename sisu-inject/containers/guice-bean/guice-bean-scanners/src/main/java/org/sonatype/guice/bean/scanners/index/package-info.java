@@ -20,6 +20,8 @@
  * <dd>Java 6 annotation processor.
  * <dt>{@link org.sonatype.guice.bean.scanners.index.SisuIndexFinder}
  * <dd>Index-driven {@link org.sonatype.guice.bean.scanners.ClassFinder}.
+ * <dt>{@link org.sonatype.guice.bean.scanners.index.IndexedType}
+ * <dd>Binding metadata recorded in the binary index.
  * </dl>
  */
 package org.sonatype.guice.bean.scanners.index;
@@ -11,7 +11,14 @@
  *******************************************************************************/
 package org.sonatype.guice.bean.scanners;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -26,6 +33,12 @@ import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -47,6 +60,23 @@ import org.sonatype.guice.bean.scanners.index.SisuIndexFinder;
 public class QualifiedScanningTest
     extends TestCase
 {
+    static
+    {
+        // needed by testBrokenScanning and testOptionalLogging, whatever order they run in
+        // System.setProperty( "java.protocol.handler.pkgs", QualifiedScanningTest.class.getPackage().getName() );
+        URL.setURLStreamHandlerFactory( new URLStreamHandlerFactory()
+        {
+            public URLStreamHandler createURLStreamHandler( final String protocol )
+            {
+                if ( "barf".equals( protocol ) )
+                {
+                    return new Handler();
+                }
+                return null;
+            }
+        } );
+    }
+
     @Named
     interface A
     {
@@ -119,6 +149,250 @@ public class QualifiedScanningTest
         assertTrue( listener.ids.contains( "@" + Legacy.class.getName() + "():" + E.class ) );
     }
 
+    public void testParallelScanning()
+    {
+        final ClassSpace space = new URLClassSpace( getClass().getClassLoader() );
+
+        final TestListener serialListener = new TestListener();
+        new ClassSpaceScanner( space ).accept( new QualifiedTypeVisitor( serialListener ) );
+
+        final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            final TestListener parallelListener = new TestListener();
+            new ClassSpaceScanner( null, space, executor ).accept( new QualifiedTypeVisitor( parallelListener ) );
+            assertEquals( serialListener.ids, parallelListener.ids );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        final TestListener rejectedListener = new TestListener();
+        new ClassSpaceScanner( null, space, new Executor()
+        {
+            public void execute( final Runnable command )
+            {
+                throw new RejectedExecutionException();
+            }
+        } ).accept( new QualifiedTypeVisitor( rejectedListener ) );
+        assertEquals( serialListener.ids, rejectedListener.ids );
+    }
+
+    public void testCachedScanning()
+        throws IOException
+    {
+        final ClassSpace space = new URLClassSpace( getClass().getClassLoader() );
+
+        final TestListener expectedListener = new TestListener();
+        new ClassSpaceScanner( space ).accept( new QualifiedTypeVisitor( expectedListener ) );
+
+        final File cacheDir = new File( "target/scan-cache" );
+        final File[] oldFiles = cacheDir.listFiles();
+        if ( null != oldFiles )
+        {
+            for ( final File f : oldFiles )
+            {
+                f.delete();
+            }
+        }
+
+        final ClassFinder finder = new CachedClassFinder( cacheDir );
+
+        final TestListener coldListener = new TestListener();
+        new ClassSpaceScanner( finder, space ).accept( new QualifiedTypeVisitor( coldListener ) );
+        assertEquals( expectedListener.ids, coldListener.ids );
+
+        final File[] cacheFiles = cacheDir.listFiles();
+        assertTrue( cacheFiles.length > 0 );
+
+        final TestListener warmListener = new TestListener();
+        new ClassSpaceScanner( finder, space ).accept( new QualifiedTypeVisitor( warmListener ) );
+        assertEquals( expectedListener.ids, warmListener.ids );
+
+        // simulate changes by invalidating half of the cache
+        for ( int i = 0; i < cacheFiles.length; i += 2 )
+        {
+            final Writer writer = new FileWriter( cacheFiles[i] );
+            writer.write( "stale\n" );
+            writer.close();
+        }
+
+        final TestListener staleListener = new TestListener();
+        new ClassSpaceScanner( finder, space ).accept( new QualifiedTypeVisitor( staleListener ) );
+        assertEquals( expectedListener.ids, staleListener.ids );
+
+        assertEquals( cacheFiles.length, cacheDir.listFiles().length );
+    }
+
+    public void testCachedScanningRecordsWhileVisiting()
+        throws IOException
+    {
+        final ClassSpace space = new URLClassSpace( getClass().getClassLoader() );
+
+        final TestListener expectedListener = new TestListener();
+        new ClassSpaceScanner( space ).accept( new QualifiedTypeVisitor( expectedListener ) );
+
+        final File cacheDir = new File( "target/parallel-scan-cache" );
+        final File[] oldFiles = cacheDir.listFiles();
+        if ( null != oldFiles )
+        {
+            for ( final File f : oldFiles )
+            {
+                f.delete();
+            }
+        }
+
+        final ClassFinder finder = new CachedClassFinder( cacheDir );
+        final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            // classes are only parsed by the scan itself, so nothing is cached until it ends
+            final TestListener coldListener = new TestListener();
+            final ClassSpaceVisitor coldVisitor = new QualifiedTypeVisitor( coldListener );
+            final int[] visited = new int[1];
+            new ClassSpaceScanner( finder, space, executor ).accept( new ClassSpaceVisitor()
+            {
+                public void visit( final ClassSpace _space )
+                {
+                    coldVisitor.visit( _space );
+                }
+
+                public ClassVisitor visitClass( final URL url )
+                {
+                    final File[] files = cacheDir.listFiles();
+                    assertTrue( null == files || 0 == files.length );
+                    visited[0]++;
+                    return coldVisitor.visitClass( url );
+                }
+
+                public void visitEnd()
+                {
+                    coldVisitor.visitEnd();
+                }
+            } );
+            assertEquals( expectedListener.ids, coldListener.ids );
+            assertTrue( visited[0] > expectedListener.ids.size() );
+            assertTrue( cacheDir.listFiles().length > 0 );
+
+            final TestListener warmListener = new TestListener();
+            new ClassSpaceScanner( finder, space, executor ).accept( new QualifiedTypeVisitor( warmListener ) );
+            assertEquals( expectedListener.ids, warmListener.ids );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    public void testCachedScanningOfUnnormalizedFolder()
+        throws IOException
+    {
+        final ClassLoader loader = getClass().getClassLoader();
+        final File classesDir = new File( "target/test-classes" ).getAbsoluteFile();
+        final URL[] path = { new URL( classesDir.toURI() + "../test-classes/" ),
+            new File( "target/classes" ).getAbsoluteFile().toURI().toURL() };
+        final ClassSpace space = new URLClassSpace( loader, path );
+
+        final TestListener expectedListener = new TestListener();
+        new ClassSpaceScanner( space ).accept( new QualifiedTypeVisitor( expectedListener ) );
+        assertFalse( expectedListener.ids.isEmpty() );
+
+        final File cacheDir = new File( "target/unnormalized-cache" );
+        final File[] oldFiles = cacheDir.listFiles();
+        if ( null != oldFiles )
+        {
+            for ( final File f : oldFiles )
+            {
+                f.delete();
+            }
+        }
+
+        final ClassFinder finder = new CachedClassFinder( cacheDir );
+
+        final TestListener coldListener = new TestListener();
+        new ClassSpaceScanner( finder, space ).accept( new QualifiedTypeVisitor( coldListener ) );
+        assertEquals( expectedListener.ids, coldListener.ids );
+
+        final TestListener warmListener = new TestListener();
+        new ClassSpaceScanner( finder, space ).accept( new QualifiedTypeVisitor( warmListener ) );
+        assertEquals( expectedListener.ids, warmListener.ids );
+
+        // only the entry whose resources were seen gets cached
+        assertEquals( 1, cacheDir.listFiles().length );
+    }
+
+    public void testArchiveScanning()
+        throws IOException
+    {
+        final ClassLoader loader = getClass().getClassLoader();
+        final File classesDir = new File( "target/test-classes" );
+        final File jarFile = new File( "target/archive-scanning/classes.jar" );
+        final File outerJarFile = new File( "target/archive-scanning/outer.jar" );
+        jarFile.getParentFile().mkdirs();
+
+        final JarOutputStream jar = new JarOutputStream( new FileOutputStream( jarFile ) );
+        final String pkg = getClass().getPackage().getName().replace( '.', '/' ) + '/';
+        for ( final File f : new File( classesDir, pkg ).listFiles() )
+        {
+            if ( f.getName().endsWith( ".class" ) )
+            {
+                jar.putNextEntry( new JarEntry( pkg + f.getName() ) );
+                copy( new FileInputStream( f ), jar );
+            }
+        }
+        jar.close();
+
+        final JarOutputStream outerJar = new JarOutputStream( new FileOutputStream( outerJarFile ) );
+        outerJar.putNextEntry( new JarEntry( "lib/classes.jar" ) );
+        copy( new FileInputStream( jarFile ), outerJar );
+        outerJar.close();
+
+        final TestListener expectedListener = new TestListener();
+        final ClassSpace classesSpace = new URLClassSpace( loader, new URL[] { classesDir.toURI().toURL() } );
+        new ClassSpaceScanner( classesSpace ).accept( new QualifiedTypeVisitor( expectedListener ) );
+        assertFalse( expectedListener.ids.isEmpty() );
+
+        final URL nestedURL = new URL( "jar:" + outerJarFile.toURI() + "!/lib/classes.jar" );
+        for ( final URL url : new URL[] { jarFile.toURI().toURL(), nestedURL } )
+        {
+            final ClassSpace space = new URLClassSpace( loader, new URL[] { url } );
+
+            final TestListener serialListener = new TestListener();
+            new ClassSpaceScanner( space ).accept( new QualifiedTypeVisitor( serialListener ) );
+            assertEquals( expectedListener.ids, serialListener.ids );
+
+            final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+            try
+            {
+                final TestListener parallelListener = new TestListener();
+                new ClassSpaceScanner( null, space, executor ).accept( new QualifiedTypeVisitor( parallelListener ) );
+                assertEquals( expectedListener.ids, parallelListener.ids );
+            }
+            finally
+            {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private static void copy( final InputStream in, final OutputStream out )
+        throws IOException
+    {
+        try
+        {
+            final byte[] buf = new byte[8192];
+            for ( int n = in.read( buf ); n >= 0; n = in.read( buf ) )
+            {
+                out.write( buf, 0, n );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
     public void testAdaptedScanning()
     {
         final TestListener listener = new TestListener();
@@ -191,19 +465,6 @@ public class QualifiedScanningTest
     public void testBrokenScanning()
         throws IOException
     {
-        // System.setProperty( "java.protocol.handler.pkgs", getClass().getPackage().getName() );
-        URL.setURLStreamHandlerFactory( new URLStreamHandlerFactory()
-        {
-            public URLStreamHandler createURLStreamHandler( final String protocol )
-            {
-                if ( "barf".equals( protocol ) )
-                {
-                    return new Handler();
-                }
-                return null;
-            }
-        } );
-
         final ClassSpace space = new URLClassSpace( getClass().getClassLoader() );
 
         final URL badURL = new URL( "barf:up/" );
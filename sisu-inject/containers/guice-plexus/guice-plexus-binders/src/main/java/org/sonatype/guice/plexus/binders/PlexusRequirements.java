@@ -214,7 +214,8 @@ final class PlexusRequirements
 
         public T get()
         {
-            // pick first bean: supports both specific and wildcard lookup
+            // pick first bean: supports both specific and wildcard lookup; unlike BeanLocators.locateFirst this must
+            // go through the PlexusBeanLocator, even without hints, as that applies realm visibility to the sequence
             final Iterator<? extends Entry<String, T>> i = locate().iterator();
             if ( i.hasNext() )
             {